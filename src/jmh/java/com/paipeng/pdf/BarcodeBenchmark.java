@@ -0,0 +1,87 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.krysalis.barcode4j.BarcodeGenerator;
+import org.krysalis.barcode4j.impl.code128.Code128Bean;
+import org.krysalis.barcode4j.impl.datamatrix.DataMatrixBean;
+import org.krysalis.barcode4j.impl.upcean.EAN13Bean;
+import org.krysalis.barcode4j.output.bitmap.BitmapCanvasProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 条码: drawBarcode写入矢量矩形, 和栅格化成600dpi图片再insertImage对比. 每页的条码内容不同
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BarcodeBenchmark {
+    private static final int RASTER_DPI = 600;
+
+    @Param({"1", "20"})
+    public int pageCount;
+
+    @Param({"code128", "datamatrix", "ean13"})
+    public String symbology;
+
+    private BarcodeGenerator generator;
+    private String[] messages;
+
+    @Setup
+    public void setup() {
+        messages = new String[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            messages[i] = String.format("%012d", 400638133393L + i);
+        }
+        if ("code128".equals(symbology)) {
+            generator = new Code128Bean();
+        } else if ("datamatrix".equals(symbology)) {
+            generator = new DataMatrixBean();
+        } else if ("ean13".equals(symbology)) {
+            generator = new EAN13Bean();
+        } else {
+            throw new IllegalArgumentException("unknown symbology " + symbology);
+        }
+    }
+
+    @Benchmark
+    public long vector() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        int i = 0;
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.drawBarcode(pdDocument, pdPage, generator, messages[i++], 40, 40);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+
+    @Benchmark
+    public long raster() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        int i = 0;
+        for (PDPage pdPage : pdDocument.getPages()) {
+            BitmapCanvasProvider canvas = new BitmapCanvasProvider(RASTER_DPI, BufferedImage.TYPE_BYTE_BINARY, false, 0);
+            generator.generateBarcode(canvas, messages[i++]);
+            canvas.finish();
+            PDFUtils.insertImage(pdDocument, pdPage, canvas.getBufferedImage(), 40, 40, RASTER_DPI);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+}
@@ -0,0 +1,176 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * 基准测试的数据: 字体, 图片和PDF文件都在运行时生成, 不需要网络和外部文件
+ */
+final class BenchmarkFixtures {
+    static final String FONT_PROPERTY = "pdf.benchmark.font";
+
+    static final String CJK_TEXT = "防伪印刷 序列号 SN-0123456789 批次 2020-03";
+
+    // TrueType (not .ttc) fonts with CJK glyphs in their usual install locations
+    private static final String[] CJK_FONTS = {
+            "/usr/share/fonts/truetype/droid/DroidSansFallbackFull.ttf",
+            "/usr/share/fonts/truetype/arphic-gkai00mp/gkai00mp.ttf",
+            "/usr/share/fonts/google-droid/DroidSansFallback.ttf",
+            "/Library/Fonts/Arial Unicode.ttf",
+            "/System/Library/Fonts/Supplemental/Arial Unicode.ttf",
+            "C:/Windows/Fonts/simhei.ttf",
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 中文字体路径: 系统属性pdf.benchmark.font, 否则查找常见位置.
+     * 没有能显示CJK_TEXT的字体时失败, 换成西文字体测量的是另一种负载, 结果不能和其它机器比较
+     */
+    static String fontPath() {
+        String font = System.getProperty(FONT_PROPERTY);
+        if (font == null || font.isEmpty()) {
+            for (String path : CJK_FONTS) {
+                if (new File(path).isFile()) {
+                    font = path;
+                    break;
+                }
+            }
+        }
+        if (font == null || font.isEmpty()) {
+            throw new IllegalStateException("no CJK TrueType font found, set -D" + FONT_PROPERTY
+                    + "=/path/to/cjk.ttf (gradle jmh -PbenchmarkFont=...)");
+        }
+
+        FontMetrics fontMetrics;
+        try {
+            fontMetrics = FontCache.getInstance().getMetrics(font);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot read benchmark font " + font, e);
+        }
+        for (int i = 0; i < CJK_TEXT.length(); i++) {
+            char c = CJK_TEXT.charAt(i);
+            if (!fontMetrics.hasGlyph(c)) {
+                throw new IllegalStateException(String.format("%s has no glyph for U+%04X, set -D%s to a CJK font", font, (int) c, FONT_PROPERTY));
+            }
+        }
+        return font;
+    }
+
+    /**
+     * 带噪点的RGB图片, 噪点使压缩后的大小接近实际的防伪底纹
+     */
+    static BufferedImage image(int size, long seed) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, size, size);
+        graphics.setColor(new Color(0x1f4e79));
+        for (int i = 0; i < size; i += 8) {
+            graphics.drawLine(0, i, size, size - i);
+        }
+        graphics.dispose();
+
+        Random random = new Random(seed);
+        for (int i = 0; i < size * size / 16; i++) {
+            image.setRGB(random.nextInt(size), random.nextInt(size), random.nextInt(0xffffff));
+        }
+        return image;
+    }
+
+    /**
+     * 生成每页带一个表格的PDF, 用于文字、表格提取和渲染
+     */
+    static File statementPdf(int pageCount) throws IOException {
+        File file = File.createTempFile("benchmark-statement-", ".pdf");
+        file.deleteOnExit();
+        try (PDDocument pdDocument = new PDDocument()) {
+            for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+                PDPage pdPage = new PDPage();
+                pdDocument.addPage(pdPage);
+                try (PageComposer composer = PageComposer.begin(pdDocument, pdPage)) {
+                    composer.setFont(PDType1Font.HELVETICA, 10);
+                    text(composer, 50, 750, "Statement " + (pageIndex + 1) + " account 6222 0210 0000 1234");
+                    float y = 700;
+                    for (int row = 0; row < 30; row++) {
+                        text(composer, 50, y, String.format("2020-03-%02d", row % 28 + 1));
+                        text(composer, 150, y, "Transaction " + row + " ref " + (pageIndex * 100 + row));
+                        text(composer, 420, y, String.format("%,.2f", (row + 1) * 17.35));
+                        y -= 14;
+                    }
+                }
+            }
+            pdDocument.save(file);
+        }
+        return file;
+    }
+
+    /**
+     * 新文档, 包含pageCount个A4页面
+     */
+    static PDDocument document(int pageCount) {
+        PDDocument pdDocument = new PDDocument();
+        for (int i = 0; i < pageCount; i++) {
+            pdDocument.addPage(new PDPage(PDRectangle.A4));
+        }
+        return pdDocument;
+    }
+
+    /**
+     * 保存到空输出并关闭文档, 释放文档相关的缓存
+     *
+     * @return 保存的字节数
+     */
+    static long saveAndClose(PDDocument pdDocument) throws IOException {
+        NullOutputStream out = new NullOutputStream();
+        try {
+            pdDocument.save(out);
+        } finally {
+            FontCache.getInstance().release(pdDocument);
+            ImageCache.getInstance().release(pdDocument);
+            MarkTemplates.getInstance().release(pdDocument);
+            pdDocument.close();
+        }
+        return out.getCount();
+    }
+
+    private static void text(PageComposer composer, float x, float y, String text) throws IOException {
+        composer.beginText();
+        composer.newLineAtOffset(x, y);
+        composer.showText(text);
+        composer.endText();
+    }
+
+    /**
+     * 丢弃所有写入的输出, 只测量生成和保存
+     */
+    static final class NullOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
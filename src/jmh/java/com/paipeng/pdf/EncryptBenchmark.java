@@ -0,0 +1,69 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * encryptPDF加保存, 每页有文字和印刷标记, 和不加密的保存对比
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EncryptBenchmark {
+    @Param({"1", "20", "200"})
+    public int pageCount;
+
+    private String fontPath;
+    private String text;
+
+    @Setup
+    public void setup() {
+        fontPath = BenchmarkFixtures.fontPath();
+        text = BenchmarkFixtures.CJK_TEXT;
+    }
+
+    private PDDocument createDocument() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            // the PDFUtils calls write into this composer's content stream
+            PageComposer composer = PageComposer.begin(pdDocument, pdPage);
+            try {
+                PDFUtils.drawPrintColor(pdDocument, pdPage, 20);
+                PDFUtils.insertText(pdDocument, pdPage, text, 40, 700, 500, 20, fontPath, 12, 0);
+            } finally {
+                composer.close();
+            }
+        }
+        return pdDocument;
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        return BenchmarkFixtures.saveAndClose(createDocument());
+    }
+
+    @Benchmark
+    public long encryptAndSave() throws IOException {
+        PDDocument pdDocument = createDocument();
+        PDFUtils.encryptPDF(pdDocument, "owner", "");
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+}
@@ -0,0 +1,98 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * insertImage的各个重载: 同一张图片放到每一页, 以及每页一张不同的图片
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InsertImageBenchmark {
+    @Param({"1", "20"})
+    public int pageCount;
+
+    @Param({"256", "1024"})
+    public int imageSize;
+
+    private BufferedImage image;
+    private BufferedImage[] pageImages;
+
+    @Setup
+    public void setup() {
+        image = BenchmarkFixtures.image(imageSize, 1);
+        pageImages = new BufferedImage[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pageImages[i] = BenchmarkFixtures.image(imageSize, i + 2);
+        }
+    }
+
+    @Benchmark
+    public long pageNumberDpi() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            PDFUtils.insertImage(pdDocument, i, image, 40, 40, 300);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+
+    @Benchmark
+    public long pageDpi() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.insertImage(pdDocument, pdPage, image, 40, 40, 300);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+
+    @Benchmark
+    public long pageSize() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.insertImage(pdDocument, pdPage, image, 40, 40, 200, 200);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+
+    @Benchmark
+    public long imageXObject() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        PDImageXObject imageXObject = LosslessFactory.createFromImage(pdDocument, image);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.insertImage(pdDocument, pdPage, imageXObject, 40, 40, 300);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+
+    @Benchmark
+    public long distinctImages() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        int i = 0;
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.insertImage(pdDocument, pdPage, pageImages[i++], 40, 40, 300);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+}
@@ -0,0 +1,60 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * insertText: 中文TrueType字体, 每页一行文字, 包括保存时的字体子集
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InsertTextBenchmark {
+    @Param({"1", "20", "200"})
+    public int pageCount;
+
+    private String fontPath;
+    private String text;
+
+    @Setup
+    public void setup() {
+        fontPath = BenchmarkFixtures.fontPath();
+        text = BenchmarkFixtures.CJK_TEXT;
+    }
+
+    @Benchmark
+    public long insertText() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.insertText(pdDocument, pdPage, text, 40, 700, 500, 20, fontPath, 12, 0);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+
+    @Benchmark
+    public long insertTextWithRotate() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.insertTextWithRotate(pdDocument, pdPage, text, 40, 100, 500, 20, fontPath, 12, 0);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+}
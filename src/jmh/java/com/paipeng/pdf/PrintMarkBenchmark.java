@@ -0,0 +1,78 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 印刷标记: drawPrintFocus, drawPrintColor, drawLayoutLevel3
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PrintMarkBenchmark {
+    private static final float BORDER = 20;
+
+    @Param({"1", "20", "200"})
+    public int pageCount;
+
+    @Benchmark
+    public long drawPrintFocus() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.drawPrintFocus(pdDocument, pdPage, BORDER);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+
+    @Benchmark
+    public long drawPrintColor() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.drawPrintColor(pdDocument, pdPage, BORDER);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+
+    @Benchmark
+    public long drawLayoutLevel3() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            PDFUtils.drawLayoutLevel3(pdDocument, pdPage, BORDER);
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+
+    @Benchmark
+    public long allMarks() throws IOException {
+        PDDocument pdDocument = BenchmarkFixtures.document(pageCount);
+        for (PDPage pdPage : pdDocument.getPages()) {
+            // the PDFUtils calls write into this composer's content stream
+            PageComposer composer = PageComposer.begin(pdDocument, pdPage);
+            try {
+                PDFUtils.drawPrintFocus(pdDocument, pdPage, BORDER);
+                PDFUtils.drawPrintColor(pdDocument, pdPage, BORDER);
+                PDFUtils.drawLayoutLevel3(pdDocument, pdPage, BORDER);
+            } finally {
+                composer.close();
+            }
+        }
+        return BenchmarkFixtures.saveAndClose(pdDocument);
+    }
+}
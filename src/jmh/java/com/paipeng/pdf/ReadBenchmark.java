@@ -0,0 +1,93 @@
+package com.paipeng.pdf;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读取: readPDF, readPDFTable, pdfTranslateImage, 文件在Setup中生成.
+ * pdfTranslateImage每次调用前清空PreviewCache, 测量渲染; pdfTranslateImageCached测量缓存命中
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReadBenchmark {
+    @Param({"1", "20", "200"})
+    public int pageCount;
+
+    private File pdfFile;
+    private File imageFile;
+    private File previewDirectory;
+    private File defaultPreviewDirectory;
+
+    @Setup
+    public void setup() throws IOException {
+        pdfFile = BenchmarkFixtures.statementPdf(pageCount);
+        imageFile = File.createTempFile("benchmark-page-", ".jpg");
+        // not the shared default directory
+        previewDirectory = Files.createTempDirectory("benchmark-preview-").toFile();
+        defaultPreviewDirectory = PreviewCache.getInstance().getDirectory();
+        PreviewCache.getInstance().setDirectory(previewDirectory);
+    }
+
+    @TearDown
+    public void tearDown() {
+        PreviewCache.getInstance().clear();
+        PreviewCache.getInstance().setDirectory(defaultPreviewDirectory);
+        previewDirectory.delete();
+        pdfFile.delete();
+        imageFile.delete();
+    }
+
+    /**
+     * 每次调用前清空预览缓存
+     */
+    @State(Scope.Thread)
+    public static class EmptyPreviewCache {
+        @Setup(Level.Invocation)
+        public void clear() {
+            PreviewCache.getInstance().clear();
+        }
+    }
+
+    @Benchmark
+    public String readPDF() {
+        return PDFUtils.readPDF(pdfFile.getPath());
+    }
+
+    @Benchmark
+    public String readPDFTable() {
+        return PDFUtils.readPDFTable(pdfFile.getPath());
+    }
+
+    @Benchmark
+    public long pdfTranslateImage(EmptyPreviewCache emptyPreviewCache) {
+        PDFUtils.pdfTranslateImage(pdfFile.getPath(), imageFile.getPath());
+        return imageFile.length();
+    }
+
+    @Benchmark
+    public long pdfTranslateImageCached() {
+        PDFUtils.pdfTranslateImage(pdfFile.getPath(), imageFile.getPath());
+        return imageFile.length();
+    }
+}
@@ -0,0 +1,56 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TextLayout: 按宽度断行和分页, 不保存文档
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TextLayoutBenchmark {
+    @Param({"16", "1024"})
+    public int kilobytes;
+
+    private String fontPath;
+    private String text;
+
+    @Setup
+    public void setup() {
+        fontPath = BenchmarkFixtures.fontPath();
+        String line = BenchmarkFixtures.CJK_TEXT;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < kilobytes * 1024; i++) {
+            builder.append(line).append(i % 10 == 9 ? '\n' : ' ');
+        }
+        text = builder.toString();
+    }
+
+    @Benchmark
+    public int layout() throws IOException {
+        try (PDDocument pdDocument = new PDDocument()) {
+            int pages = new TextLayout().layout(pdDocument, fontPath, new StringReader(text));
+            FontCache.getInstance().release(pdDocument);
+            return pages;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Vector;
+import java.util.concurrent.Future;
+
+/**
+ * 分条渲染高分辨率页面
+ *
+ * 600-1200 DPI的A3页面整页渲染需要几个G的BufferedImage. 这里把页面按水平条带渲染,
+ * 每个条带平移后调用PDFRenderer.renderPageToGraphics, 渲染完直接交给twelvemonkeys的TIFF写入器,
+ * 按条带(RowsPerStrip)写入. 内存占用只和条带高度、线程数有关, 和页面大小无关.
+ *
+ * <pre>
+ * BandedPageRenderer renderer = new BandedPageRenderer(4);
+ * renderer.setDpi(1200);
+ * renderer.setImageType(ImageType.BINARY);
+ * renderer.renderTiff(new File("/data/a3.pdf"), 0, -1, new File("/data/a3.tif"));
+ * </pre>
+ */
+public class BandedPageRenderer {
+    private final int threads;
+
+    private float dpi = 600;
+    private int bandHeight = 256;
+    private ImageType imageType = ImageType.RGB;
+    private String compression;
+    private MemoryUsageSetting memoryUsageSetting = MemorySettings.getInstance().getMemoryUsageSetting();
+
+    /**
+     * @param threads 渲染条带的线程数
+     */
+    public BandedPageRenderer(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * 渲染页面到一个多页TIFF文件, 每页按条带写入
+     *
+     * @param pdfFile   PDF文件
+     * @param startPage 开始页码, 从0开始
+     * @param endPage   结束页码(包含), -1表示最后一页
+     * @param tiffFile  输出的TIFF文件
+     */
+    public void renderTiff(File pdfFile, int startPage, int endPage, File tiffFile) throws IOException {
+        ImageWriter writer = PageRasterizer.createTiffWriter();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionType(compression != null ? compression
+                : imageType == ImageType.BINARY ? "CCITT T.6" : "Deflate");
+
+        if (tiffFile.exists() && !tiffFile.delete()) {
+            throw new IOException("cannot replace " + tiffFile);
+        }
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(tiffFile);
+             RenderPool pool = new RenderPool(pdfFile, memoryUsageSetting, threads, "pdf-band")) {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+
+            for (int pageIndex = Math.max(0, startPage); pageIndex <= pool.lastPage(endPage); pageIndex++) {
+                BandedImage image = new BandedImage(pool, pageIndex);
+                try {
+                    writer.writeToSequence(new IIOImage(image, null, null), param);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    image.cancel();
+                }
+            }
+
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * 渲染页面中的一个条带
+     *
+     * @param pool      渲染线程池, 使用当前线程的文档
+     * @param pageIndex 页码
+     * @param y         条带顶部的像素行
+     * @param width     页面宽度(像素)
+     * @param height    条带高度(像素)
+     * @return 位于页面坐标(0, y)的条带
+     */
+    private Raster renderBand(RenderPool pool, int pageIndex, int y, int width, int height) throws IOException {
+        long start = System.nanoTime();
+        BufferedImage band = new BufferedImage(width, height, toBufferedImageType(imageType));
+        Graphics2D graphics = band.createGraphics();
+        try {
+            // renderPageToGraphics clears the crop box with the background colour
+            graphics.setBackground(Color.WHITE);
+            graphics.clearRect(0, 0, width, height);
+            graphics.translate(0, -y);
+            graphics.clip(new Rectangle(0, y, width, height));
+            pool.getRenderer().renderPageToGraphics(pageIndex, graphics, dpi / 72f);
+        } finally {
+            graphics.dispose();
+        }
+        Metrics.getInstance().record(Instrumentation.Stage.RENDER_PAGE, start, 0,
+                (long) width * height * band.getColorModel().getPixelSize() / 8);
+        return band.getRaster().createTranslatedChild(0, y);
+    }
+
+    private static int toBufferedImageType(ImageType imageType) {
+        switch (imageType) {
+            case BINARY:
+                return BufferedImage.TYPE_BYTE_BINARY;
+            case GRAY:
+                return BufferedImage.TYPE_BYTE_GRAY;
+            case ARGB:
+                return BufferedImage.TYPE_INT_ARGB;
+            default:
+                return BufferedImage.TYPE_INT_RGB;
+        }
+    }
+
+    /**
+     * 一页的虚拟图片, 每个tile是一个整页宽的条带, 写入器按顺序读取时条带才被渲染.
+     * 后面的条带提前提交给线程池, 同时在内存中的条带不超过线程数的两倍
+     */
+    private class BandedImage implements RenderedImage {
+        private final RenderPool pool;
+        private final int pageIndex;
+        private final int width;
+        private final int height;
+        private final int bands;
+        private final ColorModel colorModel;
+        private final SampleModel sampleModel;
+
+        private final Deque<Future<Raster>> pending = new ArrayDeque<>();
+        private int nextBand;
+        private int nextSubmit;
+
+        BandedImage(RenderPool pool, int pageIndex) throws IOException {
+            this.pool = pool;
+            this.pageIndex = pageIndex;
+
+            // same pixel size as PDFRenderer.renderImage
+            PDPage pdPage = pool.getDocument().getPage(pageIndex);
+            PDRectangle cropBox = pdPage.getCropBox();
+            float scale = dpi / 72f;
+            int widthPx = (int) Math.max(Math.floor(cropBox.getWidth() * scale), 1);
+            int heightPx = (int) Math.max(Math.floor(cropBox.getHeight() * scale), 1);
+            int rotation = pdPage.getRotation();
+            if (rotation == 90 || rotation == 270) {
+                this.width = heightPx;
+                this.height = widthPx;
+            } else {
+                this.width = widthPx;
+                this.height = heightPx;
+            }
+            this.bands = (height + bandHeight - 1) / bandHeight;
+
+            BufferedImage sample = new BufferedImage(1, 1, toBufferedImageType(imageType));
+            this.colorModel = sample.getColorModel();
+            this.sampleModel = colorModel.createCompatibleSampleModel(width, bandHeight);
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            try {
+                if (tileY != nextBand) {
+                    // out of order access, render it directly
+                    return renderTile(tileY);
+                }
+                while (nextSubmit < bands && pending.size() < threads * 2) {
+                    final int band = nextSubmit++;
+                    pending.add(pool.submit(band, this::renderTile));
+                }
+                nextBand++;
+                return RenderPool.waitFor(pending.poll());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Raster renderTile(int band) throws IOException {
+            // the writer expects full tiles, the last band is padded below the page
+            return renderBand(pool, pageIndex, band * bandHeight, width, bandHeight);
+        }
+
+        void cancel() {
+            for (Future<Raster> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+        }
+
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return java.awt.Image.UndefinedProperty;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+
+        @Override
+        public ColorModel getColorModel() {
+            return colorModel;
+        }
+
+        @Override
+        public SampleModel getSampleModel() {
+            return sampleModel;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+
+        @Override
+        public int getNumXTiles() {
+            return 1;
+        }
+
+        @Override
+        public int getNumYTiles() {
+            return bands;
+        }
+
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+
+        @Override
+        public int getTileWidth() {
+            return width;
+        }
+
+        @Override
+        public int getTileHeight() {
+            return bandHeight;
+        }
+
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+
+        @Override
+        public Raster getData() {
+            return getData(new Rectangle(0, 0, width, height));
+        }
+
+        @Override
+        public Raster getData(Rectangle rect) {
+            // only used by writers that do not read tiles, this needs the whole region in memory
+            WritableRaster raster = colorModel.createCompatibleWritableRaster(rect.width, rect.height)
+                    .createWritableTranslatedChild(rect.x, rect.y);
+            copyData(raster);
+            return raster;
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            if (raster == null) {
+                return (WritableRaster) getData();
+            }
+            Rectangle bounds = raster.getBounds();
+            int first = Math.max(0, bounds.y / bandHeight);
+            int last = Math.min(bands - 1, (bounds.y + bounds.height - 1) / bandHeight);
+            try {
+                for (int band = first; band <= last; band++) {
+                    Raster tile = renderTile(band);
+                    Rectangle overlap = tile.getBounds().intersection(bounds);
+                    if (!overlap.isEmpty()) {
+                        raster.setRect(tile.createChild(overlap.x, overlap.y, overlap.width, overlap.height,
+                                overlap.x, overlap.y, null));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return raster;
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public float getDpi() {
+        return dpi;
+    }
+
+    public void setDpi(float dpi) {
+        this.dpi = dpi;
+    }
+
+    public int getBandHeight() {
+        return bandHeight;
+    }
+
+    /**
+     * 条带高度(像素), 也是TIFF的RowsPerStrip
+     */
+    public void setBandHeight(int bandHeight) {
+        if (bandHeight < 1) {
+            throw new IllegalArgumentException("bandHeight must be at least 1");
+        }
+        this.bandHeight = bandHeight;
+    }
+
+    public ImageType getImageType() {
+        return imageType;
+    }
+
+    public void setImageType(ImageType imageType) {
+        this.imageType = imageType;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * TIFF压缩方式, 例如"LZW", "Deflate", "PackBits", "CCITT T.6";
+     * 为空时二值图使用CCITT T.6, 其他使用Deflate
+     */
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+}
@@ -0,0 +1,240 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.util.Matrix;
+import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.BarcodeGenerator;
+import org.krysalis.barcode4j.TextAlignment;
+import org.krysalis.barcode4j.output.AbstractCanvasProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 矢量条码
+ *
+ * 使用barcode4j的条码逻辑, 把每个条/模块作为填充矩形直接写入页面内容流, 不再先栅格化成图片.
+ * 所有矩形只用一个填充操作符, 颜色默认为纯黑(K). 人眼可读文字的ASCII字符宽度按字体整表计算一次后缓存.
+ */
+public class BarcodeDrawer {
+    private static final BarcodeDrawer INSTANCE = new BarcodeDrawer();
+
+    private static final float MM_TO_POINT = 72f / 25.4f;
+
+    public static final PDColor BLACK = new PDColor(new float[]{0, 0, 0, 1}, PDDeviceCMYK.INSTANCE);
+
+    private static final int ASCII = 128;
+
+    // font name -> advance widths of ASCII characters in glyph space units, NaN if not encodable;
+    // built completely before it is published, the arrays are never written afterwards
+    private final Map<String, float[]> advanceWidths = new ConcurrentHashMap<>();
+
+    public static BarcodeDrawer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 绘制条码
+     *
+     * @param composer  页面合成器
+     * @param generator barcode4j条码, 例如Code128Bean, DataMatrixBean
+     * @param message   条码内容
+     * @param x         左下角x坐标
+     * @param y         左下角y坐标
+     * @param color     条码颜色
+     * @return 条码占用的区域(包括静区)
+     */
+    public PDRectangle draw(PageComposer composer, BarcodeGenerator generator, String message, float x, float y, PDColor color) throws IOException {
+        return draw(composer, generator, message, x, y, 0, color);
+    }
+
+    /**
+     * 绘制旋转的条码
+     *
+     * @param composer    页面合成器
+     * @param generator   barcode4j条码
+     * @param message     条码内容
+     * @param x           旋转前左下角x坐标
+     * @param y           旋转前左下角y坐标
+     * @param orientation 逆时针旋转角度, 0, 90, 180或270
+     * @param color       条码颜色
+     * @return 旋转前条码占用的区域(包括静区)
+     */
+    public PDRectangle draw(PageComposer composer, BarcodeGenerator generator, String message, float x, float y, int orientation, PDColor color) throws IOException {
+        BarcodeDimension dimension = generator.calcDimensions(message);
+        float width = (float) dimension.getWidthPlusQuiet() * MM_TO_POINT;
+        float height = (float) dimension.getHeightPlusQuiet() * MM_TO_POINT;
+
+        orientation = BarcodeDimension.normalizeOrientation(orientation);
+        float originX = x;
+        float originY = y;
+        // colour and the character spacing of the human-readable text must not leak into later drawing
+        composer.saveGraphicsState();
+        if (orientation != 0) {
+            Matrix matrix = Matrix.getTranslateInstance(x, y);
+            matrix.rotate(Math.toRadians(orientation));
+            composer.transform(matrix);
+            originX = 0;
+            originY = 0;
+        }
+
+        PdfCanvasProvider canvas = new PdfCanvasProvider(composer, originX, originY, height);
+        composer.setNonStrokingColor(color);
+        try {
+            generator.generateBarcode(canvas, message);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (canvas.rectangles > 0) {
+            composer.fill();
+        }
+
+        for (HumanReadableText text : canvas.texts) {
+            drawText(composer, text, originX, originY, height);
+        }
+
+        composer.restoreGraphicsState();
+        return new PDRectangle(x, y, width, height);
+    }
+
+    private void drawText(PageComposer composer, HumanReadableText text, float originX, float originY, float height) throws IOException {
+        PDFont font = getFont(text.fontName);
+        float fontSize = (float) text.fontSize * MM_TO_POINT;
+        float x1 = originX + (float) text.x1 * MM_TO_POINT;
+        float x2 = originX + (float) text.x2 * MM_TO_POINT;
+        float baseline = originY + height - (float) text.y1 * MM_TO_POINT;
+
+        float textWidth = getTextWidth(font, text.text) / 1000 * fontSize;
+        float tx;
+        float characterSpacing = 0;
+        if (text.alignment == TextAlignment.TA_LEFT) {
+            tx = x1;
+        } else if (text.alignment == TextAlignment.TA_RIGHT) {
+            tx = x2 - textWidth;
+        } else if (text.alignment == TextAlignment.TA_JUSTIFY && text.text.length() > 1) {
+            tx = x1;
+            characterSpacing = (x2 - x1 - textWidth) / (text.text.length() - 1);
+        } else {
+            tx = x1 + (x2 - x1 - textWidth) / 2;
+        }
+
+        composer.beginText();
+        composer.setFont(font, fontSize);
+        composer.setCharacterSpacing(characterSpacing);
+        composer.newLineAtOffset(tx, baseline);
+        composer.showText(text.text);
+        composer.endText();
+    }
+
+    private float getTextWidth(PDFont font, String text) throws IOException {
+        float[] widths = advanceWidths.computeIfAbsent(font.getName(), name -> loadWidths(font));
+        float width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            float w = c < ASCII ? widths[c] : Float.NaN;
+            if (Float.isNaN(w)) {
+                // outside ASCII or not encodable, let PDFBox measure it or report the character
+                synchronized (font) {
+                    return font.getStringWidth(text);
+                }
+            }
+            width += w;
+        }
+        return width;
+    }
+
+    /**
+     * 计算ASCII字符的宽度. 标准14字体是PDFBox中的共享实例, 它的宽度缓存不是线程安全的,
+     * 和FontMetrics一样在字体上加锁
+     */
+    private static float[] loadWidths(PDFont font) {
+        float[] widths = new float[ASCII];
+        synchronized (font) {
+            for (int c = 0; c < ASCII; c++) {
+                try {
+                    widths[c] = font.getStringWidth(String.valueOf((char) c));
+                } catch (IOException | IllegalArgumentException e) {
+                    widths[c] = Float.NaN;
+                }
+            }
+        }
+        return widths;
+    }
+
+    private static PDFont getFont(String fontName) {
+        String name = fontName == null ? "" : fontName.toLowerCase();
+        if (name.startsWith("courier")) {
+            return PDType1Font.COURIER;
+        } else if (name.startsWith("times")) {
+            return PDType1Font.TIMES_ROMAN;
+        }
+        return PDType1Font.HELVETICA;
+    }
+
+    private static class HumanReadableText {
+        private final String text;
+        private final double x1;
+        private final double x2;
+        private final double y1;
+        private final String fontName;
+        private final double fontSize;
+        private final TextAlignment alignment;
+
+        HumanReadableText(String text, double x1, double x2, double y1, String fontName, double fontSize, TextAlignment alignment) {
+            this.text = text;
+            this.x1 = x1;
+            this.x2 = x2;
+            this.y1 = y1;
+            this.fontName = fontName;
+            this.fontSize = fontSize;
+            this.alignment = alignment;
+        }
+    }
+
+    /**
+     * barcode4j的坐标以毫米为单位, 原点在左上角; 转换成PDF的点和左下角原点
+     */
+    private static class PdfCanvasProvider extends AbstractCanvasProvider {
+        private final PageComposer composer;
+        private final float originX;
+        private final float originY;
+        private final float height;
+
+        private final List<HumanReadableText> texts = new ArrayList<>();
+        private int rectangles;
+
+        PdfCanvasProvider(PageComposer composer, float originX, float originY, float height) {
+            super(0);
+            this.composer = composer;
+            this.originX = originX;
+            this.originY = originY;
+            this.height = height;
+        }
+
+        @Override
+        public void deviceFillRect(double x, double y, double w, double h) {
+            try {
+                composer.addRect(originX + (float) x * MM_TO_POINT,
+                        originY + height - (float) (y + h) * MM_TO_POINT,
+                        (float) w * MM_TO_POINT, (float) h * MM_TO_POINT);
+                rectangles++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void deviceText(String text, double x1, double x2, double y1, String fontName, double fontSize, TextAlignment textAlign) {
+            texts.add(new HumanReadableText(text, x1, x2, y1, fontName, fontSize, textAlign));
+        }
+    }
+}
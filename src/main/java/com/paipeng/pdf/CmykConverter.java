@@ -0,0 +1,391 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
+
+import java.awt.Color;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RGB到CMYK的颜色转换
+ *
+ * 转换结果预先计算为3D查找表, 每个像素用四面体插值, 比逐像素的ColorConvertOp快得多.
+ * 查找表按ICC文件和渲染意图缓存. 没有ICC文件时使用简单的DeviceCMYK公式(完全灰成分替代).
+ *
+ * 调用setOutputConverter后, ImageEncoder把RGB图片转换为CMYK后嵌入, PageComposer把RGB颜色转换为CMYK,
+ * 输出的文档中不再有RGB颜色:
+ *
+ * <pre>
+ * CmykConverter.setOutputConverter(CmykConverter.getInstance(new File("/data/ISOcoated_v2_eci.icc"),
+ *         CmykConverter.Intent.RELATIVE_COLORIMETRIC));
+ * </pre>
+ */
+public class CmykConverter {
+    public enum Intent {
+        PERCEPTUAL, RELATIVE_COLORIMETRIC, SATURATION, ABSOLUTE_COLORIMETRIC
+    }
+
+    private static final int GRID_POINTS = 33;
+
+    private static final CmykConverter DEVICE_CMYK = new CmykConverter(null, null, deviceCmykTable(GRID_POINTS), GRID_POINTS);
+
+    private static final Map<String, CmykConverter> CONVERTERS = new ConcurrentHashMap<>();
+
+    private static volatile CmykConverter outputConverter;
+
+    private final ICC_Profile profile;
+    private final Intent intent;
+    private final int gridPoints;
+    // ((r * gridPoints + g) * gridPoints + b) * 4 -> c, m, y, k
+    private final byte[] table;
+
+    // document -> ICCBased colour space of the profile
+    private final Map<PDDocument, PDColorSpace> colorSpaces = new WeakHashMap<>();
+
+    private CmykConverter(ICC_Profile profile, Intent intent, byte[] table, int gridPoints) {
+        this.profile = profile;
+        this.intent = intent;
+        this.table = table;
+        this.gridPoints = gridPoints;
+    }
+
+    /**
+     * 不使用ICC文件的DeviceCMYK转换
+     */
+    public static CmykConverter getInstance() {
+        return DEVICE_CMYK;
+    }
+
+    /**
+     * 使用ICC文件的转换, 同一文件和渲染意图的查找表只计算一次
+     *
+     * @param iccProfile CMYK输出ICC文件, 例如FOGRA39
+     * @param intent     渲染意图
+     */
+    public static CmykConverter getInstance(File iccProfile, Intent intent) throws IOException {
+        String key = iccProfile.getCanonicalPath() + "|" + iccProfile.length() + "|" + iccProfile.lastModified() + "|" + intent;
+        CmykConverter converter = CONVERTERS.get(key);
+        if (converter == null) {
+            synchronized (CONVERTERS) {
+                converter = CONVERTERS.get(key);
+                if (converter == null) {
+                    ICC_Profile profile = withIntent(ICC_Profile.getInstance(iccProfile.getPath()), intent);
+                    if (profile.getColorSpaceType() != ColorSpace.TYPE_CMYK) {
+                        throw new IOException(iccProfile + " is not a CMYK profile");
+                    }
+                    converter = new CmykConverter(profile, intent, profileTable(profile, intent, GRID_POINTS), GRID_POINTS);
+                    CONVERTERS.put(key, converter);
+                }
+            }
+        }
+        return converter;
+    }
+
+    /**
+     * 输出使用的转换, 为空时不转换
+     */
+    public static CmykConverter getOutputConverter() {
+        return outputConverter;
+    }
+
+    /**
+     * 设置输出使用的转换, 之后嵌入的RGB图片和设置的RGB颜色都转换为CMYK; 为空时不转换
+     */
+    public static void setOutputConverter(CmykConverter converter) {
+        outputConverter = converter;
+    }
+
+    /**
+     * 清空ICC查找表缓存
+     */
+    public static void clear() {
+        CONVERTERS.clear();
+    }
+
+    /**
+     * 转换一行像素
+     *
+     * @param rgb    getRGB得到的像素, 忽略透明度
+     * @param offset 第一个像素的位置
+     * @param width  像素数
+     * @param cmyk   输出, 每个像素4个字节
+     * @param cmykOffset 输出的起始位置
+     */
+    public void convert(int[] rgb, int offset, int width, byte[] cmyk, int cmykOffset) {
+        int n = gridPoints;
+        int scale = n - 1;
+        int strideB = 4;
+        int strideG = n * 4;
+        int strideR = n * n * 4;
+        byte[] t = table;
+
+        for (int x = 0; x < width; x++) {
+            int pixel = rgb[offset + x];
+            // grid index and position inside the cell, in 1/255 steps
+            int r = ((pixel >> 16) & 0xff) * scale;
+            int g = ((pixel >> 8) & 0xff) * scale;
+            int b = (pixel & 0xff) * scale;
+            // 255 lands on the last grid point, which is treated as the far end of the last cell
+            int ri = Math.min(r / 255, scale - 1);
+            int gi = Math.min(g / 255, scale - 1);
+            int bi = Math.min(b / 255, scale - 1);
+            int fr = r - ri * 255;
+            int fg = g - gi * 255;
+            int fb = b - bi * 255;
+            int base = ri * strideR + gi * strideG + bi * strideB;
+
+            // tetrahedral interpolation: the cell is split into six tetrahedra along its diagonal
+            int step1;
+            int step2;
+            int w0;
+            int w1;
+            int w2;
+            if (fr >= fg) {
+                if (fg >= fb) {
+                    step1 = strideR;
+                    step2 = strideR + strideG;
+                    w0 = fr;
+                    w1 = fg;
+                    w2 = fb;
+                } else if (fr >= fb) {
+                    step1 = strideR;
+                    step2 = strideR + strideB;
+                    w0 = fr;
+                    w1 = fb;
+                    w2 = fg;
+                } else {
+                    step1 = strideB;
+                    step2 = strideR + strideB;
+                    w0 = fb;
+                    w1 = fr;
+                    w2 = fg;
+                }
+            } else {
+                if (fr >= fb) {
+                    step1 = strideG;
+                    step2 = strideR + strideG;
+                    w0 = fg;
+                    w1 = fr;
+                    w2 = fb;
+                } else if (fg >= fb) {
+                    step1 = strideG;
+                    step2 = strideG + strideB;
+                    w0 = fg;
+                    w1 = fb;
+                    w2 = fr;
+                } else {
+                    step1 = strideB;
+                    step2 = strideG + strideB;
+                    w0 = fb;
+                    w1 = fg;
+                    w2 = fr;
+                }
+            }
+            int c0 = base;
+            int c1 = base + step1;
+            int c2 = base + step2;
+            int c3 = base + strideR + strideG + strideB;
+
+            int o = cmykOffset + x * 4;
+            for (int i = 0; i < 4; i++) {
+                int v0 = t[c0 + i] & 0xff;
+                int v1 = t[c1 + i] & 0xff;
+                int v2 = t[c2 + i] & 0xff;
+                int v3 = t[c3 + i] & 0xff;
+                int v = v0 * 255 + w0 * (v1 - v0) + w1 * (v2 - v1) + w2 * (v3 - v2);
+                cmyk[o + i] = (byte) ((v + 127) / 255);
+            }
+        }
+    }
+
+    /**
+     * 转换图片为CMYK图片, 透明度被忽略
+     *
+     * @param bufferedImage RGB图片
+     */
+    public BufferedImage convert(BufferedImage bufferedImage) {
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        ColorSpace colorSpace = profile != null ? new ICC_ColorSpace(profile) : DeviceCmykSpace.INSTANCE;
+        ComponentColorModel colorModel = new ComponentColorModel(colorSpace, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bufferedImage.getRGB(0, y, width, 1, row, 0, width);
+            convert(row, 0, width, data, y * width * 4);
+        }
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * 转换颜色
+     *
+     * @param color RGB颜色
+     * @return DeviceCMYK颜色
+     */
+    public PDColor convert(Color color) {
+        byte[] cmyk = new byte[4];
+        convert(new int[]{color.getRGB()}, 0, 1, cmyk, 0);
+        return new PDColor(new float[]{(cmyk[0] & 0xff) / 255f, (cmyk[1] & 0xff) / 255f,
+                (cmyk[2] & 0xff) / 255f, (cmyk[3] & 0xff) / 255f}, PDDeviceCMYK.INSTANCE);
+    }
+
+    /**
+     * 转换颜色
+     *
+     * @param r 红, 0到1
+     * @param g 绿, 0到1
+     * @param b 蓝, 0到1
+     * @return DeviceCMYK颜色
+     */
+    public PDColor convert(float r, float g, float b) {
+        return convert(new Color(clamp(r), clamp(g), clamp(b)));
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(1, value));
+    }
+
+    /**
+     * 嵌入图片时使用的颜色空间: 有ICC文件时为ICCBased, 每个文档只嵌入一次; 否则为DeviceCMYK
+     *
+     * @param pdDocument 文档
+     */
+    public PDColorSpace getColorSpace(PDDocument pdDocument) throws IOException {
+        if (profile == null) {
+            return PDDeviceCMYK.INSTANCE;
+        }
+        synchronized (colorSpaces) {
+            PDColorSpace colorSpace = colorSpaces.get(pdDocument);
+            if (colorSpace == null) {
+                PDStream stream = new PDStream(pdDocument, new ByteArrayInputStream(profile.getData()), COSName.FLATE_DECODE);
+                stream.getCOSObject().setInt(COSName.N, 4);
+                stream.getCOSObject().setItem(COSName.ALTERNATE, COSName.DEVICECMYK);
+                COSArray array = new COSArray();
+                array.add(COSName.ICCBASED);
+                array.add(stream);
+                // a new stream, no resource dictionary can have cached it yet
+                colorSpace = PDICCBased.create(array, null);
+                colorSpaces.put(pdDocument, colorSpace);
+            }
+            return colorSpace;
+        }
+    }
+
+    public ICC_Profile getProfile() {
+        return profile;
+    }
+
+    public Intent getIntent() {
+        return intent;
+    }
+
+    // the rendering intent is read from the profile header, bytes 64 to 67
+    private static ICC_Profile withIntent(ICC_Profile profile, Intent intent) {
+        byte[] data = profile.getData();
+        data[64] = 0;
+        data[65] = 0;
+        data[66] = 0;
+        data[67] = (byte) intent.ordinal();
+        return ICC_Profile.getInstance(data);
+    }
+
+    private static byte[] profileTable(ICC_Profile profile, Intent intent, int n) {
+        // all grid colours are converted with one ColorConvertOp call
+        ICC_Profile sRGB = withIntent(ICC_Profile.getInstance(ColorSpace.CS_sRGB), intent);
+        ComponentColorModel rgbModel = new ComponentColorModel(new ICC_ColorSpace(sRGB), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        WritableRaster rgbRaster = rgbModel.createCompatibleWritableRaster(n * n * n, 1);
+        byte[] rgb = ((DataBufferByte) rgbRaster.getDataBuffer()).getData();
+        for (int r = 0, i = 0; r < n; r++) {
+            for (int g = 0; g < n; g++) {
+                for (int b = 0; b < n; b++) {
+                    rgb[i++] = (byte) Math.round(r * 255f / (n - 1));
+                    rgb[i++] = (byte) Math.round(g * 255f / (n - 1));
+                    rgb[i++] = (byte) Math.round(b * 255f / (n - 1));
+                }
+            }
+        }
+        BufferedImage source = new BufferedImage(rgbModel, rgbRaster, false, null);
+
+        ComponentColorModel cmykModel = new ComponentColorModel(new ICC_ColorSpace(profile), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        BufferedImage target = new BufferedImage(cmykModel, cmykModel.createCompatibleWritableRaster(n * n * n, 1), false, null);
+        new ColorConvertOp(null).filter(source, target);
+        return ((DataBufferByte) target.getRaster().getDataBuffer()).getData().clone();
+    }
+
+    private static byte[] deviceCmykTable(int n) {
+        byte[] table = new byte[n * n * n * 4];
+        for (int r = 0, i = 0; r < n; r++) {
+            for (int g = 0; g < n; g++) {
+                for (int b = 0; b < n; b++) {
+                    float[] cmyk = DeviceCmykSpace.INSTANCE.fromRGB(new float[]{r / (n - 1f), g / (n - 1f), b / (n - 1f)});
+                    for (float v : cmyk) {
+                        table[i++] = (byte) Math.round(v * 255);
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 简单的CMYK颜色空间: K = 1 - max(R, G, B), 其余按K归一化
+     */
+    private static class DeviceCmykSpace extends ColorSpace {
+        private static final long serialVersionUID = 1L;
+
+        private static final DeviceCmykSpace INSTANCE = new DeviceCmykSpace();
+
+        private DeviceCmykSpace() {
+            super(ColorSpace.TYPE_CMYK, 4);
+        }
+
+        @Override
+        public float[] toRGB(float[] value) {
+            float k = value[3];
+            return new float[]{(1 - value[0]) * (1 - k), (1 - value[1]) * (1 - k), (1 - value[2]) * (1 - k)};
+        }
+
+        @Override
+        public float[] fromRGB(float[] rgb) {
+            float k = 1 - Math.max(rgb[0], Math.max(rgb[1], rgb[2]));
+            if (k >= 1) {
+                return new float[]{0, 0, 0, 1};
+            }
+            return new float[]{(1 - rgb[0] - k) / (1 - k), (1 - rgb[1] - k) / (1 - k), (1 - rgb[2] - k) / (1 - k), k};
+        }
+
+        @Override
+        public float[] toCIEXYZ(float[] value) {
+            return ColorSpace.getInstance(ColorSpace.CS_sRGB).toCIEXYZ(toRGB(value));
+        }
+
+        @Override
+        public float[] fromCIEXYZ(float[] xyz) {
+            return fromRGB(ColorSpace.getInstance(ColorSpace.CS_sRGB).fromCIEXYZ(xyz));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * COS对象内容哈希
+ *
+ * 对字典、数组和流(原始编码后的数据)递归计算SHA-256, 结构和数据相同的对象得到相同的哈希.
+ * 回指父节点的/Parent、/P以及/Length不参与计算. 同一个实例内按对象引用缓存结果.
+ */
+class CosHasher {
+    private static final COSName P = COSName.getPDFName("P");
+
+    private final Map<COSBase, Digest> digests = new IdentityHashMap<>();
+    private final Map<COSBase, Boolean> inProgress = new IdentityHashMap<>();
+
+    /**
+     * 计算对象的内容哈希
+     *
+     * @param cosBase COS对象, 间接对象会被解引用
+     */
+    Digest digest(COSBase cosBase) throws IOException {
+        COSBase object = dereference(cosBase);
+        if (object == null) {
+            return new Digest(sha256().digest("null".getBytes(StandardCharsets.US_ASCII)));
+        }
+
+        Digest digest = digests.get(object);
+        if (digest != null) {
+            return digest;
+        }
+
+        MessageDigest messageDigest = sha256();
+        if (inProgress.containsKey(object)) {
+            // cycle that does not go through /Parent, hash a marker instead of recursing
+            messageDigest.update("cycle".getBytes(StandardCharsets.US_ASCII));
+            return new Digest(messageDigest.digest());
+        }
+
+        inProgress.put(object, Boolean.TRUE);
+        try {
+            update(messageDigest, object);
+        } finally {
+            inProgress.remove(object);
+        }
+
+        digest = new Digest(messageDigest.digest());
+        digests.put(object, digest);
+        return digest;
+    }
+
+    private void update(MessageDigest messageDigest, COSBase object) throws IOException {
+        if (object instanceof COSStream) {
+            messageDigest.update((byte) 's');
+            updateDictionary(messageDigest, (COSDictionary) object);
+            byte[] buffer = new byte[8192];
+            try (InputStream in = ((COSStream) object).createRawInputStream()) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    messageDigest.update(buffer, 0, n);
+                }
+            }
+        } else if (object instanceof COSDictionary) {
+            messageDigest.update((byte) 'd');
+            updateDictionary(messageDigest, (COSDictionary) object);
+        } else if (object instanceof COSArray) {
+            messageDigest.update((byte) 'a');
+            for (COSBase item : (COSArray) object) {
+                messageDigest.update(digest(item).bytes);
+            }
+        } else if (object instanceof COSName) {
+            messageDigest.update((byte) 'n');
+            messageDigest.update(((COSName) object).getName().getBytes(StandardCharsets.UTF_8));
+        } else if (object instanceof COSString) {
+            messageDigest.update((byte) 't');
+            messageDigest.update(((COSString) object).getBytes());
+        } else if (object instanceof COSInteger) {
+            messageDigest.update((byte) 'i');
+            messageDigest.update(ByteBuffer.allocate(8).putLong(((COSInteger) object).longValue()).array());
+        } else if (object instanceof COSFloat) {
+            messageDigest.update((byte) 'f');
+            messageDigest.update(ByteBuffer.allocate(4).putFloat(((COSFloat) object).floatValue()).array());
+        } else if (object instanceof COSBoolean) {
+            messageDigest.update(((COSBoolean) object).getValue() ? (byte) 'T' : (byte) 'F');
+        } else {
+            messageDigest.update(object.getClass().getName().getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private void updateDictionary(MessageDigest messageDigest, COSDictionary dictionary) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (COSName key : dictionary.keySet()) {
+            if (!COSName.PARENT.equals(key) && !P.equals(key) && !COSName.LENGTH.equals(key)) {
+                keys.add(key.getName());
+            }
+        }
+        keys.sort(null);
+        for (String key : keys) {
+            messageDigest.update(key.getBytes(StandardCharsets.UTF_8));
+            messageDigest.update((byte) 0);
+            messageDigest.update(digest(dictionary.getItem(COSName.getPDFName(key))).bytes);
+        }
+    }
+
+    static COSBase dereference(COSBase cosBase) {
+        return cosBase instanceof COSObject ? ((COSObject) cosBase).getObject() : cosBase;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static final class Digest {
+        private final byte[] bytes;
+        private final int hashCode;
+
+        Digest(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        String toHex() {
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Digest && Arrays.equals(bytes, ((Digest) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.paipeng.pdf;
+
+
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.ResourceCache;
+import org.apache.pdfbox.pdmodel.documentinterchange.markedcontent.PDPropertyList;
+import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDAbstractPattern;
+import org.apache.pdfbox.pdmodel.graphics.shading.PDShading;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 字体缓存
+ *
+ * TTF文件在JVM内只解析一次, 解析后的TrueTypeFont在所有文档之间共享;
+ * 每个PDDocument每个字体只生成一个PDFont, 多次写文字共用同一个嵌入子集.
+ * 文档的字体随文档一起回收, 不需要调用release; release只是提前释放, 调用后文档不能再通过这里加载字体.
+ * 字体表挂在文档的ResourceCache上, 加载字体后不要再调用PDDocument.setResourceCache.
+ */
+public class FontCache {
+    private static final Logger logger = LoggerFactory.getLogger(FontCache.class);
+
+    private static final FontCache INSTANCE = new FontCache();
+
+    // fontPath -> parsed TrueTypeFont, shared by all documents
+    private final Map<String, TrueTypeFont> trueTypeFonts = new ConcurrentHashMap<>();
+
+    // font path as given -> canonical path, so a cache hit needs no file system call
+    private final Map<String, String> canonicalPaths = new ConcurrentHashMap<>();
+
+    // parsed TrueTypeFont -> glyph widths, cleared together with trueTypeFonts
+    private final Map<TrueTypeFont, FontMetrics> trueTypeMetrics = new ConcurrentHashMap<>();
+
+    // standard 14 font name -> glyph widths, at most 14 entries
+    private final Map<String, FontMetrics> standard14Metrics = new ConcurrentHashMap<>();
+
+    // document -> its fonts; the PDFonts reference the document, so only the document holds the entry strongly
+    private final Map<PDDocument, WeakReference<DocumentFonts>> documentFonts = new WeakHashMap<>();
+
+    private final AtomicLong parseHits = new AtomicLong();
+    private final AtomicLong parseMisses = new AtomicLong();
+    private final AtomicLong fontHits = new AtomicLong();
+    private final AtomicLong fontMisses = new AtomicLong();
+
+    public static FontCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取文档中的字体, 同一文档同一字体只加载一次.
+     * 路径第一次使用时转换成规范路径并记住, 之后不再访问文件系统; 符号链接改变指向后需要调用clear
+     *
+     * @param pdDocument 文档
+     * @param fontPath   TTF字体文件路径
+     */
+    public PDFont getFont(PDDocument pdDocument, String fontPath) throws IOException {
+        String key = canonicalPath(fontPath);
+        DocumentFonts fonts = documentFonts(pdDocument, true);
+
+        // fonts of different documents are loaded in parallel, only one document's map is locked
+        synchronized (fonts) {
+            PDFont font = fonts.fonts.get(key);
+            if (font != null) {
+                fontHits.incrementAndGet();
+                return font;
+            }
+
+            fontMisses.incrementAndGet();
+            long start = System.nanoTime();
+            // the TrueTypeFont is shared, so it must not be closed together with the document
+            font = PDType0Font.load(pdDocument, getTrueTypeFont(key), fonts.embedSubset);
+            Metrics.getInstance().record(Instrumentation.Stage.FONT_LOAD, start, new File(key).length(), 0);
+            fonts.fonts.put(key, font);
+            return font;
+        }
+    }
+
+    /**
+     * 设置文档是否只嵌入字体子集, 默认嵌入子集. 完整嵌入的字体在合并多个文档时可以去重
+     *
+     * @param pdDocument  文档
+     * @param embedSubset 是否只嵌入子集
+     */
+    public void setEmbedSubset(PDDocument pdDocument, boolean embedSubset) {
+        DocumentFonts fonts = documentFonts(pdDocument, true);
+        synchronized (fonts) {
+            fonts.embedSubset = embedSubset;
+        }
+    }
+
+    private DocumentFonts documentFonts(PDDocument pdDocument, boolean create) {
+        synchronized (documentFonts) {
+            WeakReference<DocumentFonts> reference = documentFonts.get(pdDocument);
+            DocumentFonts fonts = reference != null ? reference.get() : null;
+            if (fonts == null && create) {
+                fonts = new DocumentFonts(pdDocument.getResourceCache());
+                pdDocument.setResourceCache(fonts);
+                documentFonts.put(pdDocument, new WeakReference<>(fonts));
+            }
+            return fonts;
+        }
+    }
+
+    private String canonicalPath(String fontPath) throws IOException {
+        String canonicalPath = canonicalPaths.get(fontPath);
+        if (canonicalPath == null) {
+            canonicalPath = new File(fontPath).getCanonicalPath();
+            canonicalPaths.put(fontPath, canonicalPath);
+        }
+        return canonicalPath;
+    }
+
+    /**
+     * 获取已解析的TTF字体, 每个文件在JVM内只解析一次
+     *
+     * @param fontPath TTF字体文件路径
+     */
+    public TrueTypeFont getTrueTypeFont(String fontPath) throws IOException {
+        String key = canonicalPath(fontPath);
+        TrueTypeFont trueTypeFont = trueTypeFonts.get(key);
+        if (trueTypeFont != null) {
+            parseHits.incrementAndGet();
+            return trueTypeFont;
+        }
+        synchronized (trueTypeFonts) {
+            trueTypeFont = trueTypeFonts.get(key);
+            if (trueTypeFont == null) {
+                parseMisses.incrementAndGet();
+                trueTypeFont = new TTFParser().parse(new File(key));
+                trueTypeFonts.put(key, trueTypeFont);
+            } else {
+                parseHits.incrementAndGet();
+            }
+        }
+        return trueTypeFont;
+    }
+
+    /**
+     * 获取TTF字体的度量, 所有文档共享
+     *
+     * @param fontPath TTF字体文件路径
+     */
+    public FontMetrics getMetrics(String fontPath) throws IOException {
+        return getMetrics(getTrueTypeFont(fontPath));
+    }
+
+    private FontMetrics getMetrics(TrueTypeFont trueTypeFont) throws IOException {
+        FontMetrics fontMetrics = trueTypeMetrics.get(trueTypeFont);
+        if (fontMetrics == null) {
+            fontMetrics = new FontMetrics(trueTypeFont);
+            FontMetrics loaded = trueTypeMetrics.putIfAbsent(trueTypeFont, fontMetrics);
+            if (loaded != null) {
+                fontMetrics = loaded;
+            }
+        }
+        return fontMetrics;
+    }
+
+    /**
+     * 获取字体的度量; 由这里加载的TTF字体和标准14字体所有文档共享, 其它字体缓存在文档中, 随文档一起回收
+     *
+     * @param pdDocument 字体所在的文档
+     * @param font       字体
+     */
+    public FontMetrics getMetrics(PDDocument pdDocument, PDFont font) {
+        FontMetrics fontMetrics = getSharedMetrics(font);
+        if (fontMetrics != null) {
+            return fontMetrics;
+        }
+        DocumentFonts fonts = documentFonts(pdDocument, true);
+        synchronized (fonts) {
+            return fonts.metrics.computeIfAbsent(font, FontCache::newMetrics);
+        }
+    }
+
+    /**
+     * 获取字体的度量; 由这里加载的TTF字体和标准14字体所有文档共享, 其它字体每次重新生成,
+     * 需要缓存时使用getMetrics(PDDocument, PDFont)
+     *
+     * @param font 字体
+     */
+    public FontMetrics getMetrics(PDFont font) {
+        FontMetrics fontMetrics = getSharedMetrics(font);
+        return fontMetrics != null ? fontMetrics : newMetrics(font);
+    }
+
+    // metrics that do not depend on a document, or null
+    private FontMetrics getSharedMetrics(PDFont font) {
+        TrueTypeFont trueTypeFont = getTrueTypeFont(font);
+        if (trueTypeFont != null && trueTypeFonts.containsValue(trueTypeFont)) {
+            try {
+                return getMetrics(trueTypeFont);
+            } catch (IOException e) {
+                // no Unicode cmap, measured through the PDFont
+                return null;
+            }
+        }
+        // without a Widths array a standard 14 font measures the same in every document
+        if (font.isStandard14() && !font.getCOSObject().containsKey(COSName.WIDTHS)) {
+            return standard14Metrics.computeIfAbsent(font.getName(), name -> new FontMetrics(font));
+        }
+        return null;
+    }
+
+    private static FontMetrics newMetrics(PDFont font) {
+        TrueTypeFont trueTypeFont = getTrueTypeFont(font);
+        if (trueTypeFont != null) {
+            try {
+                return new FontMetrics(trueTypeFont);
+            } catch (IOException e) {
+                // subsets embedded in existing files often have no Unicode cmap
+            }
+        }
+        return new FontMetrics(font);
+    }
+
+    private static TrueTypeFont getTrueTypeFont(PDFont font) {
+        if (font instanceof PDType0Font && ((PDType0Font) font).getDescendantFont() instanceof PDCIDFontType2) {
+            return ((PDCIDFontType2) ((PDType0Font) font).getDescendantFont()).getTrueTypeFont();
+        }
+        return null;
+    }
+
+    /**
+     * 获得文档中已加载的字体
+     *
+     * @param pdDocument 文档
+     */
+    public List<PDFont> getFonts(PDDocument pdDocument) {
+        DocumentFonts fonts = documentFonts(pdDocument, false);
+        if (fonts == null) {
+            return new ArrayList<>();
+        }
+        synchronized (fonts) {
+            return new ArrayList<>(fonts.fonts.values());
+        }
+    }
+
+    /**
+     * 提前释放文档的字体, 文档关闭时调用. 不调用时字体随文档一起回收
+     *
+     * @param pdDocument 文档
+     */
+    public void release(PDDocument pdDocument) {
+        synchronized (documentFonts) {
+            WeakReference<DocumentFonts> reference = documentFonts.remove(pdDocument);
+            DocumentFonts fonts = reference != null ? reference.get() : null;
+            if (fonts != null && pdDocument.getResourceCache() == fonts) {
+                pdDocument.setResourceCache(fonts.resourceCache);
+            }
+        }
+    }
+
+    /**
+     * 清空缓存并关闭所有已解析的TTF字体
+     */
+    public void clear() {
+        synchronized (documentFonts) {
+            for (PDDocument pdDocument : new ArrayList<>(documentFonts.keySet())) {
+                release(pdDocument);
+            }
+        }
+        standard14Metrics.clear();
+        canonicalPaths.clear();
+        synchronized (trueTypeFonts) {
+            trueTypeMetrics.clear();
+            for (TrueTypeFont trueTypeFont : trueTypeFonts.values()) {
+                try {
+                    trueTypeFont.close();
+                } catch (IOException e) {
+                    logger.warn("close font failed", e);
+                }
+            }
+            trueTypeFonts.clear();
+        }
+    }
+
+    public long getParseHits() {
+        return parseHits.get();
+    }
+
+    public long getParseMisses() {
+        return parseMisses.get();
+    }
+
+    public long getFontHits() {
+        return fontHits.get();
+    }
+
+    public long getFontMisses() {
+        return fontMisses.get();
+    }
+
+    /**
+     * 一个文档的字体和度量
+     *
+     * PDFont引用它所属的文档, 全局表直接保存字体时文档永远不会被回收. 这里作为文档的ResourceCache只由文档引用,
+     * 全局表只保存弱引用, 文档不再使用时和字体一起回收. ResourceCache的方法交给文档原来的缓存.
+     */
+    private static class DocumentFonts implements ResourceCache {
+        private final ResourceCache resourceCache;
+        // fontPath -> PDFont
+        private final Map<String, PDFont> fonts = new HashMap<>();
+        // metrics of fonts that are not shared by all documents
+        private final Map<PDFont, FontMetrics> metrics = new IdentityHashMap<>();
+        private boolean embedSubset = true;
+
+        DocumentFonts(ResourceCache resourceCache) {
+            this.resourceCache = resourceCache;
+        }
+
+        @Override
+        public PDFont getFont(COSObject indirect) throws IOException {
+            return resourceCache != null ? resourceCache.getFont(indirect) : null;
+        }
+
+        @Override
+        public PDColorSpace getColorSpace(COSObject indirect) throws IOException {
+            return resourceCache != null ? resourceCache.getColorSpace(indirect) : null;
+        }
+
+        @Override
+        public PDExtendedGraphicsState getExtGState(COSObject indirect) {
+            return resourceCache != null ? resourceCache.getExtGState(indirect) : null;
+        }
+
+        @Override
+        public PDShading getShading(COSObject indirect) throws IOException {
+            return resourceCache != null ? resourceCache.getShading(indirect) : null;
+        }
+
+        @Override
+        public PDAbstractPattern getPattern(COSObject indirect) throws IOException {
+            return resourceCache != null ? resourceCache.getPattern(indirect) : null;
+        }
+
+        @Override
+        public PDPropertyList getProperties(COSObject indirect) {
+            return resourceCache != null ? resourceCache.getProperties(indirect) : null;
+        }
+
+        @Override
+        public PDXObject getXObject(COSObject indirect) throws IOException {
+            return resourceCache != null ? resourceCache.getXObject(indirect) : null;
+        }
+
+        @Override
+        public void put(COSObject indirect, PDFont font) throws IOException {
+            if (resourceCache != null) {
+                resourceCache.put(indirect, font);
+            }
+        }
+
+        @Override
+        public void put(COSObject indirect, PDColorSpace colorSpace) throws IOException {
+            if (resourceCache != null) {
+                resourceCache.put(indirect, colorSpace);
+            }
+        }
+
+        @Override
+        public void put(COSObject indirect, PDExtendedGraphicsState extGState) {
+            if (resourceCache != null) {
+                resourceCache.put(indirect, extGState);
+            }
+        }
+
+        @Override
+        public void put(COSObject indirect, PDShading shading) throws IOException {
+            if (resourceCache != null) {
+                resourceCache.put(indirect, shading);
+            }
+        }
+
+        @Override
+        public void put(COSObject indirect, PDAbstractPattern pattern) throws IOException {
+            if (resourceCache != null) {
+                resourceCache.put(indirect, pattern);
+            }
+        }
+
+        @Override
+        public void put(COSObject indirect, PDPropertyList propertyList) {
+            if (resourceCache != null) {
+                resourceCache.put(indirect, propertyList);
+            }
+        }
+
+        @Override
+        public void put(COSObject indirect, PDXObject xobject) throws IOException {
+            if (resourceCache != null) {
+                resourceCache.put(indirect, xobject);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FontCache{parseHits=" + parseHits + ", parseMisses=" + parseMisses
+                + ", fontHits=" + fontHits + ", fontMisses=" + fontMisses + "}";
+    }
+}
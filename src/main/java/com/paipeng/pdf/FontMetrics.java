@@ -0,0 +1,151 @@
+package com.paipeng.pdf;
+
+
+import org.apache.fontbox.ttf.CmapLookup;
+import org.apache.fontbox.ttf.HeaderTable;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 字体度量缓存
+ *
+ * 每个字符的宽度(1/1000字号)按Unicode码位保存在基本类型数组中, 每256个码位一页, 第一次用到时整页计算.
+ * TTF字体的度量直接从TrueTypeFont读取, 在所有文档之间共享; 其它字体(例如标准14字体)通过PDFont计算.
+ * 通过FontCache.getMetrics获得.
+ */
+public class FontMetrics {
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    // width of a code point the font has no glyph for
+    private static final float MISSING = -1;
+
+    private final TrueTypeFont trueTypeFont;
+    private final CmapLookup cmapLookup;
+    private final PDFont font;
+    private final float scale;
+    private final float height;
+
+    private final AtomicReferenceArray<float[]> pages = new AtomicReferenceArray<>((Character.MAX_CODE_POINT + 1) >> PAGE_BITS);
+
+    FontMetrics(TrueTypeFont trueTypeFont) throws IOException {
+        this.trueTypeFont = trueTypeFont;
+        this.cmapLookup = trueTypeFont.getUnicodeCmapLookup();
+        this.font = null;
+        this.scale = 1000f / trueTypeFont.getUnitsPerEm();
+        HeaderTable header = trueTypeFont.getHeader();
+        this.height = (header.getYMax() - header.getYMin()) * scale;
+    }
+
+    FontMetrics(PDFont font) {
+        this.trueTypeFont = null;
+        this.cmapLookup = null;
+        this.font = font;
+        this.scale = 1;
+        PDRectangle boundingBox = font.getFontDescriptor() != null ? font.getFontDescriptor().getFontBoundingBox() : null;
+        this.height = boundingBox != null ? boundingBox.getHeight() : 1000;
+    }
+
+    /**
+     * 字符宽度, 1/1000字号; 字体中没有的字符为0
+     *
+     * @param codePoint Unicode码位
+     */
+    public float getWidth(int codePoint) {
+        float width = page(codePoint)[codePoint & (PAGE_SIZE - 1)];
+        return width == MISSING ? 0 : width;
+    }
+
+    /**
+     * 字体中是否有这个字符
+     *
+     * @param codePoint Unicode码位
+     */
+    public boolean hasGlyph(int codePoint) {
+        return page(codePoint)[codePoint & (PAGE_SIZE - 1)] != MISSING;
+    }
+
+    /**
+     * 文字宽度
+     *
+     * @param text     文字
+     * @param fontSize 字号
+     */
+    public float getStringWidth(CharSequence text, float fontSize) {
+        return getStringWidth(text, 0, text.length()) / 1000 * fontSize;
+    }
+
+    /**
+     * 文字宽度, 1/1000字号
+     *
+     * @param text  文字
+     * @param start 开始位置
+     * @param end   结束位置(不包含)
+     */
+    public float getStringWidth(CharSequence text, int start, int end) {
+        float width = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, text.charAt(++i));
+            }
+            width += getWidth(codePoint);
+        }
+        return width;
+    }
+
+    /**
+     * 字体包围盒的高度
+     *
+     * @param fontSize 字号
+     */
+    public float getHeight(float fontSize) {
+        return height / 1000 * fontSize;
+    }
+
+    private float[] page(int codePoint) {
+        int index = codePoint >>> PAGE_BITS;
+        float[] page = pages.get(index);
+        if (page == null) {
+            page = loadPage(index);
+            // another thread may have loaded the same page, both results are equal
+            pages.compareAndSet(index, null, page);
+        }
+        return page;
+    }
+
+    private float[] loadPage(int index) {
+        float[] page = new float[PAGE_SIZE];
+        int first = index << PAGE_BITS;
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page[i] = loadWidth(first + i);
+        }
+        return page;
+    }
+
+    private float loadWidth(int codePoint) {
+        if (Character.getType(codePoint) == Character.SURROGATE) {
+            return MISSING;
+        }
+        try {
+            if (trueTypeFont != null) {
+                int gid = cmapLookup.getGlyphId(codePoint);
+                // TrueTypeFont reads its tables lazily and is shared by all documents
+                synchronized (trueTypeFont) {
+                    // rounded as the widths PDType0Font writes
+                    return gid == 0 ? MISSING : Math.round(trueTypeFont.getAdvanceWidth(gid) * scale);
+                }
+            }
+            synchronized (font) {
+                return font.getStringWidth(new String(Character.toChars(codePoint)));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // no glyph in the font or not encodable
+            return MISSING;
+        }
+    }
+}
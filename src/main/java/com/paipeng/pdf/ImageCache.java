@@ -0,0 +1,239 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 图片缓存
+ *
+ * 按像素内容哈希和文档去重, 相同的图片在一个文档中只编码一次, 多个页面引用同一个PDImageXObject.
+ * 同一个BufferedImage对象再次传入时直接按引用命中, 不再计算哈希;
+ * 如果调用方修改了已插入过的BufferedImage, 需要先调用invalidate.
+ */
+public class ImageCache {
+    private static final ImageCache INSTANCE = new ImageCache();
+
+    private final Map<PDDocument, DocumentImages> documentImages = new WeakHashMap<>();
+
+    private final AtomicLong identityHits = new AtomicLong();
+    private final AtomicLong contentHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public static ImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取文档中的图片对象, 相同内容的图片只编码一次
+     *
+     * @param pdDocument    文档
+     * @param bufferedImage 图片
+     */
+    public PDImageXObject getImage(PDDocument pdDocument, BufferedImage bufferedImage) throws IOException {
+        DocumentImages images;
+        synchronized (documentImages) {
+            images = documentImages.computeIfAbsent(pdDocument, k -> new DocumentImages());
+        }
+
+        synchronized (images) {
+            PDImageXObject imageXObject = images.byInstance.get(bufferedImage);
+            if (imageXObject != null) {
+                identityHits.incrementAndGet();
+                return imageXObject;
+            }
+
+            ContentKey key = new ContentKey(bufferedImage);
+            imageXObject = images.byContent.get(key);
+            if (imageXObject != null) {
+                contentHits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                imageXObject = ImageEncoder.getInstance().encode(pdDocument, bufferedImage);
+                images.byContent.put(key, imageXObject);
+            }
+            images.byInstance.put(bufferedImage, imageXObject);
+            return imageXObject;
+        }
+    }
+
+    /**
+     * 获取文档中的图片文件对象, 相同内容的文件只编码一次. JPEG文件不重新编码
+     *
+     * @param pdDocument 文档
+     * @param imageFile  图片文件
+     */
+    public PDImageXObject getImage(PDDocument pdDocument, File imageFile) throws IOException {
+        byte[] data = Files.readAllBytes(imageFile.toPath());
+        DocumentImages images;
+        synchronized (documentImages) {
+            images = documentImages.computeIfAbsent(pdDocument, k -> new DocumentImages());
+        }
+
+        synchronized (images) {
+            ContentKey key = new ContentKey(data);
+            PDImageXObject imageXObject = images.byData.get(key);
+            if (imageXObject != null) {
+                contentHits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                imageXObject = ImageEncoder.getInstance().encode(pdDocument, data);
+                images.byData.put(key, imageXObject);
+            }
+            return imageXObject;
+        }
+    }
+
+    /**
+     * 图片内容被修改后, 清除按引用缓存的结果
+     *
+     * @param bufferedImage 图片
+     */
+    public void invalidate(BufferedImage bufferedImage) {
+        synchronized (documentImages) {
+            for (DocumentImages images : documentImages.values()) {
+                synchronized (images) {
+                    images.byInstance.remove(bufferedImage);
+                }
+            }
+        }
+    }
+
+    /**
+     * 释放文档的图片, 文档关闭前调用
+     *
+     * @param pdDocument 文档
+     */
+    public void release(PDDocument pdDocument) {
+        synchronized (documentImages) {
+            documentImages.remove(pdDocument);
+        }
+    }
+
+    public long getIdentityHits() {
+        return identityHits.get();
+    }
+
+    public long getContentHits() {
+        return contentHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ImageCache{identityHits=" + identityHits + ", contentHits=" + contentHits + ", misses=" + misses + "}";
+    }
+
+    private static class DocumentImages {
+        // BufferedImage does not override equals, so this is a weak identity map
+        private final Map<BufferedImage, PDImageXObject> byInstance = new WeakHashMap<>();
+        private final Map<ContentKey, PDImageXObject> byContent = new HashMap<>();
+        // image files, keyed by the digest of the file content
+        private final Map<ContentKey, PDImageXObject> byData = new HashMap<>();
+    }
+
+    private static class ContentKey {
+        private final byte[] digest;
+        private final int hashCode;
+
+        ContentKey(byte[] data) {
+            digest = newDigest().digest(data);
+            hashCode = Arrays.hashCode(digest);
+        }
+
+        ContentKey(BufferedImage bufferedImage) {
+            MessageDigest messageDigest = newDigest();
+
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putInt(bufferedImage.getWidth());
+            header.putInt(bufferedImage.getHeight());
+            header.putInt(bufferedImage.getType());
+            messageDigest.update(header.array());
+
+            ColorModel colorModel = bufferedImage.getColorModel();
+            if (colorModel instanceof IndexColorModel) {
+                IndexColorModel indexColorModel = (IndexColorModel) colorModel;
+                int[] rgbs = new int[indexColorModel.getMapSize()];
+                indexColorModel.getRGBs(rgbs);
+                updateInts(messageDigest, rgbs, 0, rgbs.length);
+            }
+
+            WritableRaster raster = bufferedImage.getRaster();
+            DataBuffer dataBuffer = raster.getDataBuffer();
+            boolean wholeRaster = raster.getParent() == null
+                    && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+
+            if (wholeRaster && dataBuffer instanceof DataBufferByte) {
+                for (byte[] bank : ((DataBufferByte) dataBuffer).getBankData()) {
+                    messageDigest.update(bank);
+                }
+            } else if (wholeRaster && dataBuffer instanceof DataBufferInt) {
+                for (int[] bank : ((DataBufferInt) dataBuffer).getBankData()) {
+                    updateInts(messageDigest, bank, 0, bank.length);
+                }
+            } else {
+                // sub images and unusual rasters: hash the visible ARGB pixels row by row
+                int width = bufferedImage.getWidth();
+                int[] row = new int[width];
+                for (int y = 0; y < bufferedImage.getHeight(); y++) {
+                    bufferedImage.getRGB(0, y, width, 1, row, 0, width);
+                    updateInts(messageDigest, row, 0, width);
+                }
+            }
+
+            digest = messageDigest.digest();
+            hashCode = Arrays.hashCode(digest);
+        }
+
+        private static MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static void updateInts(MessageDigest messageDigest, int[] values, int offset, int length) {
+            ByteBuffer buffer = ByteBuffer.allocate(4 * Math.min(length, 8192));
+            for (int i = offset; i < offset + length; ) {
+                buffer.clear();
+                int n = Math.min(offset + length - i, buffer.capacity() / 4);
+                buffer.asIntBuffer().put(values, i, n);
+                messageDigest.update(buffer.array(), 0, n * 4);
+                i += n;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ContentKey && Arrays.equals(digest, ((ContentKey) o).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,618 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.filter.FilterFactory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.CCITTFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.ImageIO;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * 图片编码器, 按图片类型选择编码方式
+ *
+ * 1位黑白图片(条码、二维码)使用CCITT G4; JPEG文件直接嵌入为DCT, 不解码; TIFF G4文件直接嵌入;
+ * 不透明的灰度、RGB、CMYK图片使用Flate, 大图片按行分块在多个线程中压缩, 拼接成一个zlib流;
+ * 带透明通道和其它类型的图片仍然使用LosslessFactory.
+ * 设置了CmykConverter.setOutputConverter时, RGB图片(包括RGB的JPEG)在压缩的同时转换为CMYK, 透明通道成为SMask.
+ */
+public class ImageEncoder {
+    private static final ImageEncoder INSTANCE = new ImageEncoder();
+
+    private static final int BASE = 65521;
+
+    private volatile int flateLevel = 6;
+    private volatile int threads = Runtime.getRuntime().availableProcessors();
+    private volatile int parallelThreshold = 1 << 20;
+    private volatile int chunkSize = 256 * 1024;
+
+    private ExecutorService executor;
+    private int executorThreads;
+
+    public static ImageEncoder getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 编码图片
+     *
+     * @param pdDocument    文档
+     * @param bufferedImage 图片
+     */
+    public PDImageXObject encode(PDDocument pdDocument, BufferedImage bufferedImage) throws IOException {
+        long start = System.nanoTime();
+        ColorModel colorModel = bufferedImage.getColorModel();
+        CmykConverter converter = CmykConverter.getOutputConverter();
+        PDImageXObject imageXObject;
+        if (isBlackAndWhite(bufferedImage)) {
+            imageXObject = encodeCCITT(pdDocument, bufferedImage);
+        } else if (bufferedImage.getWidth() == 0 || bufferedImage.getHeight() == 0) {
+            imageXObject = LosslessFactory.createFromImage(pdDocument, bufferedImage);
+        } else if (converter != null) {
+            imageXObject = encodeCMYK(pdDocument, bufferedImage, converter);
+        } else if (colorModel.hasAlpha()) {
+            imageXObject = LosslessFactory.createFromImage(pdDocument, bufferedImage);
+        } else {
+            imageXObject = encodeFlate(pdDocument, PixelReader.create(bufferedImage));
+        }
+        Metrics.getInstance().record(Instrumentation.Stage.IMAGE_ENCODE, start,
+                (long) bufferedImage.getWidth() * bufferedImage.getHeight() * colorModel.getPixelSize() / 8,
+                imageXObject.getCOSObject().getLength());
+        return imageXObject;
+    }
+
+    /**
+     * 编码图片文件内容. JPEG和CCITT压缩的TIFF直接嵌入, 其它格式解码后按encode(PDDocument, BufferedImage)编码
+     *
+     * @param pdDocument 文档
+     * @param data       图片文件内容
+     */
+    public PDImageXObject encode(PDDocument pdDocument, byte[] data) throws IOException {
+        // an RGB JPEG is decoded and converted when the output is CMYK
+        if (isJPEG(data) && (CmykConverter.getOutputConverter() == null || jpegComponents(data) != 3)) {
+            long start = System.nanoTime();
+            // the DCT data is embedded as it is; only the header is read for the size and colour space
+            PDImageXObject imageXObject = JPEGFactory.createFromByteArray(pdDocument, data);
+            Metrics.getInstance().record(Instrumentation.Stage.IMAGE_ENCODE, start, data.length, data.length);
+            return imageXObject;
+        }
+        if (isTIFF(data)) {
+            long start = System.nanoTime();
+            try {
+                PDImageXObject imageXObject = CCITTFactory.createFromByteArray(pdDocument, data);
+                Metrics.getInstance().record(Instrumentation.Stage.IMAGE_ENCODE, start, data.length,
+                        imageXObject.getCOSObject().getLength());
+                return imageXObject;
+            } catch (IOException e) {
+                // not a single-strip CCITT TIFF, decode it below
+            }
+        }
+        BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(data));
+        if (bufferedImage == null) {
+            throw new IOException("unsupported image format");
+        }
+        return encode(pdDocument, bufferedImage);
+    }
+
+    private static boolean isJPEG(byte[] data) {
+        return data.length > 3 && (data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xd8 && (data[2] & 0xff) == 0xff;
+    }
+
+    // number of components in the SOF segment, 0 if there is none
+    private static int jpegComponents(byte[] data) {
+        int i = 2;
+        while (i + 9 < data.length) {
+            if ((data[i] & 0xff) != 0xff) {
+                return 0;
+            }
+            int marker = data[i + 1] & 0xff;
+            if (marker == 0xff) {
+                i++;
+                continue;
+            }
+            if (marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+                return data[i + 9] & 0xff;
+            }
+            if (marker == 0xd9 || marker == 0xda) {
+                return 0;
+            }
+            i += 2 + (((data[i + 2] & 0xff) << 8) | (data[i + 3] & 0xff));
+        }
+        return 0;
+    }
+
+    private static boolean isTIFF(byte[] data) {
+        return data.length > 4 && ((data[0] == 'I' && data[1] == 'I' && data[2] == 42 && data[3] == 0)
+                || (data[0] == 'M' && data[1] == 'M' && data[2] == 0 && data[3] == 42));
+    }
+
+    private static boolean isBlackAndWhite(BufferedImage bufferedImage) {
+        ColorModel colorModel = bufferedImage.getColorModel();
+        if (colorModel.getPixelSize() != 1 || !(colorModel instanceof IndexColorModel)) {
+            return false;
+        }
+        IndexColorModel indexColorModel = (IndexColorModel) colorModel;
+        if (indexColorModel.getMapSize() != 2 || indexColorModel.hasAlpha()) {
+            return false;
+        }
+        int rgb0 = indexColorModel.getRGB(0) & 0xffffff;
+        int rgb1 = indexColorModel.getRGB(1) & 0xffffff;
+        return (rgb0 == 0 && rgb1 == 0xffffff) || (rgb0 == 0xffffff && rgb1 == 0);
+    }
+
+    private PDImageXObject encodeCCITT(PDDocument pdDocument, BufferedImage bufferedImage) throws IOException {
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        int rowBytes = (width + 7) / 8;
+        Raster raster = bufferedImage.getRaster();
+
+        if (raster.getParent() != null || !(raster.getSampleModel() instanceof MultiPixelPackedSampleModel)
+                || ((MultiPixelPackedSampleModel) raster.getSampleModel()).getDataBitOffset() != 0
+                || ((MultiPixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() != rowBytes
+                || !(raster.getDataBuffer() instanceof DataBufferByte)
+                || ((DataBufferByte) raster.getDataBuffer()).getOffset() != 0) {
+            // sub images: let PDFBox read the pixels one by one
+            return CCITTFactory.createFromImage(pdDocument, bufferedImage);
+        }
+
+        // the encoder expects packed rows with 1 for black, which is the raster itself or its inverse
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        boolean blackIsOne = (((IndexColorModel) bufferedImage.getColorModel()).getRGB(1) & 0xffffff) == 0;
+        byte[] bits = new byte[rowBytes * height];
+        if (blackIsOne) {
+            System.arraycopy(data, 0, bits, 0, bits.length);
+        } else {
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = (byte) ~data[i];
+            }
+        }
+
+        COSDictionary parameters = new COSDictionary();
+        parameters.setInt(COSName.COLUMNS, width);
+        parameters.setInt(COSName.ROWS, height);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(bits.length / 8);
+        FilterFactory.INSTANCE.getFilter(COSName.CCITTFAX_DECODE).encode(new ByteArrayInputStream(bits), encoded, parameters, 0);
+
+        PDImageXObject imageXObject = new PDImageXObject(pdDocument, new ByteArrayInputStream(encoded.toByteArray()),
+                COSName.CCITTFAX_DECODE, width, height, 1, PDDeviceGray.INSTANCE);
+        COSDictionary decodeParms = new COSDictionary();
+        decodeParms.setInt(COSName.K, -1);
+        decodeParms.setInt(COSName.COLUMNS, width);
+        decodeParms.setInt(COSName.ROWS, height);
+        imageXObject.getCOSObject().setItem(COSName.DECODE_PARMS, decodeParms);
+        return imageXObject;
+    }
+
+    private PDImageXObject encodeCMYK(PDDocument pdDocument, BufferedImage bufferedImage, CmykConverter converter) throws IOException {
+        PixelReader reader = PixelReader.create(bufferedImage);
+        if (!bufferedImage.getColorModel().hasAlpha() && (reader.isGray() || reader.isCmyk())) {
+            // gray prints on the black plate and CMYK needs no conversion
+            return encodeFlate(pdDocument, reader);
+        }
+        // the pixels are converted while the chunks are read, so the conversion runs in the Flate threads
+        PDImageXObject imageXObject = encodeFlate(pdDocument, PixelReader.convert(bufferedImage, converter, converter.getColorSpace(pdDocument)));
+        if (bufferedImage.getColorModel().hasAlpha()) {
+            imageXObject.getCOSObject().setItem(COSName.SMASK, encodeFlate(pdDocument, PixelReader.alpha(bufferedImage)));
+        }
+        return imageXObject;
+    }
+
+    private PDImageXObject encodeFlate(PDDocument pdDocument, PixelReader reader) throws IOException {
+        int width = reader.bufferedImage.getWidth();
+        int height = reader.bufferedImage.getHeight();
+        int rowBytes = width * reader.components;
+
+        // rows are split into chunks, each chunk is filtered and deflated on its own
+        int rowsPerChunk = Math.max(1, chunkSize / (rowBytes + 1));
+        long rawBytes = (long) (rowBytes + 1) * height;
+        List<Chunk> chunks = new ArrayList<>();
+        for (int y = 0; y < height; y += rowsPerChunk) {
+            chunks.add(new Chunk(reader, y, Math.min(height, y + rowsPerChunk), y + rowsPerChunk >= height));
+        }
+
+        if (chunks.size() > 1 && rawBytes >= parallelThreshold && threads > 1) {
+            ExecutorService executor = getExecutor();
+            List<Future<Chunk>> futures = new ArrayList<>();
+            for (int i = 1; i < chunks.size(); i++) {
+                Chunk chunk = chunks.get(i);
+                futures.add(executor.submit(() -> chunk.deflate(flateLevel)));
+            }
+            try {
+                chunks.get(0).deflate(flateLevel);
+                for (Future<Chunk> future : futures) {
+                    RenderPool.waitFor(future);
+                }
+            } finally {
+                for (Future<Chunk> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        } else {
+            for (Chunk chunk : chunks) {
+                chunk.deflate(flateLevel);
+            }
+        }
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        encoded.write(0x78);
+        encoded.write(0x9c);
+        long adler = 1;
+        for (Chunk chunk : chunks) {
+            encoded.write(chunk.deflated, 0, chunk.deflatedLength);
+            adler = combineAdler32(adler, chunk.adler, chunk.length);
+        }
+        encoded.write((int) (adler >>> 24) & 0xff);
+        encoded.write((int) (adler >>> 16) & 0xff);
+        encoded.write((int) (adler >>> 8) & 0xff);
+        encoded.write((int) adler & 0xff);
+
+        PDImageXObject imageXObject = new PDImageXObject(pdDocument, new ByteArrayInputStream(encoded.toByteArray()),
+                COSName.FLATE_DECODE, width, height, 8, reader.colorSpace);
+        COSDictionary decodeParms = new COSDictionary();
+        decodeParms.setInt(COSName.PREDICTOR, 15);
+        decodeParms.setInt(COSName.COLORS, reader.components);
+        decodeParms.setInt(COSName.BITS_PER_COMPONENT, 8);
+        decodeParms.setInt(COSName.COLUMNS, width);
+        imageXObject.getCOSObject().setItem(COSName.DECODE_PARMS, decodeParms);
+        return imageXObject;
+    }
+
+    // adler32 of two concatenated blocks, as adler32_combine in zlib
+    private static long combineAdler32(long adler1, long adler2, long length2) {
+        long remainder = length2 % BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = remainder * sum1 % BASE;
+        sum1 += (adler2 & 0xffff) + BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + BASE - remainder;
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum2 >= (BASE << 1)) {
+            sum2 -= (BASE << 1);
+        }
+        if (sum2 >= BASE) {
+            sum2 -= BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null || executorThreads != threads) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            AtomicInteger threadNumber = new AtomicInteger();
+            executorThreads = threads;
+            executor = Executors.newFixedThreadPool(executorThreads, r -> {
+                Thread thread = new Thread(r, "pdf-flate-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    public int getFlateLevel() {
+        return flateLevel;
+    }
+
+    /**
+     * 设置Flate压缩级别, 0到9, 默认6
+     */
+    public void setFlateLevel(int flateLevel) {
+        if (flateLevel < 0 || flateLevel > 9) {
+            throw new IllegalArgumentException("flate level must be between 0 and 9");
+        }
+        this.flateLevel = flateLevel;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * 设置并行压缩的线程数, 默认为CPU核数
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * 设置并行压缩的最小像素字节数, 更小的图片在当前线程中压缩, 默认1MB
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 设置每个压缩块的像素字节数, 默认256KB
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * 按行读取8位的灰度、RGB或CMYK像素, 或者转换为CMYK, 或者只读取透明通道
+     */
+    private static class PixelReader {
+        private enum Mode {
+            // read through getRGB, so gray and RGB values are sRGB as in LosslessFactory
+            RGB, GRAY,
+            // CMYK samples are read as they are
+            CMYK,
+            // RGB read through getRGB and converted row by row
+            CONVERT,
+            // the alpha channel, for a soft mask
+            ALPHA
+        }
+
+        private final BufferedImage bufferedImage;
+        private final int components;
+        private final PDColorSpace colorSpace;
+        private final Mode mode;
+        private final CmykConverter converter;
+
+        private PixelReader(BufferedImage bufferedImage, int components, PDColorSpace colorSpace, Mode mode, CmykConverter converter) {
+            this.bufferedImage = bufferedImage;
+            this.components = components;
+            this.colorSpace = colorSpace;
+            this.mode = mode;
+            this.converter = converter;
+        }
+
+        static PixelReader create(BufferedImage bufferedImage) {
+            ColorModel colorModel = bufferedImage.getColorModel();
+            int colorSpaceType = colorModel.getColorSpace().getType();
+            boolean eightBit = true;
+            for (int size : colorModel.getComponentSize()) {
+                eightBit &= size == 8;
+            }
+            if (eightBit && !(colorModel instanceof IndexColorModel) && !colorModel.hasAlpha()) {
+                if (colorSpaceType == ColorSpace.TYPE_CMYK && colorModel.getNumComponents() == 4) {
+                    return new PixelReader(bufferedImage, 4, PDDeviceCMYK.INSTANCE, Mode.CMYK, null);
+                }
+                if (colorSpaceType == ColorSpace.TYPE_GRAY && colorModel.getNumComponents() == 1) {
+                    return new PixelReader(bufferedImage, 1, PDDeviceGray.INSTANCE, Mode.GRAY, null);
+                }
+            }
+            return new PixelReader(bufferedImage, 3, PDDeviceRGB.INSTANCE, Mode.RGB, null);
+        }
+
+        static PixelReader convert(BufferedImage bufferedImage, CmykConverter converter, PDColorSpace colorSpace) {
+            return new PixelReader(bufferedImage, 4, colorSpace, Mode.CONVERT, converter);
+        }
+
+        static PixelReader alpha(BufferedImage bufferedImage) {
+            return new PixelReader(bufferedImage, 1, PDDeviceGray.INSTANCE, Mode.ALPHA, null);
+        }
+
+        boolean isGray() {
+            return mode == Mode.GRAY;
+        }
+
+        boolean isCmyk() {
+            return mode == Mode.CMYK;
+        }
+
+        void readRow(int y, byte[] row, int[] buffer) {
+            int width = bufferedImage.getWidth();
+            switch (mode) {
+                case GRAY:
+                    bufferedImage.getRGB(0, y, width, 1, buffer, 0, width);
+                    for (int x = 0; x < width; x++) {
+                        row[x] = (byte) buffer[x];
+                    }
+                    break;
+                case ALPHA:
+                    bufferedImage.getRGB(0, y, width, 1, buffer, 0, width);
+                    for (int x = 0; x < width; x++) {
+                        row[x] = (byte) (buffer[x] >>> 24);
+                    }
+                    break;
+                case CONVERT:
+                    bufferedImage.getRGB(0, y, width, 1, buffer, 0, width);
+                    converter.convert(buffer, 0, width, row, 0);
+                    break;
+                case CMYK:
+                    bufferedImage.getRaster().getPixels(0, y, width, 1, buffer);
+                    for (int i = 0; i < width * components; i++) {
+                        row[i] = (byte) buffer[i];
+                    }
+                    break;
+                default:
+                    bufferedImage.getRGB(0, y, width, 1, buffer, 0, width);
+                    for (int x = 0, i = 0; x < width; x++) {
+                        int argb = buffer[x];
+                        row[i++] = (byte) (argb >> 16);
+                        row[i++] = (byte) (argb >> 8);
+                        row[i++] = (byte) argb;
+                    }
+                    break;
+            }
+        }
+
+        int bufferSize() {
+            return bufferedImage.getWidth() * (mode == Mode.CMYK ? components : 1);
+        }
+    }
+
+    /**
+     * 一组连续的行, PNG预测后压缩为raw deflate数据; 除最后一块外以SYNC_FLUSH结束, 可以直接拼接
+     */
+    private static class Chunk {
+        private final PixelReader reader;
+        private final int firstRow;
+        private final int lastRow;
+        private final boolean finish;
+
+        private byte[] deflated;
+        private int deflatedLength;
+        private long adler;
+        private long length;
+
+        Chunk(PixelReader reader, int firstRow, int lastRow, boolean finish) {
+            this.reader = reader;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.finish = finish;
+        }
+
+        Chunk deflate(int level) {
+            int rowBytes = reader.bufferedImage.getWidth() * reader.components;
+            int bpp = reader.components;
+            byte[] previous = new byte[rowBytes];
+            byte[] current = new byte[rowBytes];
+            int[] buffer = new int[reader.bufferSize()];
+            byte[] filtered = new byte[(rowBytes + 1) * (lastRow - firstRow)];
+
+            // the Up and Paeth predictors look at the row above, which belongs to the previous chunk
+            if (firstRow > 0) {
+                reader.readRow(firstRow - 1, previous, buffer);
+            }
+            int offset = 0;
+            for (int y = firstRow; y < lastRow; y++) {
+                reader.readRow(y, current, buffer);
+                offset = filterRow(previous, current, bpp, filtered, offset);
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+
+            Adler32 checksum = new Adler32();
+            checksum.update(filtered, 0, filtered.length);
+            adler = checksum.getValue();
+            length = filtered.length;
+
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(filtered);
+                if (finish) {
+                    deflater.finish();
+                }
+                byte[] out = new byte[Math.max(64, filtered.length / 4)];
+                int n = 0;
+                while (true) {
+                    if (n == out.length) {
+                        out = Arrays.copyOf(out, out.length * 2);
+                    }
+                    int count = finish ? deflater.deflate(out, n, out.length - n)
+                            : deflater.deflate(out, n, out.length - n, Deflater.SYNC_FLUSH);
+                    n += count;
+                    if (finish ? deflater.finished() : n < out.length) {
+                        break;
+                    }
+                }
+                deflated = out;
+                deflatedLength = n;
+            } finally {
+                deflater.end();
+            }
+            return this;
+        }
+
+        // picks the PNG filter with the smallest sum of absolute differences, as libpng does
+        private static int filterRow(byte[] previous, byte[] current, int bpp, byte[] out, int offset) {
+            int length = current.length;
+            long sumNone = 0;
+            long sumSub = 0;
+            long sumUp = 0;
+            long sumPaeth = 0;
+            for (int i = 0; i < length; i++) {
+                int x = current[i] & 0xff;
+                int a = i >= bpp ? current[i - bpp] & 0xff : 0;
+                int b = previous[i] & 0xff;
+                int c = i >= bpp ? previous[i - bpp] & 0xff : 0;
+                sumNone += Math.abs((byte) x);
+                sumSub += Math.abs((byte) (x - a));
+                sumUp += Math.abs((byte) (x - b));
+                sumPaeth += Math.abs((byte) (x - paeth(a, b, c)));
+            }
+
+            int type = 0;
+            long best = sumNone;
+            if (sumSub < best) {
+                type = 1;
+                best = sumSub;
+            }
+            if (sumUp < best) {
+                type = 2;
+                best = sumUp;
+            }
+            if (sumPaeth < best) {
+                type = 4;
+            }
+
+            out[offset++] = (byte) type;
+            for (int i = 0; i < length; i++) {
+                int x = current[i] & 0xff;
+                int a = i >= bpp ? current[i - bpp] & 0xff : 0;
+                int b = previous[i] & 0xff;
+                int c = i >= bpp ? previous[i - bpp] & 0xff : 0;
+                switch (type) {
+                    case 1:
+                        x -= a;
+                        break;
+                    case 2:
+                        x -= b;
+                        break;
+                    case 4:
+                        x -= paeth(a, b, c);
+                        break;
+                    default:
+                        break;
+                }
+                out[offset++] = (byte) x;
+            }
+            return offset;
+        }
+
+        private static int paeth(int a, int b, int c) {
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            if (pa <= pb && pa <= pc) {
+                return a;
+            }
+            return pb <= pc ? b : c;
+        }
+    }
+}
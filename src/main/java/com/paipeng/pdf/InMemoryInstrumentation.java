@@ -0,0 +1,192 @@
+package com.paipeng.pdf;
+
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在内存中按阶段和任务ID汇总: 次数, 总耗时, 最大耗时, 字节数和耗时直方图
+ *
+ * 直方图按2的幂划分微秒, 第i个区间为[2^i, 2^(i+1))微秒, 百分位数取所在区间的上限.
+ */
+public class InMemoryInstrumentation implements Instrumentation {
+    private static final int BUCKETS = 40;
+
+    // job id ("" without a job) -> stage -> stats
+    private final Map<String, Map<Stage, StageStats>> jobs = new ConcurrentHashMap<>();
+
+    @Override
+    public void record(Stage stage, String jobId, long durationNanos, long bytesIn, long bytesOut) {
+        String key = jobId != null ? jobId : "";
+        Map<Stage, StageStats> stages = jobs.computeIfAbsent(key, k -> {
+            Map<Stage, StageStats> map = new EnumMap<>(Stage.class);
+            for (Stage s : Stage.values()) {
+                map.put(s, new StageStats(s));
+            }
+            return map;
+        });
+        stages.get(stage).add(durationNanos, bytesIn, bytesOut);
+    }
+
+    /**
+     * 所有任务中一个阶段的汇总
+     */
+    public StageStats getStats(Stage stage) {
+        StageStats total = new StageStats(stage);
+        for (Map<Stage, StageStats> stages : jobs.values()) {
+            total.addAll(stages.get(stage));
+        }
+        return total;
+    }
+
+    /**
+     * 一个任务中一个阶段的汇总
+     *
+     * @param jobId 任务ID, 为空时为没有设置任务ID的操作
+     * @param stage 阶段
+     */
+    public StageStats getStats(String jobId, Stage stage) {
+        Map<Stage, StageStats> stages = jobs.get(jobId != null ? jobId : "");
+        StageStats stats = new StageStats(stage);
+        if (stages != null) {
+            stats.addAll(stages.get(stage));
+        }
+        return stats;
+    }
+
+    public void removeJob(String jobId) {
+        jobs.remove(jobId != null ? jobId : "");
+    }
+
+    public void reset() {
+        jobs.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            StageStats stats = getStats(stage);
+            if (stats.getCount() > 0) {
+                sb.append(stats).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    public static class StageStats {
+        private final Stage stage;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        private volatile long maxNanos;
+
+        StageStats(Stage stage) {
+            this.stage = stage;
+        }
+
+        void add(long durationNanos, long in, long out) {
+            count.increment();
+            totalNanos.add(durationNanos);
+            bytesIn.add(in);
+            bytesOut.add(out);
+            histogram.incrementAndGet(bucket(durationNanos));
+            if (durationNanos > maxNanos) {
+                synchronized (this) {
+                    maxNanos = Math.max(maxNanos, durationNanos);
+                }
+            }
+        }
+
+        void addAll(StageStats other) {
+            count.add(other.getCount());
+            totalNanos.add(other.getTotalNanos());
+            bytesIn.add(other.getBytesIn());
+            bytesOut.add(other.getBytesOut());
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram.addAndGet(i, other.histogram.get(i));
+            }
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+        }
+
+        private static int bucket(long durationNanos) {
+            long micros = durationNanos / 1000;
+            int bucket = micros <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+            return Math.min(bucket, BUCKETS - 1);
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getBytesIn() {
+            return bytesIn.sum();
+        }
+
+        public long getBytesOut() {
+            return bytesOut.sum();
+        }
+
+        /**
+         * 直方图, 第i个元素为耗时在[2^i, 2^(i+1))微秒之间的次数
+         */
+        public long[] getHistogram() {
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = histogram.get(i);
+            }
+            return buckets;
+        }
+
+        /**
+         * 近似百分位耗时(微秒), 为所在直方图区间的上限
+         *
+         * @param percentile 0到100之间
+         */
+        public long getPercentileMicros(double percentile) {
+            long[] buckets = getHistogram();
+            long total = 0;
+            for (long n : buckets) {
+                total += n;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank && buckets[i] > 0) {
+                    return 1L << (i + 1);
+                }
+            }
+            return 1L << BUCKETS;
+        }
+
+        @Override
+        public String toString() {
+            long n = getCount();
+            return stage + "{count=" + n + ", totalMs=" + getTotalNanos() / 1000000
+                    + ", avgUs=" + (n > 0 ? getTotalNanos() / n / 1000 : 0)
+                    + ", p50Us<=" + getPercentileMicros(50) + ", p99Us<=" + getPercentileMicros(99)
+                    + ", maxUs=" + maxNanos / 1000 + ", bytesIn=" + getBytesIn() + ", bytesOut=" + getBytesOut() + "}";
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSUpdateInfo;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 增量盖印
+ *
+ * 在已有的PDF上绘制印刷标记、序列号等, 只在文件末尾追加一个增量更新段, 不重写原文件.
+ * 只有被绘制的页面、它们的父节点、资源字典和新建的对象被标记为需要更新, 写入量只与新增内容有关.
+ * 原文件中已有的对象(原内容流、图片、字体等)只按对象号引用, 不会重写; 追加的字节数约等于
+ * 新内容流、新建的字体和图片、页面字典、/Contents数组、资源字典、页面树路径上的节点、目录和交叉引用表之和,
+ * 与原页面内容的大小无关.
+ * 增量保存不会自动生成字体子集, 绘制文字的字体需要通过FontCache加载(PDFUtils的方法都是这样), 保存前统一生成子集.
+ *
+ * <pre>
+ * IncrementalStamper stamper = new IncrementalStamper();
+ * stamper.stamp(new File("/data/customer.pdf"), 0, -1, (pdDocument, pdPage, pageIndex) -&gt; {
+ *     PDFUtils.drawPrintFocus(pdDocument, pdPage, 20);
+ *     PDFUtils.drawPrintColor(pdDocument, pdPage, 20);
+ * });
+ * </pre>
+ */
+public class IncrementalStamper {
+    private MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupTempFileOnly();
+    private boolean resetContext = true;
+
+    /**
+     * 在文件上盖印, 增量更新追加到文件末尾
+     *
+     * @param pdfFile      PDF文件
+     * @param startPage    开始页码, 从0开始
+     * @param endPage      结束页码(包含), -1为最后一页
+     * @param pageRenderer 在每一页上绘制
+     * @return 追加的字节数
+     */
+    public long stamp(File pdfFile, int startPage, int endPage, PageRenderer pageRenderer) throws IOException {
+        checkPageRange(startPage, endPage);
+        long length = pdfFile.length();
+        byte[] update;
+        try (PDDocument pdDocument = PDDocument.load(pdfFile, memoryUsageSetting)) {
+            update = stamp(pdDocument, length, startPage, endPage, pageRenderer);
+        }
+        // the document is closed before anything is written, so a failure leaves the file untouched
+        try (OutputStream output = new FileOutputStream(pdfFile, true)) {
+            output.write(update);
+        }
+        return update.length;
+    }
+
+    /**
+     * 复制文件后在副本上盖印, 原文件不变
+     *
+     * @param source       原PDF文件
+     * @param output       输出文件
+     * @param startPage    开始页码, 从0开始
+     * @param endPage      结束页码(包含), -1为最后一页
+     * @param pageRenderer 在每一页上绘制
+     * @return 追加的字节数
+     */
+    public long stamp(File source, File output, int startPage, int endPage, PageRenderer pageRenderer) throws IOException {
+        checkPageRange(startPage, endPage);
+        Files.copy(source.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try {
+            return stamp(output, startPage, endPage, pageRenderer);
+        } catch (IOException | RuntimeException e) {
+            output.delete();
+            throw e;
+        }
+    }
+
+    private byte[] stamp(PDDocument pdDocument, long length, int startPage, int endPage, PageRenderer pageRenderer) throws IOException {
+        if (pdDocument.isEncrypted()) {
+            throw new IOException("incremental stamping of encrypted documents is not supported");
+        }
+        int pageCount = pdDocument.getNumberOfPages();
+        if (startPage >= pageCount) {
+            throw new IllegalArgumentException("startPage " + startPage + " is beyond the last page, the document has " + pageCount + " pages");
+        }
+        int last = endPage < 0 ? pageCount - 1 : Math.min(endPage, pageCount - 1);
+
+        try {
+            for (int pageIndex = startPage; pageIndex <= last; pageIndex++) {
+                PDPage pdPage = pdDocument.getPage(pageIndex);
+                // the renderer draws through PDFUtils, which picks up this composer
+                PageComposer composer = PageComposer.begin(pdDocument, pdPage, resetContext);
+                try {
+                    pageRenderer.renderPage(pdDocument, pdPage, pageIndex);
+                } finally {
+                    composer.close();
+                }
+            }
+
+            // save() subsets the fonts, saveIncremental() does not
+            for (PDFont font : FontCache.getInstance().getFonts(pdDocument)) {
+                if (font.willBeSubset()) {
+                    font.subset();
+                }
+            }
+
+            Set<COSBase> existing = existingObjects(pdDocument.getDocument());
+            Map<COSBase, Boolean> visited = new IdentityHashMap<>();
+            markUpdated(pdDocument.getDocumentCatalog().getCOSObject(), existing);
+            for (int pageIndex = startPage; pageIndex <= last; pageIndex++) {
+                markPage(pdDocument.getPage(pageIndex), visited, existing);
+            }
+
+            long start = System.nanoTime();
+            ByteArrayOutputStream update = new ByteArrayOutputStream();
+            // the original bytes are already in the file; the writer only needs their length for the offsets
+            COSWriter writer = new COSWriter(update, new LengthOnlyInput(length));
+            try {
+                writer.write(pdDocument);
+            } finally {
+                writer.close();
+            }
+            Metrics.getInstance().record(Instrumentation.Stage.SAVE, start, 0, update.size());
+            return update.toByteArray();
+        } finally {
+            FontCache.getInstance().release(pdDocument);
+            ImageCache.getInstance().release(pdDocument);
+            MarkTemplates.getInstance().release(pdDocument);
+        }
+    }
+
+    private static void checkPageRange(int startPage, int endPage) {
+        if (startPage < 0) {
+            throw new IllegalArgumentException("startPage must be at least 0");
+        }
+        if (endPage >= 0 && endPage < startPage) {
+            throw new IllegalArgumentException("endPage must be -1 or at least startPage");
+        }
+    }
+
+    /**
+     * 原文件交叉引用表中的对象; 它们在原文件中已有对象号, 按引用写出即可.
+     * 追加内容时PDFBox把单个原内容流直接放进新的/Contents数组, 不是COSObject, 需要靠这里识别
+     */
+    private static Set<COSBase> existingObjects(COSDocument cosDocument) throws IOException {
+        Set<COSBase> existing = Collections.newSetFromMap(new IdentityHashMap<COSBase, Boolean>());
+        for (COSObjectKey key : cosDocument.getXrefTable().keySet()) {
+            COSBase object = cosDocument.getObjectFromPool(key).getObject();
+            if (object != null) {
+                existing.add(object);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * 标记页面和从目录到页面的路径; 资源字典中新加的对象是直接对象, 一起标记
+     */
+    private static void markPage(PDPage pdPage, Map<COSBase, Boolean> visited, Set<COSBase> existing) {
+        COSDictionary page = pdPage.getCOSObject();
+        markNew(page, visited, existing);
+        markUpdated(page.getDictionaryObject(COSName.CONTENTS), existing);
+
+        // inherited resources live in a parent node, getResources returns them
+        PDResources resources = pdPage.getResources();
+        if (resources != null) {
+            COSDictionary dictionary = resources.getCOSObject();
+            markNew(dictionary, visited, existing);
+            for (COSName kind : dictionary.keySet()) {
+                COSBase category = dictionary.getDictionaryObject(kind);
+                if (category instanceof COSDictionary) {
+                    markNew(category, visited, existing);
+                }
+            }
+        }
+
+        COSDictionary node = page;
+        while ((node = parent(node)) != null && visited.put(node, Boolean.TRUE) == null) {
+            markUpdated(node, existing);
+            markUpdated(node.getDictionaryObject(COSName.KIDS), existing);
+        }
+    }
+
+    private static COSDictionary parent(COSDictionary node) {
+        COSBase parent = node.getDictionaryObject(COSName.PARENT, COSName.P);
+        return parent instanceof COSDictionary ? (COSDictionary) parent : null;
+    }
+
+    /**
+     * 标记对象和它包含的直接对象; 间接引用和原文件中已有的对象不再深入
+     */
+    private static void markNew(COSBase base, Map<COSBase, Boolean> visited, Set<COSBase> existing) {
+        if (base instanceof COSObject || base == null || visited.put(base, Boolean.TRUE) != null) {
+            return;
+        }
+        markUpdated(base, existing);
+        if (base instanceof COSDictionary) {
+            for (COSBase value : ((COSDictionary) base).getValues()) {
+                if (!existing.contains(value)) {
+                    markNew(value, visited, existing);
+                }
+            }
+        } else if (base instanceof COSArray) {
+            for (COSBase value : (COSArray) base) {
+                if (!existing.contains(value)) {
+                    markNew(value, visited, existing);
+                }
+            }
+        }
+    }
+
+    private static void markUpdated(COSBase base, Set<COSBase> existing) {
+        if (base instanceof COSObject) {
+            base = ((COSObject) base).getObject();
+        }
+        if (base instanceof COSUpdateInfo) {
+            ((COSUpdateInfo) base).setNeedToBeUpdated(true);
+        }
+        if (base instanceof COSArray) {
+            // a new content stream appended to an existing /Contents array is a direct element,
+            // the original stream moved into a new array is direct too but keeps its object number
+            for (COSBase element : (COSArray) base) {
+                if (!(element instanceof COSObject) && !existing.contains(element) && element instanceof COSUpdateInfo) {
+                    ((COSUpdateInfo) element).setNeedToBeUpdated(true);
+                }
+            }
+        }
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    /**
+     * 设置加载原文件时的内存使用方式, 默认使用临时文件
+     */
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+
+    public boolean isResetContext() {
+        return resetContext;
+    }
+
+    /**
+     * 设置是否把页面原有内容包在q/Q中, 默认是. 原有内容改变了坐标系或颜色又没有恢复时, 新内容不受影响
+     */
+    public void setResetContext(boolean resetContext) {
+        this.resetContext = resetContext;
+    }
+
+    /**
+     * 只提供原文件长度的输入, COSWriter用它计算偏移量并把原文件复制到输出; 这里原文件已经在磁盘上, 复制的内容为空
+     */
+    private static class LengthOnlyInput implements RandomAccessRead {
+        private final long length;
+        private boolean closed;
+
+        LengthOnlyInput(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b) {
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int length) {
+            return -1;
+        }
+
+        @Override
+        public long getPosition() {
+            return length;
+        }
+
+        @Override
+        public void seek(long position) {
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public int peek() {
+            return -1;
+        }
+
+        @Override
+        public void rewind(int bytes) {
+        }
+
+        @Override
+        public byte[] readFully(int length) throws IOException {
+            throw new IOException("the original document is not readable here");
+        }
+
+        @Override
+        public boolean isEOF() {
+            return true;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
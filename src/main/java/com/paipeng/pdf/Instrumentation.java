@@ -0,0 +1,59 @@
+package com.paipeng.pdf;
+
+
+/**
+ * 性能统计接口
+ *
+ * 字体加载、图片编码、内容流写入、页面渲染、加密、保存、合并和印前检查各阶段结束时调用一次, 可能在多个线程中同时调用.
+ * 通过Metrics.getInstance().setInstrumentation设置, 默认不记录.
+ */
+public interface Instrumentation {
+    enum Stage {
+        /**
+         * 解析TrueType字体和加载到文档, 输入为字体文件字节数
+         */
+        FONT_LOAD,
+        /**
+         * 图片编码为PDImageXObject, 输入为像素字节数, 输出为压缩后的字节数
+         */
+        IMAGE_ENCODE,
+        /**
+         * 一个页面内容流从打开到关闭, 输出为压缩后的字节数
+         */
+        CONTENT_STREAM,
+        /**
+         * 渲染一页或一个条带, 输出为像素字节数
+         */
+        RENDER_PAGE,
+        /**
+         * 设置加密, 加密内容在保存时进行, 计入SAVE
+         */
+        ENCRYPT,
+        /**
+         * PDDocument.save, 输出为文件字节数
+         */
+        SAVE,
+        /**
+         * StreamingMerger合并一个源文件, 输入为源文件字节数, 输出为写入的字节数
+         */
+        MERGE,
+        /**
+         * Preflight检查一个文档, 输入为读取的内容流字节数
+         */
+        PREFLIGHT
+    }
+
+    Instrumentation NOOP = (stage, jobId, durationNanos, bytesIn, bytesOut) -> {
+    };
+
+    /**
+     * 记录一次操作
+     *
+     * @param stage         阶段
+     * @param jobId         任务ID, 没有设置时为空
+     * @param durationNanos 耗时(纳秒)
+     * @param bytesIn       输入字节数, 未知时为0
+     * @param bytesOut      输出字节数, 未知时为0
+     */
+    void record(Stage stage, String jobId, long durationNanos, long bytesIn, long bytesOut);
+}
@@ -0,0 +1,55 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+/**
+ * PrintJobScheduler中正在执行的任务的信息
+ */
+public class JobContext {
+    private final String jobId;
+    private final PrintJobScheduler.Priority priority;
+    private final long memoryBudget;
+    private final MemoryUsageSetting memoryUsageSetting;
+    private volatile boolean cancelled;
+
+    JobContext(String jobId, PrintJobScheduler.Priority priority, long memoryBudget, MemoryUsageSetting memoryUsageSetting) {
+        this.jobId = jobId;
+        this.priority = priority;
+        this.memoryBudget = memoryBudget;
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public PrintJobScheduler.Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * 任务的堆内存预算(字节), 0为不限
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * 按内存预算生成的设置, 超过预算的部分写入临时文件. 传给PDDocument、ParallelPdfGenerator、SerialPrintJob等
+     */
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    /**
+     * 任务是否已被取消, 长时间运行的任务应定期检查
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+}
@@ -0,0 +1,22 @@
+package com.paipeng.pdf;
+
+
+import org.apache.commons.csv.CSVRecord;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.io.IOException;
+
+/**
+ * 标签绘制接口, 每条CSV记录对应页面上的一个标签格
+ */
+public interface LabelRenderer {
+    /**
+     * 绘制一个标签
+     *
+     * @param composer 当前页面的合成器
+     * @param record   CSV记录
+     * @param serial   序列号
+     * @param cell     标签格位置
+     */
+    void drawLabel(PageComposer composer, CSVRecord record, String serial, PDRectangle cell) throws IOException;
+}
@@ -0,0 +1,291 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationSquareCircle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDBorderEffectDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDBorderStyleDictionary;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static org.apache.pdfbox.pdmodel.interactive.annotation.PDBorderStyleDictionary.STYLE_SOLID;
+
+/**
+ * 印刷标记模板
+ *
+ * 对准十字线、CMYK色块和版式网格按页面尺寸和边距只生成一次PDFormXObject,
+ * 每个页面只需要一个Do操作符引用模板. 对准圆圈的注释共用同一个外观流和边框字典.
+ */
+public class MarkTemplates {
+    private static final MarkTemplates INSTANCE = new MarkTemplates();
+
+    private static final int FOCUS_LENGTH = 7;
+    private static final int FOCUS_CIRCLE_LENGTH = 5;
+    private static final float MARK_LINE_WIDTH = 0.5f;
+
+    private final Map<PDDocument, Map<String, Object>> documentTemplates = new WeakHashMap<>();
+
+    public static MarkTemplates getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 对准十字线模板
+     *
+     * @param pdDocument  文档
+     * @param pdRectangle 页面尺寸
+     * @param border      边距
+     */
+    public PDFormXObject getPrintFocus(PDDocument pdDocument, PDRectangle pdRectangle, float border) throws IOException {
+        String key = "focus:" + pdRectangle + ":" + border;
+        synchronized (documentTemplates) {
+            PDFormXObject form = (PDFormXObject) templates(pdDocument).get(key);
+            if (form == null) {
+                form = createForm(pdDocument, pdRectangle);
+                PDPageContentStream contentStream = openForm(pdDocument, form);
+                contentStream.setLineWidth(MARK_LINE_WIDTH);
+                contentStream.setStrokingColor(1.0f, 1, 1, 0);
+
+                float[][] centers = getFocusCenters(pdRectangle, border);
+                for (float[] center : centers) {
+                    contentStream.moveTo(center[0] - FOCUS_LENGTH / 2.0f, center[1]);
+                    contentStream.lineTo(center[0] + FOCUS_LENGTH / 2f, center[1]);
+                    contentStream.closeAndStroke();
+
+                    contentStream.moveTo(center[0], center[1] - FOCUS_LENGTH / 2f);
+                    contentStream.lineTo(center[0], center[1] + FOCUS_LENGTH / 2f);
+                    contentStream.closeAndStroke();
+                }
+                contentStream.close();
+                templates(pdDocument).put(key, form);
+            }
+            return form;
+        }
+    }
+
+    /**
+     * 在页面四角添加对准圆圈注释, 所有注释共用外观流、颜色和边框字典
+     *
+     * @param pdDocument 文档
+     * @param pdPage     页面
+     * @param border     边距
+     */
+    public void addPrintFocusAnnotations(PDDocument pdDocument, PDPage pdPage, float border) throws IOException {
+        PDRectangle pdRectangle = pdPage.getMediaBox();
+        FocusCircles circles = getFocusCircles(pdDocument, pdRectangle, border);
+
+        for (PDRectangle position : circles.positions) {
+            PDAnnotationSquareCircle circle = new PDAnnotationSquareCircle(PDAnnotationSquareCircle.SUB_TYPE_CIRCLE);
+            circle.setRectangle(position);
+            circle.setBorderEffect(circles.borderEffect);
+            circle.setBorderStyle(circles.borderStyle);
+            circle.setColor(circles.color);
+            circle.setAppearance(circles.appearance);
+            pdPage.getAnnotations().add(circle);
+        }
+    }
+
+    /**
+     * CMYK色块模板
+     *
+     * @param pdDocument  文档
+     * @param pdRectangle 页面尺寸
+     * @param border      边距
+     */
+    public PDFormXObject getPrintColor(PDDocument pdDocument, PDRectangle pdRectangle, float border) throws IOException {
+        String key = "color:" + pdRectangle + ":" + border;
+        synchronized (documentTemplates) {
+            PDFormXObject form = (PDFormXObject) templates(pdDocument).get(key);
+            if (form == null) {
+                form = createForm(pdDocument, pdRectangle);
+                PDPageContentStream contentStream = openForm(pdDocument, form);
+
+                int length = 6;
+                float bx = border/2 - length/2f;
+                float[][] colors = {{1f, 0, 0, 0}, {0f, 1, 0, 0}, {0f, 0, 1, 0}, {0f, 0, 0, 1}};
+                for (int i = 0; i < colors.length; i++) {
+                    float by = pdRectangle.getUpperRightY() - border/2 - length*(i + 1) - 10;
+                    contentStream.setNonStrokingColor(colors[i][0], colors[i][1], colors[i][2], colors[i][3]);
+                    contentStream.addRect(bx, by, length, length);
+                    contentStream.fill();
+                }
+                contentStream.close();
+                templates(pdDocument).put(key, form);
+            }
+            return form;
+        }
+    }
+
+    /**
+     * 三级版式网格模板
+     *
+     * @param pdDocument  文档
+     * @param pdRectangle 页面尺寸
+     * @param border      边距
+     */
+    public PDFormXObject getLayoutLevel3(PDDocument pdDocument, PDRectangle pdRectangle, float border) throws IOException {
+        String key = "layout3:" + pdRectangle + ":" + border;
+        synchronized (documentTemplates) {
+            PDFormXObject form = (PDFormXObject) templates(pdDocument).get(key);
+            if (form == null) {
+                form = createForm(pdDocument, pdRectangle);
+                PDPageContentStream contentStream = openForm(pdDocument, form);
+                contentStream.setLineWidth(MARK_LINE_WIDTH);
+                contentStream.setStrokingColor(1.0f, 1, 1, 0);
+
+                List<Point> points = getLayoutLevel3Points(pdRectangle, border);
+                for (int i = 0; i < points.size(); i+=2) {
+                    contentStream.moveTo(points.get(i).x, points.get(i).y);
+                    contentStream.lineTo(points.get(i+1).x, points.get(i+1).y);
+                    contentStream.closeAndStroke();
+                }
+                contentStream.close();
+                templates(pdDocument).put(key, form);
+            }
+            return form;
+        }
+    }
+
+    /**
+     * 释放文档的模板, 文档关闭前调用
+     *
+     * @param pdDocument 文档
+     */
+    public void release(PDDocument pdDocument) {
+        synchronized (documentTemplates) {
+            documentTemplates.remove(pdDocument);
+        }
+    }
+
+    private FocusCircles getFocusCircles(PDDocument pdDocument, PDRectangle pdRectangle, float border) throws IOException {
+        String key = "focusCircles:" + pdRectangle + ":" + border;
+        synchronized (documentTemplates) {
+            FocusCircles circles = (FocusCircles) templates(pdDocument).get(key);
+            if (circles == null) {
+                circles = new FocusCircles();
+
+                for (float[] center : getFocusCenters(pdRectangle, border)) {
+                    PDRectangle position = new PDRectangle();
+                    position.setLowerLeftX(center[0] - FOCUS_CIRCLE_LENGTH / 2.0f);
+                    position.setLowerLeftY(center[1] - FOCUS_CIRCLE_LENGTH / 2f);
+                    position.setUpperRightX(center[0] + FOCUS_CIRCLE_LENGTH / 2.0f);
+                    position.setUpperRightY(center[1] + FOCUS_CIRCLE_LENGTH / 2f);
+                    circles.positions.add(position);
+                }
+
+                circles.borderEffect = new PDBorderEffectDictionary();
+                circles.borderEffect.setStyle(STYLE_SOLID);
+
+                circles.borderStyle = new PDBorderStyleDictionary();
+                circles.borderStyle.setWidth(MARK_LINE_WIDTH);
+
+                circles.color = new PDColor(new float[]{1f, 1f, 1f, 0}, PDDeviceCMYK.INSTANCE);
+                circles.appearance = createCircleAppearance(pdDocument);
+
+                templates(pdDocument).put(key, circles);
+            }
+            return circles;
+        }
+    }
+
+    private static PDAppearanceDictionary createCircleAppearance(PDDocument pdDocument) throws IOException {
+        float size = FOCUS_CIRCLE_LENGTH;
+        PDAppearanceStream appearanceStream = new PDAppearanceStream(pdDocument);
+        appearanceStream.setBBox(new PDRectangle(size, size));
+        appearanceStream.setResources(new PDResources());
+
+        // four bezier arcs approximate the circle, inset by half the line width
+        float r = (size - MARK_LINE_WIDTH) / 2;
+        float c = size / 2;
+        float k = 0.5523f * r;
+
+        PDPageContentStream contentStream = new PDPageContentStream(pdDocument, appearanceStream);
+        contentStream.setLineWidth(MARK_LINE_WIDTH);
+        contentStream.setStrokingColor(1.0f, 1, 1, 0);
+        contentStream.moveTo(c + r, c);
+        contentStream.curveTo(c + r, c + k, c + k, c + r, c, c + r);
+        contentStream.curveTo(c - k, c + r, c - r, c + k, c - r, c);
+        contentStream.curveTo(c - r, c - k, c - k, c - r, c, c - r);
+        contentStream.curveTo(c + k, c - r, c + r, c - k, c + r, c);
+        contentStream.closeAndStroke();
+        contentStream.close();
+
+        PDAppearanceDictionary appearance = new PDAppearanceDictionary();
+        appearance.setNormalAppearance(appearanceStream);
+        return appearance;
+    }
+
+    private Map<String, Object> templates(PDDocument pdDocument) {
+        return documentTemplates.computeIfAbsent(pdDocument, k -> new HashMap<>());
+    }
+
+    private static PDFormXObject createForm(PDDocument pdDocument, PDRectangle pdRectangle) {
+        PDFormXObject form = new PDFormXObject(pdDocument);
+        form.setBBox(new PDRectangle(pdRectangle.getLowerLeftX(), pdRectangle.getLowerLeftY(),
+                pdRectangle.getWidth(), pdRectangle.getHeight()));
+        form.setResources(new PDResources());
+        return form;
+    }
+
+    private static PDPageContentStream openForm(PDDocument pdDocument, PDFormXObject form) throws IOException {
+        return new PDPageContentStream(pdDocument, form, form.getContentStream().createOutputStream(COSName.FLATE_DECODE));
+    }
+
+    private static float[][] getFocusCenters(PDRectangle pdRectangle, float border) {
+        return new float[][]{
+                // left bottom
+                {border/2, border/2},
+                // left top
+                {border/2, pdRectangle.getUpperRightY() - border/2},
+                // right top
+                {pdRectangle.getUpperRightX() - border/2, pdRectangle.getUpperRightY() - border/2},
+                // right bottom
+                {pdRectangle.getUpperRightX() - border/2, border/2}
+        };
+    }
+
+    private static List<Point> getLayoutLevel3Points(PDRectangle pdRectangle, float border) {
+        List<Point> points = new ArrayList<>();
+
+        float contentWidth = pdRectangle.getUpperRightX() - border * 2;
+        float contentHeight = pdRectangle.getUpperRightY() - border * 2;
+
+        // horizontal lines at 2/5 and 4/5, the vertical centre line, then 1/5 and 3/5
+        addLine(points, border, border + contentHeight * 2/5, border + contentWidth, border + contentHeight * 2/5);
+        addLine(points, border, border + contentHeight * 4/5, border + contentWidth, border + contentHeight * 4/5);
+        addLine(points, border + contentWidth/2, border, border + contentWidth/2, border + contentHeight);
+        addLine(points, border, border + contentHeight * 1/5, border + contentWidth, border + contentHeight * 1/5);
+        addLine(points, border, border + contentHeight * 3/5, border + contentWidth, border + contentHeight * 3/5);
+
+        return points;
+    }
+
+    private static void addLine(List<Point> points, float x0, float y0, float x1, float y1) {
+        points.add(new Point((int) x0, (int) y0));
+        points.add(new Point((int) x1, (int) y1));
+    }
+
+    private static class FocusCircles {
+        private final List<PDRectangle> positions = new ArrayList<>();
+        private PDBorderEffectDictionary borderEffect;
+        private PDBorderStyleDictionary borderStyle;
+        private PDColor color;
+        private PDAppearanceDictionary appearance;
+    }
+}
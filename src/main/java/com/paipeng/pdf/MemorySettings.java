@@ -0,0 +1,119 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 读取PDF的内存设置
+ *
+ * PDFUtils的读取方法、TextExtractor、TableExtractor、PageRasterizer、BandedPageRenderer、PreviewCache
+ * 和VdpTemplate加载文件时使用这里的设置. 默认和PDDocument.load(File)相同, 流数据全部在内存中;
+ * 低内存模式下每个文档的流数据最多使用mainMemoryBytes内存, 其余的流数据放到临时文件中.
+ * 启动参数-Dpdf.lowMemory=true时默认使用低内存模式.
+ *
+ * 只有流数据会放到临时文件中. PDFBox 2.0加载时(PDFParser.initialParse)会一次解析整个对象图,
+ * 所有字典、数组和字符串都留在堆中, 直到文档关闭; 堆内存随对象数量增长, 与流数据大小无关.
+ * 对象还不能按需解析, 只需要页数和第一页信息时使用PdfProbe.
+ *
+ * <pre>
+ * MemorySettings settings = MemorySettings.getInstance();
+ * settings.setLowMemory(true);
+ * settings.setMainMemoryBytes(8 << 20);
+ * settings.setTempDirectory(new File("/data/scratch"));
+ * </pre>
+ */
+public class MemorySettings {
+    private static final MemorySettings INSTANCE = new MemorySettings();
+
+    private volatile boolean lowMemory = Boolean.getBoolean("pdf.lowMemory");
+    private volatile long mainMemoryBytes = 16L << 20;
+    private volatile long scratchFileBytes = -1;
+    private volatile File tempDirectory;
+
+    public static MemorySettings getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 读取文件使用的内存设置, 低内存模式下为getLowMemoryUsageSetting
+     */
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return lowMemory ? getLowMemoryUsageSetting() : MemoryUsageSetting.setupMainMemoryOnly();
+    }
+
+    /**
+     * 内存加临时文件的设置, 不论是否为低内存模式. 用于一定很大的文件, 例如StreamingEncryptor
+     */
+    public MemoryUsageSetting getLowMemoryUsageSetting() {
+        MemoryUsageSetting setting = MemoryUsageSetting.setupMixed(mainMemoryBytes, scratchFileBytes);
+        File directory = tempDirectory;
+        if (directory != null) {
+            setting.setTempDir(directory);
+        }
+        return setting;
+    }
+
+    /**
+     * 按当前设置加载PDF文件
+     *
+     * @param file PDF文件
+     */
+    public PDDocument load(File file) throws IOException {
+        return PDDocument.load(file, getMemoryUsageSetting());
+    }
+
+    /**
+     * 按当前设置加载加密的PDF文件
+     *
+     * @param file     PDF文件
+     * @param password 密码
+     */
+    public PDDocument load(File file, String password) throws IOException {
+        return PDDocument.load(file, password, getMemoryUsageSetting());
+    }
+
+    public boolean isLowMemory() {
+        return lowMemory;
+    }
+
+    public void setLowMemory(boolean lowMemory) {
+        this.lowMemory = lowMemory;
+    }
+
+    public long getMainMemoryBytes() {
+        return mainMemoryBytes;
+    }
+
+    /**
+     * 低内存模式下每个文档的流数据最多使用的内存, 默认16MB
+     */
+    public void setMainMemoryBytes(long mainMemoryBytes) {
+        this.mainMemoryBytes = mainMemoryBytes;
+    }
+
+    public long getScratchFileBytes() {
+        return scratchFileBytes;
+    }
+
+    /**
+     * 每个文档内存和临时文件合计的上限, -1为不限制. 超过时读取失败
+     */
+    public void setScratchFileBytes(long scratchFileBytes) {
+        this.scratchFileBytes = scratchFileBytes;
+    }
+
+    public File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * 临时文件目录, 为空时使用系统临时目录
+     */
+    public void setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+}
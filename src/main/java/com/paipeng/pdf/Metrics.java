@@ -0,0 +1,106 @@
+package com.paipeng.pdf;
+
+
+import java.util.concurrent.Callable;
+
+/**
+ * 性能统计入口
+ *
+ * 保存当前的Instrumentation和每个线程的任务ID. 库中的线程池提交任务时会把提交线程的任务ID带到工作线程.
+ *
+ * <pre>
+ * InMemoryInstrumentation instrumentation = new InMemoryInstrumentation();
+ * Metrics.getInstance().setInstrumentation(instrumentation);
+ * Metrics.getInstance().setJobId("job-20200315-001");
+ * try {
+ *     new SerialPrintJob(outputDirectory, "serials").run(csvFile);
+ * } finally {
+ *     Metrics.getInstance().clearJobId();
+ * }
+ * System.out.println(instrumentation.getStats(Instrumentation.Stage.SAVE));
+ * </pre>
+ */
+public class Metrics {
+    private static final Metrics INSTANCE = new Metrics();
+
+    private volatile Instrumentation instrumentation = Instrumentation.NOOP;
+    private final ThreadLocal<String> jobId = new ThreadLocal<>();
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * 设置统计实现, 为空时不记录
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation != null ? instrumentation : Instrumentation.NOOP;
+    }
+
+    public String getJobId() {
+        return jobId.get();
+    }
+
+    /**
+     * 设置当前线程的任务ID
+     */
+    public void setJobId(String jobId) {
+        this.jobId.set(jobId);
+    }
+
+    public void clearJobId() {
+        jobId.remove();
+    }
+
+    /**
+     * 记录从start开始到现在的耗时
+     *
+     * @param stage 阶段
+     * @param start System.nanoTime()得到的开始时间
+     */
+    public void record(Instrumentation.Stage stage, long start) {
+        record(stage, start, 0, 0);
+    }
+
+    /**
+     * 记录从start开始到现在的耗时和字节数
+     *
+     * @param stage    阶段
+     * @param start    System.nanoTime()得到的开始时间
+     * @param bytesIn  输入字节数
+     * @param bytesOut 输出字节数
+     */
+    public void record(Instrumentation.Stage stage, long start, long bytesIn, long bytesOut) {
+        Instrumentation current = instrumentation;
+        if (current != Instrumentation.NOOP) {
+            current.record(stage, jobId.get(), System.nanoTime() - start, bytesIn, bytesOut);
+        }
+    }
+
+    /**
+     * 包装任务, 在工作线程中使用提交线程的任务ID
+     */
+    <T> Callable<T> withJobId(Callable<T> task) {
+        String submitter = jobId.get();
+        if (submitter == null) {
+            return task;
+        }
+        return () -> {
+            String previous = jobId.get();
+            jobId.set(submitter);
+            try {
+                return task.call();
+            } finally {
+                if (previous != null) {
+                    jobId.set(previous);
+                } else {
+                    jobId.remove();
+                }
+            }
+        };
+    }
+}
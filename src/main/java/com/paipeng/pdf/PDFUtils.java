@@ -3,38 +3,34 @@ package com.paipeng.pdf;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.PDPageTree;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
 import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
-import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
-import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationSquareCircle;
-import org.apache.pdfbox.pdmodel.interactive.annotation.PDBorderEffectDictionary;
-import org.apache.pdfbox.pdmodel.interactive.annotation.PDBorderStyleDictionary;
-import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.pdfbox.text.PDFTextStripperByArea;
 import org.apache.pdfbox.util.Matrix;
+import org.krysalis.barcode4j.BarcodeGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
 
-import static org.apache.pdfbox.pdmodel.interactive.annotation.PDBorderStyleDictionary.STYLE_SOLID;
-
 public class PDFUtils {
+    private static final Logger logger = LoggerFactory.getLogger(PDFUtils.class);
+
     /**
      * 创建PDF
      *
@@ -44,41 +40,23 @@ public class PDFUtils {
     public static void createPDF(String path, String fontPath, String text) {
         PDDocument doc = new PDDocument();
 
-        int leading = 40;
         try {
-            PDPage page = new PDPage();
-            doc.addPage(page);
-
-            PDFont font = PDType0Font.load(doc, new File(fontPath));
+            TextLayout layout = new TextLayout();
+            layout.setPageSize(PDRectangle.LETTER);
+            layout.setFontSize(12);
+            layout.setLeading(40);
+            layout.layout(doc, fontPath, text);
 
-            PDPageContentStream content = new PDPageContentStream(doc, page);
-            content.beginText();
-            content.setFont(font, 12);
-            content.newLineAtOffset(40, 780);
-            String[] arr = text.split("\\n", -1);
-
-            int num = 44;
-            for (int i = 0; i < arr.length; i++) {
-                int count = arr[i].length() / num;
-
-                for (int j = 0; j < count; j++) {
-                    content.showText(arr[i].substring(num * j, num * (j + 1)));
-                    //content.newLine();
-                    content.newLineAtOffset(0, -leading);
-                }
-
-                content.showText(arr[i].substring(num * count, arr[i].length()));
-                //content.newLine();
-                content.newLineAtOffset(0, -leading);
-            }
-
-            content.endText();
-            content.close();
-
-            doc.save(path);
-            doc.close();
+            save(doc, new File(path));
         } catch (Exception e) {
-            System.out.println(e.toString());
+            logger.error("createPDF {} failed", path, e);
+        } finally {
+            FontCache.getInstance().release(doc);
+            try {
+                doc.close();
+            } catch (IOException e) {
+                logger.error("createPDF {} close failed", path, e);
+            }
         }
     }
 
@@ -89,12 +67,11 @@ public class PDFUtils {
      */
     public static String readPDF(String path) {
         try {
-            PDDocument doc = PDDocument.load(new File(path));
-            PDFTextStripper textStripper = new PDFTextStripper();
-            doc.close();
-            return textStripper.getText(doc);
+            StringWriter writer = new StringWriter();
+            new TextExtractor(1).extract(new File(path), 0, -1, writer);
+            return writer.toString();
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("readPDF {} failed", path, e);
             return "";
         }
     }
@@ -106,10 +83,7 @@ public class PDFUtils {
      */
     public static int getTotalPage(String path) {
         try {
-            PDDocument doc = PDDocument.load(new File(path));
-            int pages = doc.getNumberOfPages();
-            doc.close();
-            return pages;
+            return PdfProbe.getInstance().probe(new File(path)).getPageCount();
         } catch (Exception e) {
             return 0;
         }
@@ -124,7 +98,7 @@ public class PDFUtils {
      */
     public static String readPdfPage(String path, int startPage, int endPage) {
         try {
-            PDDocument doc = PDDocument.load(new File(path));
+            PDDocument doc = MemorySettings.getInstance().load(new File(path));
             PDFTextStripper textStripper = new PDFTextStripper();
             textStripper.setStartPage(startPage);
             textStripper.setEndPage(endPage);
@@ -132,7 +106,7 @@ public class PDFUtils {
             doc.close();
             return str;
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("readPdfPage {} failed", path, e);
             return "";
         }
     }
@@ -141,121 +115,171 @@ public class PDFUtils {
      * 读取PDF中的Table
      *
      * @param path 文件路径
+     * @return CSV, 每行的前两列为页码和区域名称
      */
     public static String readPDFTable(String path) {
         StringBuilder sb = new StringBuilder();
 
         try {
-            PDDocument doc = PDDocument.load(new File(path));
-
-            PDPageTree pages = doc.getDocumentCatalog().getPages();
-
-            String regionName = "page";
-
-            for (int i = 0; i < pages.getCount(); i++) {
-                PDPage page = pages.get(i);
-                Rectangle rect = new Rectangle(0, 0, 2000, 2000);
-
-                regionName = regionName + String.valueOf(i);
-
-                PDFTextStripperByArea stripper = new PDFTextStripperByArea();
-                stripper.addRegion(regionName, rect);
-                stripper.extractRegions(page);
-
-                sb.append(stripper.getTextForRegion(regionName));
-            }
-
-            doc.close();
+            TableExtractor extractor = new TableExtractor(Runtime.getRuntime().availableProcessors());
+            extractor.extractCsv(new File(path), 0, -1, sb);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("readPDFTable {} failed", path, e);
         }
 
         return sb.toString();
     }
 
     /**
-     * pdf转成图片
+     * pdf第一页转成图片, 通过PreviewCache缓存, 同一页面再次转换时不重新渲染.
+     * 预览图默认保存在java.io.tmpdir/pdf-preview, 所有进程共用, 可以通过PreviewCache.setDirectory修改
      *
      * @param path      文件路径
      * @param imagePath 图片路径
      */
     public static void pdfTranslateImage(String path, String imagePath) {
-        PDDocument doc = null;
-
         try {
-            doc = PDDocument.load(new File(path));
-
-            PDFRenderer renderer = new PDFRenderer(doc);
-
-            BufferedImage image = renderer.renderImage(0);
-
-            ImageIO.write(image, "JPEG", new File(imagePath));
-
-            doc.close();
+            byte[] image = PreviewCache.getInstance().getPreview(new File(path), 0, 72);
+            Files.write(Paths.get(imagePath), image);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("pdfTranslateImage {} failed", path, e);
         }
     }
 
+    /**
+     * PDF所有页面转图片, 每页一个文件
+     *
+     * @param path            PDF文件
+     * @param outputDirectory 输出目录
+     * @param prefix          文件名前缀
+     * @param dpi             分辨率
+     * @param imageType       颜色类型
+     * @param format          图片格式
+     * @return 按页序排列的图片文件
+     */
+    public static List<File> pdfTranslateImages(String path, String outputDirectory, String prefix, float dpi, ImageType imageType, PageRasterizer.Format format) throws IOException {
+        PageRasterizer rasterizer = new PageRasterizer(Runtime.getRuntime().availableProcessors());
+        rasterizer.setDpi(dpi);
+        rasterizer.setImageType(imageType);
+        rasterizer.setFormat(format);
+        return rasterizer.render(new File(path), 0, -1, new File(outputDirectory), prefix);
+    }
+
+    /**
+     * 保存文档并记录SAVE耗时
+     *
+     * @param pdDocument 文档
+     * @param file       输出文件
+     */
+    static void save(PDDocument pdDocument, File file) throws IOException {
+        long start = System.nanoTime();
+        pdDocument.save(file);
+        Metrics.getInstance().record(Instrumentation.Stage.SAVE, start, 0, file.length());
+    }
+
     public static void insertImage(PDDocument pdDocument, int pageNumber,  BufferedImage bufferedImage, float x, float y, int dpi) throws IOException {
         PDPage page = pdDocument.getDocumentCatalog().getPages().get(pageNumber);
 
-        PDImageXObject imageXObject = LosslessFactory.createFromImage(pdDocument, bufferedImage);
+        PDImageXObject imageXObject = ImageCache.getInstance().getImage(pdDocument, bufferedImage);
 
         float scale = 72f / dpi;
 
-        PDPageContentStream contentStream = new PDPageContentStream(pdDocument, page, PDPageContentStream.AppendMode.APPEND, false);
-        contentStream.drawImage(imageXObject, x, y, imageXObject.getWidth() * scale, imageXObject.getHeight() * scale);
-        contentStream.close();
+        PageComposer composer = PageComposer.acquire(pdDocument, page);
+        try {
+            composer.drawImage(imageXObject, x, y, imageXObject.getWidth() * scale, imageXObject.getHeight() * scale);
+        } finally {
+            composer.release();
+        }
     }
 
 
     public static void insertImage(PDDocument pdDocument, PDPage pdPage,  BufferedImage bufferedImage, float x, float y, int dpi) throws IOException {
-        PDImageXObject imageXObject = LosslessFactory.createFromImage(pdDocument, bufferedImage);
+        PDImageXObject imageXObject = ImageCache.getInstance().getImage(pdDocument, bufferedImage);
         float scale = 72f / dpi;
-        PDPageContentStream contentStream = new PDPageContentStream(pdDocument, pdPage, PDPageContentStream.AppendMode.APPEND, false);
-        contentStream.drawImage(imageXObject, x, y, imageXObject.getWidth() * scale, imageXObject.getHeight() * scale);
-        contentStream.close();
+        PageComposer composer = PageComposer.acquire(pdDocument, pdPage);
+        try {
+            composer.drawImage(imageXObject, x, y, imageXObject.getWidth() * scale, imageXObject.getHeight() * scale);
+        } finally {
+            composer.release();
+        }
     }
 
 
     public static void insertImage(PDDocument pdDocument, PDPage pdPage,  PDImageXObject imageXObject, float x, float y, int dpi) throws IOException {
         float scale = 72f / dpi;
-        PDPageContentStream contentStream = new PDPageContentStream(pdDocument, pdPage, PDPageContentStream.AppendMode.APPEND, false);
-        contentStream.drawImage(imageXObject, x, y, imageXObject.getWidth() * scale, imageXObject.getHeight() * scale);
-        contentStream.close();
+        PageComposer composer = PageComposer.acquire(pdDocument, pdPage);
+        try {
+            composer.drawImage(imageXObject, x, y, imageXObject.getWidth() * scale, imageXObject.getHeight() * scale);
+        } finally {
+            composer.release();
+        }
     }
 
 
     public static void insertImage(PDDocument pdDocument, PDPage pdPage,  BufferedImage bufferedImage, float x, float y, float width, float height) throws IOException {
-        PDImageXObject imageXObject = LosslessFactory.createFromImage(pdDocument, bufferedImage);
-        PDPageContentStream contentStream = new PDPageContentStream(pdDocument, pdPage, PDPageContentStream.AppendMode.APPEND, false);
-        if (width != 0 && height == 0) {
-            height = imageXObject.getHeight() * width /imageXObject.getWidth();
-        } else if (width == 0 && height != 0) {
-            width = imageXObject.getWidth() * height /imageXObject.getHeight();
-        } else if (width == 0 && height == 0) {
-            width = imageXObject.getWidth();
-            height = imageXObject.getHeight();
+        insertImage(pdDocument, pdPage, ImageCache.getInstance().getImage(pdDocument, bufferedImage), x, y, width, height);
+    }
+
+
+    /**
+     * 插入图片文件, JPEG直接嵌入不重新编码
+     *
+     * @param pdDocument 文档
+     * @param pdPage     页面
+     * @param imageFile  图片文件
+     * @param x          左下角x坐标
+     * @param y          左下角y坐标
+     * @param width      宽度, 为0时按高度等比缩放
+     * @param height     高度, 为0时按宽度等比缩放
+     */
+    public static void insertImage(PDDocument pdDocument, PDPage pdPage, File imageFile, float x, float y, float width, float height) throws IOException {
+        insertImage(pdDocument, pdPage, ImageCache.getInstance().getImage(pdDocument, imageFile), x, y, width, height);
+    }
+
+
+    public static void insertImage(PDDocument pdDocument, PDPage pdPage,  PDImageXObject imageXObject, float x, float y, float width, float height) throws IOException {
+        PageComposer composer = PageComposer.acquire(pdDocument, pdPage);
+        try {
+            if (width != 0 && height == 0) {
+                height = imageXObject.getHeight() * width /imageXObject.getWidth();
+            } else if (width == 0 && height != 0) {
+                width = imageXObject.getWidth() * height /imageXObject.getHeight();
+            } else if (width == 0 && height == 0) {
+                width = imageXObject.getWidth();
+                height = imageXObject.getHeight();
+            }
+            composer.drawImage(imageXObject, x, y, width, height);
+        } finally {
+            composer.release();
+        }
+    }
+
+
+    /**
+     * 绘制矢量条码, 颜色为纯黑(K)
+     *
+     * @param pdDocument 文档
+     * @param pdPage     页面
+     * @param generator  barcode4j条码, 例如Code128Bean, DataMatrixBean
+     * @param message    条码内容
+     * @param x          左下角x坐标
+     * @param y          左下角y坐标
+     */
+    public static void drawBarcode(PDDocument pdDocument, PDPage pdPage, BarcodeGenerator generator, String message, float x, float y) throws IOException {
+        PageComposer composer = PageComposer.acquire(pdDocument, pdPage);
+        try {
+            BarcodeDrawer.getInstance().draw(composer, generator, message, x, y, BarcodeDrawer.BLACK);
+        } finally {
+            composer.release();
         }
-        contentStream.drawImage(imageXObject, x, y, width, height);
-        contentStream.close();
     }
 
 
     public static void encryptPDF(PDDocument pdDocument, String ownerPassword, String userPassword) throws IOException {
+        long start = System.nanoTime();
         int keyLength = 256;
 
-        AccessPermission ap = new AccessPermission();
-
-        // disable printing, everything else is allowed
-        ap.setCanPrint(false);
-        ap.setCanAssembleDocument(false);
-        ap.setCanExtractContent(false);
-        ap.setCanModify(false);
-        ap.setCanPrintDegraded(false);
-        ap.setReadOnly();
-        ap.setCanModifyAnnotations(false);
+        AccessPermission ap = restrictedPermission();
 
         // Owner password (to open the file with all permissions) is "12345"
         // User password (to open the file but with restricted permissions, is empty here)
@@ -263,27 +287,57 @@ public class PDFUtils {
         spp.setEncryptionKeyLength(keyLength);
         spp.setPermissions(ap);
         pdDocument.protect(spp);
+        Metrics.getInstance().record(Instrumentation.Stage.ENCRYPT, start);
 
         //pdDocument.save("/Users/paipeng/testee.pdf");
 
     }
 
+    /**
+     * 加密PDF文件, 权限和encryptPDF(PDDocument, ...)相同. 流数据边读边加密写出, 堆内存不随流数据大小增长, 但随对象数量增长
+     *
+     * @param input         源文件
+     * @param output        输出文件, 不能和源文件相同
+     * @param ownerPassword 所有者密码
+     * @param userPassword  用户密码
+     */
+    public static void encryptPDF(File input, File output, String ownerPassword, String userPassword) throws IOException {
+        new StreamingEncryptor(ownerPassword, userPassword, restrictedPermission()).encrypt(input, output);
+    }
+
+    private static AccessPermission restrictedPermission() {
+        AccessPermission ap = new AccessPermission();
+
+        // disable printing, everything else is allowed
+        ap.setCanPrint(false);
+        ap.setCanAssembleDocument(false);
+        ap.setCanExtractContent(false);
+        ap.setCanModify(false);
+        ap.setCanPrintDegraded(false);
+        ap.setReadOnly();
+        ap.setCanModifyAnnotations(false);
+        return ap;
+    }
+
     public static void insertText(PDDocument pdDocument, int pageNumber, String text, int tx, int ty, String fontPath, int fontSize, int fontColor) throws IOException{
         PDPage page = pdDocument.getDocumentCatalog().getPages().get(pageNumber);
         if (page != null) {
-            PDFont font = PDType0Font.load(pdDocument, new File(fontPath));
+            PDFont font = FontCache.getInstance().getFont(pdDocument, fontPath);
 
-            PDPageContentStream pdPageContentStream = new PDPageContentStream(pdDocument, page, PDPageContentStream.AppendMode.APPEND, false);
-            pdPageContentStream.beginText();
-            pdPageContentStream.setFont(font, fontSize);
-            pdPageContentStream.setNonStrokingColor(new PDColor(new float[]{0,1/255,1f/255}, PDDeviceRGB.INSTANCE));
-            pdPageContentStream.newLineAtOffset(tx, ty);
+            PageComposer composer = PageComposer.acquire(pdDocument, page);
+            try {
+                composer.beginText();
+                composer.setFont(font, fontSize);
+                composer.setNonStrokingColor(new PDColor(new float[]{0,1/255,1f/255}, PDDeviceRGB.INSTANCE));
+                composer.newLineAtOffset(tx, ty);
 
-            pdPageContentStream.showText(text);
+                composer.showText(text);
 
 
-            pdPageContentStream.endText();
-            pdPageContentStream.close();
+                composer.endText();
+            } finally {
+                composer.release();
+            }
         }
 
     }
@@ -291,32 +345,37 @@ public class PDFUtils {
     public static void insertText(PDDocument pdDocument, PDPage page, String text, float offsetX, float offsetY, float contentWidth, float contentHeight, String fontPath, int fontSize, int fontColor) throws IOException{
 
 
-        PDFont font = PDType0Font.load(pdDocument, new File(fontPath));
+        PDFont font = FontCache.getInstance().getFont(pdDocument, fontPath);
+        FontMetrics fontMetrics = FontCache.getInstance().getMetrics(pdDocument, font);
 
-        float titleWidth = font.getStringWidth(text) / 1000 * fontSize;
-        float titleHeight = font.getFontDescriptor().getFontBoundingBox().getHeight() / 1000 * fontSize;
+        float titleWidth = fontMetrics.getStringWidth(text, fontSize);
+        float titleHeight = fontMetrics.getHeight(fontSize);
 
         float shiftX = (contentWidth - titleWidth)/2;
         float shiftY = 0;//(contentHeight - titleHeight)/2;
 
 
-        PDPageContentStream pdPageContentStream = new PDPageContentStream(pdDocument, page, PDPageContentStream.AppendMode.APPEND, false);
-        pdPageContentStream.beginText();
-        pdPageContentStream.setFont(font, fontSize);
-        pdPageContentStream.setNonStrokingColor(new PDColor(new float[]{0,1/255,1f/255}, PDDeviceRGB.INSTANCE));
-        pdPageContentStream.newLineAtOffset(offsetX + shiftX, offsetY + shiftY);
+        PageComposer composer = PageComposer.acquire(pdDocument, page);
+        try {
+            composer.beginText();
+            composer.setFont(font, fontSize);
+            composer.setNonStrokingColor(new PDColor(new float[]{0,1/255,1f/255}, PDDeviceRGB.INSTANCE));
+            composer.newLineAtOffset(offsetX + shiftX, offsetY + shiftY);
 
-        pdPageContentStream.showText(text);
+            composer.showText(text);
 
-        pdPageContentStream.endText();
-        pdPageContentStream.close();
+            composer.endText();
+        } finally {
+            composer.release();
+        }
     }
 
     public static void insertTextWithRotate(PDDocument pdDocument, PDPage page, String text, float offsetX, float offsetY, float contentWidth, float contentHeight, String fontPath, int fontSize, int fontColor) throws IOException{
-        PDFont font = PDType0Font.load(pdDocument, new File(fontPath));
+        PDFont font = FontCache.getInstance().getFont(pdDocument, fontPath);
+        FontMetrics fontMetrics = FontCache.getInstance().getMetrics(pdDocument, font);
 
-        float titleWidth = font.getStringWidth(text) / 1000 * fontSize;
-        float titleHeight = font.getFontDescriptor().getFontBoundingBox().getHeight() / 1000 * fontSize;
+        float titleWidth = fontMetrics.getStringWidth(text, fontSize);
+        float titleHeight = fontMetrics.getHeight(fontSize);
 
         float shiftX = (contentWidth - titleWidth)/2;
         float shiftY = titleHeight/2;
@@ -326,36 +385,41 @@ public class PDFUtils {
         float centeredYPosition = offsetY + shiftY + titleHeight/2;//(page.getMediaBox().getHeight() - (stringWidth*fontSize)/1000f)/3f;
 
 
-        PDPageContentStream pdPageContentStream = new PDPageContentStream(pdDocument, page, PDPageContentStream.AppendMode.APPEND, false);
-        pdPageContentStream.beginText();
-        pdPageContentStream.setFont(font, fontSize);
-        pdPageContentStream.setNonStrokingColor(new PDColor(new float[]{0,1/255,1f/255}, PDDeviceRGB.INSTANCE));
-        pdPageContentStream.newLineAtOffset(offsetX + shiftX, offsetY + shiftY);
+        PageComposer composer = PageComposer.acquire(pdDocument, page);
+        try {
+            composer.beginText();
+            composer.setFont(font, fontSize);
+            composer.setNonStrokingColor(new PDColor(new float[]{0,1/255,1f/255}, PDDeviceRGB.INSTANCE));
+            composer.newLineAtOffset(offsetX + shiftX, offsetY + shiftY);
 
 
-        pdPageContentStream.setTextMatrix(Matrix.getRotateInstance(90*Math.PI*0.25, centeredXPosition,
-                centeredYPosition));
+            composer.setTextMatrix(Matrix.getRotateInstance(90*Math.PI*0.25, centeredXPosition,
+                    centeredYPosition));
 
 
-        pdPageContentStream.showText(text);
+            composer.showText(text);
 
-        pdPageContentStream.endText();
-        pdPageContentStream.close();
+            composer.endText();
+        } finally {
+            composer.release();
+        }
     }
 
     public static void drawRect(PDDocument pdDocument, PDPage pdPage, float x, float y, float width, float height) throws IOException {
         //PDPage page = pdDocument.getDocumentCatalog().getPages().get(pageNumber);
         if (pdPage != null) {
-            PDPageContentStream pdPageContentStream = new PDPageContentStream(pdDocument, pdPage, PDPageContentStream.AppendMode.APPEND, false);
-            pdPageContentStream.setNonStrokingColor(Color.getHSBColor(61f/100, 50f/100, 90f/100));
-            pdPageContentStream.addRect(x, y, width, height);
-            //pdPageContentStream.fill();
-            //pdPageContentStream.setLineDashPattern(new float[]{1,2,1}, 0);
-            //pdPageContentStream.setStrokingColor(Color.DARK_GRAY);
-            pdPageContentStream.setStrokingColor(1.0f, 0, 0, 0);
-            pdPageContentStream.stroke();
-
-            pdPageContentStream.close();
+            PageComposer composer = PageComposer.acquire(pdDocument, pdPage);
+            try {
+                composer.setNonStrokingColor(Color.getHSBColor(61f/100, 50f/100, 90f/100));
+                composer.addRect(x, y, width, height);
+                //composer.fill();
+                //composer.setLineDashPattern(new float[]{1,2,1}, 0);
+                //composer.setStrokingColor(Color.DARK_GRAY);
+                composer.setStrokingColor(1.0f, 0, 0, 0);
+                composer.stroke();
+            } finally {
+                composer.release();
+            }
         }
     }
 
@@ -364,67 +428,16 @@ public class PDFUtils {
         if (pdPage != null) {
             PDRectangle pdRectangle = pdPage.getMediaBox();
 
-            System.out.println("pdRectangle: " + pdRectangle.toString());
-
-            int length = 7;
-            int length2 = 5;
-
-
-            float bxa[] = new float[4];
-            float bya[] = new float[4];
-
+            logger.debug("pdRectangle: {}", pdRectangle);
 
-            // left bottom
-            float bx = border/2;
-            float by = border/2;
-            bxa[0] = bx;
-            bya[0] = by;
-            // left top
-            bxa[1] = border/2;
-            bya[1] = pdRectangle.getUpperRightY() - border/2;
-            // right top
-            bxa[2] = pdRectangle.getUpperRightX() - border/2;
-            bya[2] = pdRectangle.getUpperRightY() - border/2;
-            // right bottom
-            bxa[3] = pdRectangle.getUpperRightX() - border/2;
-            bya[3] = border/2;
-
-
-            PDPageContentStream pdPageContentStream = new PDPageContentStream(pdDocument, pdPage, PDPageContentStream.AppendMode.APPEND, false);
-            pdPageContentStream.setLineWidth(0.5f);
-            pdPageContentStream.setStrokingColor(1.0f, 1, 1, 0);
-
-            for (int i = 0; i < bxa.length; i++) {
-                pdPageContentStream.moveTo(bxa[i] - length / 2.0f, bya[i]);
-                pdPageContentStream.lineTo(bxa[i] + length / 2f, bya[i]);
-                pdPageContentStream.closeAndStroke();
-
-                pdPageContentStream.moveTo(bxa[i], bya[i] - length / 2f);
-                pdPageContentStream.lineTo(bxa[i], bya[i] + length / 2f);
-                pdPageContentStream.closeAndStroke();
-
-                PDAnnotationSquareCircle circle = new PDAnnotationSquareCircle(PDAnnotationSquareCircle.SUB_TYPE_CIRCLE);
-                PDRectangle position = new PDRectangle();
-                position.setLowerLeftX(bxa[i] - length2 / 2.0f);
-                position.setLowerLeftY(bya[i] - length2 / 2f);
-                position.setUpperRightX(bxa[i] + length2 / 2.0f);
-                position.setUpperRightY(bya[i] + length2 / 2f);
-                circle.setRectangle(position);
-                //circle.setInteriorColor(new PDColor(new float[]{0,1/255,1f/255}, PDDeviceRGB.INSTANCE));
-                PDBorderEffectDictionary pdBorderEffectDictionary = new PDBorderEffectDictionary();
-
-                pdBorderEffectDictionary.setStyle(STYLE_SOLID);
-                circle.setBorderEffect(pdBorderEffectDictionary);
-
-                PDBorderStyleDictionary thickness = new PDBorderStyleDictionary();
-                thickness.setWidth((float)0.5);
-                circle.setColor(new PDColor(new float[]{1f, 1f, 1f, 0}, PDDeviceCMYK.INSTANCE));
-                circle.setBorderStyle(thickness);
-
-                pdPage.getAnnotations().add(circle);
+            PageComposer composer = PageComposer.acquire(pdDocument, pdPage);
+            try {
+                composer.drawForm(MarkTemplates.getInstance().getPrintFocus(pdDocument, pdRectangle, border));
+            } finally {
+                composer.release();
             }
 
-            pdPageContentStream.close();
+            MarkTemplates.getInstance().addPrintFocusAnnotations(pdDocument, pdPage, border);
         }
     }
 
@@ -433,34 +446,12 @@ public class PDFUtils {
         if (pdPage != null) {
             PDRectangle pdRectangle = pdPage.getMediaBox();
 
-            PDPageContentStream pdPageContentStream = new PDPageContentStream(pdDocument, pdPage, PDPageContentStream.AppendMode.APPEND, false);
-
-            int length = 6;
-            float bx = border/2 - length/2f;
-            float by = pdRectangle.getUpperRightY() - border/2 - length - 10;
-
-            pdPageContentStream.setNonStrokingColor(1f, 0, 0, 0);
-            pdPageContentStream.addRect(bx, by, length, length);
-            pdPageContentStream.fill();
-
-
-            by = pdRectangle.getUpperRightY() - border/2 - length*2 - 10;
-            pdPageContentStream.setNonStrokingColor(0f, 1, 0, 0);
-            pdPageContentStream.addRect(bx, by, length, length);
-            pdPageContentStream.fill();
-
-            by = pdRectangle.getUpperRightY() - border/2 - length*3 - 10;
-            pdPageContentStream.setNonStrokingColor(0f, 0, 1, 0);
-            pdPageContentStream.addRect(bx, by, length, length);
-            pdPageContentStream.fill();
-
-            by = pdRectangle.getUpperRightY() - border/2 - length*4 - 10;
-            pdPageContentStream.setNonStrokingColor(0f, 0, 0, 1);
-            pdPageContentStream.addRect(bx, by, length, length);
-            pdPageContentStream.fill();
-
-
-            pdPageContentStream.close();
+            PageComposer composer = PageComposer.acquire(pdDocument, pdPage);
+            try {
+                composer.drawForm(MarkTemplates.getInstance().getPrintColor(pdDocument, pdRectangle, border));
+            } finally {
+                composer.release();
+            }
         }
     }
 
@@ -470,142 +461,63 @@ public class PDFUtils {
         if (pdPage != null) {
             PDRectangle pdRectangle = pdPage.getMediaBox();
 
-            PDPageContentStream pdPageContentStream = new PDPageContentStream(pdDocument, pdPage, PDPageContentStream.AppendMode.APPEND, false);
-
-            int length = 6;
-            float bx = border/2 - length/2f;
-            float by = pdRectangle.getUpperRightY() - border/2 - length - 10;
+            PageComposer composer = PageComposer.acquire(pdDocument, pdPage);
+            try {
+                int length = 6;
+                float bx = border/2 - length/2f;
+                float by = pdRectangle.getUpperRightY() - border/2 - length - 10;
 
-            int fontSize = 6;
-            PDFont font = PDType1Font.HELVETICA;
-            //PDFont font = PDType0Font.load(pdDocument, new File(PdfUtils.class.getResource("/pdf/msyh.ttf").getPath()));
+                int fontSize = 6;
+                PDFont font = PDType1Font.HELVETICA;
+                FontMetrics fontMetrics = FontCache.getInstance().getMetrics(pdDocument, font);
+                //PDFont font = PDType0Font.load(pdDocument, new File(PdfUtils.class.getResource("/pdf/msyh.ttf").getPath()));
 
 
 
-            if (pageTitle != null) {
-                pdPageContentStream.beginText();
-                pdPageContentStream.setFont(font, fontSize);
-                pdPageContentStream.setNonStrokingColor(new PDColor(new float[]{0, 0, 0, 1}, PDDeviceCMYK.INSTANCE));
-                float titleWidth = font.getStringWidth(pageTitle) / 1000 * fontSize;
-                float titleHeight = font.getFontDescriptor().getFontBoundingBox().getHeight() / 1000 * fontSize;
-                pdPageContentStream.newLineAtOffset((pdRectangle.getWidth() - titleWidth) / 2f, border / 2 - titleHeight / 3);
+                if (pageTitle != null) {
+                    composer.beginText();
+                    composer.setFont(font, fontSize);
+                    composer.setNonStrokingColor(new PDColor(new float[]{0, 0, 0, 1}, PDDeviceCMYK.INSTANCE));
+                    float titleWidth = fontMetrics.getStringWidth(pageTitle, fontSize);
+                    float titleHeight = fontMetrics.getHeight(fontSize);
+                    composer.newLineAtOffset((pdRectangle.getWidth() - titleWidth) / 2f, border / 2 - titleHeight / 3);
 
-                pdPageContentStream.showText(pageTitle);
-                pdPageContentStream.endText();
-            }
+                    composer.showText(pageTitle);
+                    composer.endText();
+                }
 
-            if (firstSerialNumber != null) {
-                pdPageContentStream.beginText();
-                pdPageContentStream.setFont(font, fontSize);
-                pdPageContentStream.setNonStrokingColor(new PDColor(new float[]{0, 0, 0, 1}, PDDeviceCMYK.INSTANCE));
-                //float titleWidth = font.getStringWidth(firstSerialNumber) / 1000 * fontSize;
-                float titleHeight = font.getFontDescriptor().getFontBoundingBox().getHeight() / 1000 * fontSize;
-                pdPageContentStream.newLineAtOffset(border + 5, pdRectangle.getUpperRightY() - border / 2 - titleHeight / 3);
-                pdPageContentStream.showText(firstSerialNumber);
-                pdPageContentStream.endText();
-            }
-            if (lastSerialNumber != null) {
-                pdPageContentStream.beginText();
-                pdPageContentStream.setFont(font, fontSize);
-                pdPageContentStream.setNonStrokingColor(new PDColor(new float[]{0, 0, 0, 1}, PDDeviceCMYK.INSTANCE));
-                float titleWidth = font.getStringWidth(firstSerialNumber) / 1000 * fontSize;
-                float titleHeight = font.getFontDescriptor().getFontBoundingBox().getHeight() / 1000 * fontSize;
-                pdPageContentStream.newLineAtOffset(pdRectangle.getUpperRightX() - border - 5 - titleWidth, pdRectangle.getUpperRightY() -border / 2 - titleHeight / 3);
-                pdPageContentStream.showText(lastSerialNumber);
-                pdPageContentStream.endText();
+                if (firstSerialNumber != null) {
+                    composer.beginText();
+                    composer.setFont(font, fontSize);
+                    composer.setNonStrokingColor(new PDColor(new float[]{0, 0, 0, 1}, PDDeviceCMYK.INSTANCE));
+                    //float titleWidth = font.getStringWidth(firstSerialNumber) / 1000 * fontSize;
+                    float titleHeight = fontMetrics.getHeight(fontSize);
+                    composer.newLineAtOffset(border + 5, pdRectangle.getUpperRightY() - border / 2 - titleHeight / 3);
+                    composer.showText(firstSerialNumber);
+                    composer.endText();
+                }
+                if (lastSerialNumber != null) {
+                    composer.beginText();
+                    composer.setFont(font, fontSize);
+                    composer.setNonStrokingColor(new PDColor(new float[]{0, 0, 0, 1}, PDDeviceCMYK.INSTANCE));
+                    float titleWidth = fontMetrics.getStringWidth(firstSerialNumber, fontSize);
+                    float titleHeight = fontMetrics.getHeight(fontSize);
+                    composer.newLineAtOffset(pdRectangle.getUpperRightX() - border - 5 - titleWidth, pdRectangle.getUpperRightY() -border / 2 - titleHeight / 3);
+                    composer.showText(lastSerialNumber);
+                    composer.endText();
+                }
+            } finally {
+                composer.release();
             }
-
-
-
-            pdPageContentStream.close();
         }
     }
 
     public static void drawLayoutLevel3(PDDocument pdDocument, PDPage pdPage, float border) throws IOException {
-
-        List<Point> points = new ArrayList<>();
-
-        float contentWidth = pdPage.getMediaBox().getUpperRightX() - border * 2;
-        float contentHeight = pdPage.getMediaBox().getUpperRightY() - border * 2;
-
-
-        Point point = new Point();
-        point.x = (int)border;
-        point.y = (int)(border + contentHeight * 2/5);
-
-
-        Point point1 = new Point();
-        point1.x = (int)(border + contentWidth);
-        point1.y = (int)(border + contentHeight * 2/5);
-
-        points.add(point);
-        points.add(point1);
-
-
-
-        point = new Point();
-        point.x = (int)border;
-        point.y = (int)(border + contentHeight * 4/5);
-
-
-        point1 = new Point();
-        point1.x = (int)(border + contentWidth);
-        point1.y = (int)(border + contentHeight * 4/5);
-
-        points.add(point);
-        points.add(point1);
-
-
-        Point point2 = new Point();
-        point2.x = (int)(border + contentWidth/2);
-        point2.y = (int)(border);
-        points.add(point2);
-
-        Point point3 = new Point();
-        point3.x = (int)(border + contentWidth/2);
-        point3.y = (int)(border + contentHeight);
-
-
-        points.add(point3);
-
-
-
-        point = new Point();
-        point.x = (int)border;
-        point.y = (int)(border + contentHeight * 1/5);
-
-
-        point1 = new Point();
-        point1.x = (int)(border + contentWidth);
-        point1.y = (int)(border + contentHeight * 1/5);
-
-        points.add(point);
-        points.add(point1);
-
-        point = new Point();
-        point.x = (int)border;
-        point.y = (int)(border + contentHeight * 3/5);
-
-
-        point1 = new Point();
-        point1.x = (int)(border + contentWidth);
-        point1.y = (int)(border + contentHeight * 3/5);
-
-        points.add(point);
-        points.add(point1);
-
-
-        PDPageContentStream pdPageContentStream = new PDPageContentStream(pdDocument, pdPage, PDPageContentStream.AppendMode.APPEND, false);
-        pdPageContentStream.setLineWidth(0.5f);
-        pdPageContentStream.setStrokingColor(1.0f, 1, 1, 0);
-
-        for (int i = 0; i < points.size(); i+=2) {
-            pdPageContentStream.moveTo(points.get(i).x, points.get(i).y);
-            pdPageContentStream.lineTo(points.get(i+1).x, points.get(i+1).y);
-            pdPageContentStream.closeAndStroke();
+        PageComposer composer = PageComposer.acquire(pdDocument, pdPage);
+        try {
+            composer.drawForm(MarkTemplates.getInstance().getLayoutLevel3(pdDocument, pdPage.getMediaBox(), border));
+        } finally {
+            composer.release();
         }
-
-
-        pdPageContentStream.close();
     }
-}
\ No newline at end of file
+}
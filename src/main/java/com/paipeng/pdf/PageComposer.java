@@ -0,0 +1,330 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 页面内容合成器
+ *
+ * 一个页面的所有绘制操作写入同一个压缩的内容流, 重复的颜色、线宽、字体设置会被省略.
+ * 在begin和close之间调用PDFUtils的静态方法(insertImage, insertText, drawRect等)时,
+ * 这些方法会自动写入当前页面的合成器, 不再各自追加新的内容流.
+ *
+ * <pre>
+ * try (PageComposer composer = PageComposer.begin(pdDocument, pdPage)) {
+ *     PDFUtils.drawPrintFocus(pdDocument, pdPage, border);
+ *     PDFUtils.drawPrintColor(pdDocument, pdPage, border);
+ *     composer.addRect(x, y, width, height);
+ *     composer.stroke();
+ * }
+ * </pre>
+ */
+public class PageComposer implements Closeable {
+    // page dictionary -> composer; COSDictionary does not override equals, so this is keyed by identity
+    private static final Map<COSDictionary, PageComposer> ACTIVE = new ConcurrentHashMap<>();
+
+    private final PDDocument pdDocument;
+    private final PDPage pdPage;
+    private final PDPageContentStream contentStream;
+    private final boolean temporary;
+
+    private GraphicsState state = new GraphicsState();
+    private final Deque<GraphicsState> stateStack = new ArrayDeque<>();
+
+    private boolean closed;
+    private final long start = System.nanoTime();
+
+    private PageComposer(PDDocument pdDocument, PDPage pdPage, boolean temporary, boolean resetContext) throws IOException {
+        this.pdDocument = pdDocument;
+        this.pdPage = pdPage;
+        this.temporary = temporary;
+        this.contentStream = new PDPageContentStream(pdDocument, pdPage, PDPageContentStream.AppendMode.APPEND, true, resetContext);
+    }
+
+    /**
+     * 开始合成页面内容, 直到close为止所有绘制写入同一个内容流
+     *
+     * @param pdDocument 文档
+     * @param pdPage     页面
+     */
+    public static PageComposer begin(PDDocument pdDocument, PDPage pdPage) throws IOException {
+        return begin(pdDocument, pdPage, false);
+    }
+
+    /**
+     * 开始合成页面内容, 直到close为止所有绘制写入同一个内容流
+     *
+     * @param pdDocument   文档
+     * @param pdPage       页面
+     * @param resetContext 是否把页面原有内容包在q/Q中, 在已有的PDF上绘制时使用, 避免原有内容改变坐标系和颜色
+     */
+    public static PageComposer begin(PDDocument pdDocument, PDPage pdPage, boolean resetContext) throws IOException {
+        PageComposer composer = new PageComposer(pdDocument, pdPage, false, resetContext);
+        if (ACTIVE.putIfAbsent(pdPage.getCOSObject(), composer) != null) {
+            composer.contentStream.close();
+            throw new IllegalStateException("page already has an active PageComposer");
+        }
+        return composer;
+    }
+
+    /**
+     * 获得页面当前的合成器, 没有时创建一个临时合成器, 用完后需要调用release
+     */
+    static PageComposer acquire(PDDocument pdDocument, PDPage pdPage) throws IOException {
+        PageComposer composer = ACTIVE.get(pdPage.getCOSObject());
+        if (composer != null && composer.pdDocument == pdDocument) {
+            return composer;
+        }
+        return new PageComposer(pdDocument, pdPage, true, false);
+    }
+
+    /**
+     * 释放acquire得到的合成器, 临时合成器会被关闭
+     */
+    void release() throws IOException {
+        if (temporary) {
+            close();
+        }
+    }
+
+    public PDDocument getDocument() {
+        return pdDocument;
+    }
+
+    public PDPage getPage() {
+        return pdPage;
+    }
+
+    /**
+     * 直接访问底层内容流, 之后已记录的图形状态会被清空
+     */
+    public PDPageContentStream getContentStream() {
+        state = new GraphicsState();
+        return contentStream;
+    }
+
+    public void saveGraphicsState() throws IOException {
+        contentStream.saveGraphicsState();
+        stateStack.push(state.copy());
+    }
+
+    public void restoreGraphicsState() throws IOException {
+        contentStream.restoreGraphicsState();
+        state = stateStack.isEmpty() ? new GraphicsState() : stateStack.pop();
+    }
+
+    public void transform(Matrix matrix) throws IOException {
+        contentStream.transform(matrix);
+    }
+
+    public void setLineWidth(float lineWidth) throws IOException {
+        if (state.lineWidth == null || state.lineWidth != lineWidth) {
+            contentStream.setLineWidth(lineWidth);
+            state.lineWidth = lineWidth;
+        }
+    }
+
+    public void setStrokingColor(float c, float m, float y, float k) throws IOException {
+        setStrokingColor(new PDColor(new float[]{c, m, y, k}, PDDeviceCMYK.INSTANCE));
+    }
+
+    public void setStrokingColor(Color color) throws IOException {
+        setStrokingColor(toPDColor(color));
+    }
+
+    public void setStrokingColor(PDColor color) throws IOException {
+        color = toOutputColor(color);
+        if (!sameColor(state.strokingColor, color)) {
+            float[] c = color.getComponents();
+            if (color.getColorSpace() == PDDeviceCMYK.INSTANCE) {
+                contentStream.setStrokingColor(c[0], c[1], c[2], c[3]);
+            } else if (color.getColorSpace() == PDDeviceRGB.INSTANCE) {
+                contentStream.setStrokingColor(c[0], c[1], c[2]);
+            } else if (color.getColorSpace() == PDDeviceGray.INSTANCE) {
+                contentStream.setStrokingColor(c[0]);
+            } else {
+                contentStream.setStrokingColor(color);
+            }
+            state.strokingColor = color;
+        }
+    }
+
+    public void setNonStrokingColor(float c, float m, float y, float k) throws IOException {
+        setNonStrokingColor(new PDColor(new float[]{c, m, y, k}, PDDeviceCMYK.INSTANCE));
+    }
+
+    public void setNonStrokingColor(Color color) throws IOException {
+        setNonStrokingColor(toPDColor(color));
+    }
+
+    public void setNonStrokingColor(PDColor color) throws IOException {
+        color = toOutputColor(color);
+        if (!sameColor(state.nonStrokingColor, color)) {
+            float[] c = color.getComponents();
+            if (color.getColorSpace() == PDDeviceCMYK.INSTANCE) {
+                contentStream.setNonStrokingColor(c[0], c[1], c[2], c[3]);
+            } else if (color.getColorSpace() == PDDeviceRGB.INSTANCE) {
+                contentStream.setNonStrokingColor(c[0], c[1], c[2]);
+            } else if (color.getColorSpace() == PDDeviceGray.INSTANCE) {
+                contentStream.setNonStrokingColor(c[0]);
+            } else {
+                contentStream.setNonStrokingColor(color);
+            }
+            state.nonStrokingColor = color;
+        }
+    }
+
+    public void beginText() throws IOException {
+        contentStream.beginText();
+    }
+
+    public void endText() throws IOException {
+        contentStream.endText();
+    }
+
+    public void setFont(PDFont font, float fontSize) throws IOException {
+        // Tf is part of the graphics state and survives BT/ET, so a repeated font is left out
+        if (state.font != font || state.fontSize != fontSize) {
+            contentStream.setFont(font, fontSize);
+            state.font = font;
+            state.fontSize = fontSize;
+        }
+    }
+
+    public void setCharacterSpacing(float spacing) throws IOException {
+        if (state.characterSpacing == null || state.characterSpacing != spacing) {
+            contentStream.setCharacterSpacing(spacing);
+            state.characterSpacing = spacing;
+        }
+    }
+
+    public void newLineAtOffset(float tx, float ty) throws IOException {
+        contentStream.newLineAtOffset(tx, ty);
+    }
+
+    public void setTextMatrix(Matrix matrix) throws IOException {
+        contentStream.setTextMatrix(matrix);
+    }
+
+    public void showText(String text) throws IOException {
+        contentStream.showText(text);
+    }
+
+    public void moveTo(float x, float y) throws IOException {
+        contentStream.moveTo(x, y);
+    }
+
+    public void lineTo(float x, float y) throws IOException {
+        contentStream.lineTo(x, y);
+    }
+
+    public void addRect(float x, float y, float width, float height) throws IOException {
+        contentStream.addRect(x, y, width, height);
+    }
+
+    public void stroke() throws IOException {
+        contentStream.stroke();
+    }
+
+    public void closeAndStroke() throws IOException {
+        contentStream.closeAndStroke();
+    }
+
+    public void fill() throws IOException {
+        contentStream.fill();
+    }
+
+    public void drawImage(PDImageXObject image, float x, float y, float width, float height) throws IOException {
+        contentStream.drawImage(image, x, y, width, height);
+    }
+
+    public void drawForm(PDFormXObject form) throws IOException {
+        contentStream.drawForm(form);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (!temporary) {
+                ACTIVE.remove(pdPage.getCOSObject(), this);
+            }
+            contentStream.close();
+            Metrics.getInstance().record(Instrumentation.Stage.CONTENT_STREAM, start, 0, lastContentLength());
+        }
+    }
+
+    // compressed length of the stream just appended to /Contents
+    private long lastContentLength() {
+        COSBase contents = pdPage.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+        if (contents instanceof COSArray && ((COSArray) contents).size() > 0) {
+            COSArray array = (COSArray) contents;
+            contents = array.getObject(array.size() - 1);
+        }
+        return contents instanceof COSStream ? ((COSStream) contents).getLength() : 0;
+    }
+
+    private static PDColor toPDColor(Color color) {
+        float[] components = color.getRGBColorComponents(null);
+        return new PDColor(components, PDDeviceRGB.INSTANCE);
+    }
+
+    // RGB colours are converted when the output is CMYK
+    private static PDColor toOutputColor(PDColor color) {
+        CmykConverter converter = CmykConverter.getOutputConverter();
+        if (converter == null || color.getColorSpace() != PDDeviceRGB.INSTANCE) {
+            return color;
+        }
+        float[] c = color.getComponents();
+        return converter.convert(c[0], c[1], c[2]);
+    }
+
+    private static boolean sameColor(PDColor a, PDColor b) {
+        return a != null && a.getColorSpace() == b.getColorSpace()
+                && Arrays.equals(a.getComponents(), b.getComponents());
+    }
+
+    private static class GraphicsState {
+        private PDColor strokingColor;
+        private PDColor nonStrokingColor;
+        private Float lineWidth;
+        private PDFont font;
+        private float fontSize;
+        private Float characterSpacing;
+
+        GraphicsState copy() {
+            GraphicsState copy = new GraphicsState();
+            copy.strokingColor = strokingColor;
+            copy.nonStrokingColor = nonStrokingColor;
+            copy.lineWidth = lineWidth;
+            copy.font = font;
+            copy.fontSize = fontSize;
+            copy.characterSpacing = characterSpacing;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.rendering.ImageType;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 多线程PDF转图片
+ *
+ * 按页码范围、分辨率和颜色类型渲染页面, 每个线程使用自己的PDDocument和PDFRenderer.
+ * JPEG/PNG每页一个文件, 渲染完一页立即写盘; TIFF按页序写入一个多页文件.
+ * 同时在内存中的页面图片不超过线程数的两倍.
+ *
+ * <pre>
+ * PageRasterizer rasterizer = new PageRasterizer(8);
+ * rasterizer.setDpi(300);
+ * rasterizer.setImageType(ImageType.BINARY);
+ * rasterizer.renderTiff(new File("/data/proof.pdf"), 0, -1, new File("/data/proof.tif"));
+ * </pre>
+ */
+public class PageRasterizer {
+    public enum Format {
+        JPEG("jpg"), PNG("png");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private static final String TWELVEMONKEYS_TIFF_WRITER = "com.twelvemonkeys.imageio.plugins.tiff.TIFFImageWriter";
+
+    private final int threads;
+
+    private float dpi = 150;
+    private ImageType imageType = ImageType.RGB;
+    private Format format = Format.JPEG;
+    private MemoryUsageSetting memoryUsageSetting = MemorySettings.getInstance().getMemoryUsageSetting();
+
+    /**
+     * @param threads 渲染线程数
+     */
+    public PageRasterizer(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * 渲染页面到单独的图片文件
+     *
+     * @param pdfFile         PDF文件
+     * @param startPage       开始页码, 从0开始
+     * @param endPage         结束页码(包含), -1表示最后一页
+     * @param outputDirectory 输出目录
+     * @param prefix          文件名前缀, 文件名为 prefix-页码.jpg
+     * @return 按页序排列的图片文件
+     */
+    public List<File> render(File pdfFile, int startPage, int endPage, File outputDirectory, String prefix) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("cannot create output directory " + outputDirectory);
+        }
+
+        List<File> files = new ArrayList<>();
+        try (RenderPool pool = new RenderPool(pdfFile, memoryUsageSetting, threads, "pdf-render")) {
+            pool.run(startPage, pool.lastPage(endPage), pageIndex -> {
+                BufferedImage image = renderPage(pool, pageIndex);
+                File file = new File(outputDirectory, String.format("%s-%d.%s", prefix, pageIndex + 1, format.extension));
+                if (!ImageIO.write(image, format.name(), file)) {
+                    throw new IOException("no " + format + " writer for image type " + imageType);
+                }
+                return file;
+            }, files::add);
+        }
+        return files;
+    }
+
+    /**
+     * 渲染页面到一个多页TIFF文件
+     *
+     * @param pdfFile   PDF文件
+     * @param startPage 开始页码, 从0开始
+     * @param endPage   结束页码(包含), -1表示最后一页
+     * @param tiffFile  输出的TIFF文件
+     */
+    public void renderTiff(File pdfFile, int startPage, int endPage, File tiffFile) throws IOException {
+        ImageWriter writer = createTiffWriter();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionType(imageType == ImageType.BINARY ? "CCITT T.6" : "Deflate");
+
+        if (tiffFile.exists() && !tiffFile.delete()) {
+            throw new IOException("cannot replace " + tiffFile);
+        }
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(tiffFile);
+             RenderPool pool = new RenderPool(pdfFile, memoryUsageSetting, threads, "pdf-render")) {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+
+            pool.run(startPage, pool.lastPage(endPage), pageIndex -> renderPage(pool, pageIndex),
+                    image -> writer.writeToSequence(new IIOImage(image, null, null), param));
+
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private BufferedImage renderPage(RenderPool pool, int pageIndex) throws IOException {
+        long start = System.nanoTime();
+        BufferedImage image = pool.getRenderer().renderImageWithDPI(pageIndex, dpi, imageType);
+        Metrics.getInstance().record(Instrumentation.Stage.RENDER_PAGE, start, 0,
+                (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8);
+        return image;
+    }
+
+    /**
+     * twelvemonkeys的TIFF写入器; 新版JDK自带的TIFF插件也会注册, 这里明确选择twelvemonkeys
+     */
+    static ImageWriter createTiffWriter() throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("TIFF");
+        ImageWriter fallback = null;
+        while (writers.hasNext()) {
+            ImageWriter writer = writers.next();
+            if (TWELVEMONKEYS_TIFF_WRITER.equals(writer.getClass().getName())) {
+                if (fallback != null) {
+                    fallback.dispose();
+                }
+                return writer;
+            }
+            if (fallback == null) {
+                fallback = writer;
+            } else {
+                writer.dispose();
+            }
+        }
+        if (fallback == null) {
+            throw new IOException("no TIFF ImageWriter available, imageio-tiff is missing from the classpath");
+        }
+        return fallback;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public float getDpi() {
+        return dpi;
+    }
+
+    public void setDpi(float dpi) {
+        this.dpi = dpi;
+    }
+
+    public ImageType getImageType() {
+        return imageType;
+    }
+
+    /**
+     * 颜色类型, RGB, GRAY或BINARY
+     */
+    public void setImageType(ImageType imageType) {
+        this.imageType = imageType;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+}
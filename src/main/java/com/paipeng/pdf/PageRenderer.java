@@ -0,0 +1,21 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.IOException;
+
+/**
+ * 页面绘制接口, 并行生成时在工作线程中被调用, 每个线程使用自己的文档
+ */
+public interface PageRenderer {
+    /**
+     * 绘制一个页面
+     *
+     * @param pdDocument 页面所在的分段文档
+     * @param pdPage     页面
+     * @param pageIndex  页面在整个任务中的序号, 从0开始
+     */
+    void renderPage(PDDocument pdDocument, PDPage pdPage, int pageIndex) throws IOException;
+}
@@ -0,0 +1,17 @@
+package com.paipeng.pdf;
+
+
+import java.io.IOException;
+
+/**
+ * 逐页文字回调, 按页序在调用线程中被调用
+ */
+public interface PageTextHandler {
+    /**
+     * 处理一页的文字
+     *
+     * @param pageIndex 页码, 从0开始
+     * @param text      页面文字
+     */
+    void handlePage(int pageIndex, String text) throws IOException;
+}
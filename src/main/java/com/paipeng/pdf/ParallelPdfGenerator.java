@@ -0,0 +1,243 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多线程生成PDF
+ *
+ * PDDocument不是线程安全的, 所以把任务的页码范围分成多段, 每个工作线程用自己的PDDocument
+ * 生成一段并保存到临时文件(字体、图片等资源各自独立). 所有分段按顺序由StreamingMerger流式合并成一个文件,
+ * 合并时按内容哈希对字体、图片、印刷标记模板等资源去重.
+ *
+ * <pre>
+ * ParallelPdfGenerator generator = new ParallelPdfGenerator(Runtime.getRuntime().availableProcessors());
+ * generator.generate(10000, (pdDocument, pdPage, pageIndex) -&gt; {
+ *     PDFUtils.drawPrintFocus(pdDocument, pdPage, 20);
+ *     PDFUtils.insertText(pdDocument, pdPage, "No. " + pageIndex, 20, 20, 200, 20, fontPath, 12, 0);
+ * }, new File("/data/out/job.pdf"));
+ * </pre>
+ */
+public class ParallelPdfGenerator {
+    private final int threads;
+
+    private int pagesPerPart;
+    private PDRectangle pageSize = PDRectangle.A4;
+    private boolean embedFontSubset = true;
+    private MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupTempFileOnly();
+    private File tempDirectory;
+
+    private long uniqueResources;
+    private long duplicateResources;
+
+    /**
+     * @param threads 工作线程数
+     */
+    public ParallelPdfGenerator(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * 并行生成PDF
+     *
+     * @param pageCount    总页数
+     * @param pageRenderer 页面绘制
+     * @param output       输出文件
+     */
+    public void generate(int pageCount, PageRenderer pageRenderer, File output) throws IOException {
+        int partSize = pagesPerPart > 0 ? pagesPerPart : Math.max(1, (pageCount + threads * 4 - 1) / (threads * 4));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "pdf-part-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<Future<File>> parts = new ArrayList<>();
+        try {
+            for (int start = 0; start < pageCount; start += partSize) {
+                final int first = start;
+                final int last = Math.min(pageCount, start + partSize);
+                parts.add(executor.submit(Metrics.getInstance().withJobId(() -> renderPart(first, last, pageRenderer))));
+            }
+
+            merge(parts, output);
+        } finally {
+            executor.shutdownNow();
+            for (Future<File> part : parts) {
+                deletePart(part);
+            }
+        }
+    }
+
+    private File renderPart(int first, int last, PageRenderer pageRenderer) throws IOException {
+        File partFile = File.createTempFile("pdf-part-", ".pdf", tempDirectory);
+        PDDocument pdDocument = new PDDocument(memoryUsageSetting);
+        try {
+            if (!embedFontSubset) {
+                FontCache.getInstance().setEmbedSubset(pdDocument, false);
+            }
+            for (int pageIndex = first; pageIndex < last; pageIndex++) {
+                PDPage pdPage = new PDPage(pageSize);
+                pdDocument.addPage(pdPage);
+                pageRenderer.renderPage(pdDocument, pdPage, pageIndex);
+            }
+            PDFUtils.save(pdDocument, partFile);
+            return partFile;
+        } catch (IOException | RuntimeException e) {
+            partFile.delete();
+            throw e;
+        } finally {
+            FontCache.getInstance().release(pdDocument);
+            ImageCache.getInstance().release(pdDocument);
+            MarkTemplates.getInstance().release(pdDocument);
+            pdDocument.close();
+        }
+    }
+
+    private void merge(List<Future<File>> parts, File output) throws IOException {
+        StreamingMerger merger = new StreamingMerger(output);
+        merger.setMemoryUsageSetting(memoryUsageSetting);
+        merger.setProgressInterval(0);
+        boolean merged = false;
+        try {
+            // parts are merged in page order; later parts keep rendering while earlier ones are merged
+            for (Future<File> part : parts) {
+                File partFile = waitFor(part);
+                merger.append(partFile);
+                partFile.delete();
+            }
+            merger.close();
+            merged = true;
+        } finally {
+            uniqueResources = merger.getUniqueResources();
+            duplicateResources = merger.getDuplicateResources();
+            if (!merged) {
+                try {
+                    merger.close();
+                } catch (IOException e) {
+                    // the exception of the failed part is the one that matters
+                }
+                output.delete();
+            }
+        }
+    }
+
+    private static File waitFor(Future<File> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a part");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void deletePart(Future<File> part) {
+        if (part.isDone() && !part.isCancelled()) {
+            try {
+                part.get().delete();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // the part failed and has already removed its file
+            }
+        } else {
+            part.cancel(true);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getPagesPerPart() {
+        return pagesPerPart;
+    }
+
+    /**
+     * 每段的页数, 0表示按线程数自动分段
+     */
+    public void setPagesPerPart(int pagesPerPart) {
+        this.pagesPerPart = pagesPerPart;
+    }
+
+    public PDRectangle getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(PDRectangle pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public boolean isEmbedFontSubset() {
+        return embedFontSubset;
+    }
+
+    /**
+     * 是否只嵌入字体子集. 每段的子集不同, 合并后每段各有一份字体;
+     * 设为false时嵌入完整字体, 合并时所有分段共用一份
+     */
+    public void setEmbedFontSubset(boolean embedFontSubset) {
+        this.embedFontSubset = embedFontSubset;
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+
+    public File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * 分段临时文件目录, 为空时使用系统临时目录
+     */
+    public void setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * 上一次合并后不同内容的资源数
+     */
+    public long getUniqueResources() {
+        return uniqueResources;
+    }
+
+    /**
+     * 上一次合并时去掉的重复资源数
+     */
+    public long getDuplicateResources() {
+        return duplicateResources;
+    }
+}
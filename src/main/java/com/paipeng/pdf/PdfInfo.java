@@ -0,0 +1,64 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * PDF文件的基本信息: 页数, 第一页大小, 是否加密, 是否线性化
+ */
+public class PdfInfo {
+    private final String version;
+    private final int pageCount;
+    private final PDRectangle mediaBox;
+    private final int rotation;
+    private final boolean encrypted;
+    private final boolean linearized;
+
+    public PdfInfo(String version, int pageCount, PDRectangle mediaBox, int rotation, boolean encrypted, boolean linearized) {
+        this.version = version;
+        this.pageCount = pageCount;
+        this.mediaBox = mediaBox;
+        this.rotation = rotation;
+        this.encrypted = encrypted;
+        this.linearized = linearized;
+    }
+
+    /**
+     * 文件头中的版本, 例如"1.7"
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * 第一页的MediaBox, 没有页面时为空
+     */
+    public PDRectangle getMediaBox() {
+        return mediaBox;
+    }
+
+    /**
+     * 第一页的旋转角度
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    public boolean isEncrypted() {
+        return encrypted;
+    }
+
+    public boolean isLinearized() {
+        return linearized;
+    }
+
+    @Override
+    public String toString() {
+        return "PdfInfo{version=" + version + ", pageCount=" + pageCount + ", mediaBox=" + mediaBox
+                + ", rotation=" + rotation + ", encrypted=" + encrypted + ", linearized=" + linearized + "}";
+    }
+}
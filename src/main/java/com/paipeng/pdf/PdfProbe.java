@@ -0,0 +1,1007 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * PDF页数和基本信息探测
+ *
+ * PDDocument.load会解析整个文件的所有对象, 只为了得到页数太慢. 这里只读取文件头、尾部的xref和trailer,
+ * 以及Catalog, 页面树根节点的/Count和第一页; 线性化文件直接使用文件开头的线性化参数和第一页的xref,
+ * 不读取文件的其他部分. 无法解析的文件(例如对象流被加密)退回到PDDocument.load.
+ *
+ * 结果按路径、文件大小和修改时间缓存, 缓存按最近使用淘汰.
+ *
+ * <pre>
+ * PdfInfo info = PdfProbe.getInstance().probe(new File("/data/incoming/scan.pdf"));
+ * int pages = info.getPageCount();
+ * </pre>
+ */
+public class PdfProbe {
+    private static final PdfProbe INSTANCE = new PdfProbe();
+
+    private static final int TAIL_SIZE = 1024;
+
+    private final Map<CacheKey, PdfInfo> cache = new LinkedHashMap<CacheKey, PdfInfo>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, PdfInfo> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private int maxEntries = 1000;
+
+    private long hits;
+    private long misses;
+    private long fallbacks;
+
+    public static PdfProbe getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 读取PDF基本信息, 文件未修改时使用缓存
+     *
+     * @param file PDF文件
+     */
+    public PdfInfo probe(File file) throws IOException {
+        CacheKey key = new CacheKey(file.getCanonicalPath(), file.length(), file.lastModified());
+        synchronized (cache) {
+            PdfInfo info = cache.get(key);
+            if (info != null) {
+                hits++;
+                return info;
+            }
+            misses++;
+        }
+
+        PdfInfo info = read(file);
+        synchronized (cache) {
+            cache.put(key, info);
+        }
+        return info;
+    }
+
+    /**
+     * 读取PDF基本信息, 不使用缓存
+     *
+     * @param file PDF文件
+     */
+    public PdfInfo read(File file) throws IOException {
+        try (FileSource source = new FileSource(file)) {
+            return new Probe(source).read();
+        } catch (IOException | RuntimeException e) {
+            // damaged or unusual structure, let PDFBox with its repair logic handle it
+            synchronized (cache) {
+                fallbacks++;
+            }
+        }
+        return load(file);
+    }
+
+    private static PdfInfo load(File file) throws IOException {
+        try (PDDocument pdDocument = PDDocument.load(file, MemorySettings.getInstance().getLowMemoryUsageSetting())) {
+            int pageCount = pdDocument.getNumberOfPages();
+            PDPage pdPage = pageCount > 0 ? pdDocument.getPage(0) : null;
+            return new PdfInfo(String.valueOf(pdDocument.getVersion()), pageCount,
+                    pdPage != null ? pdPage.getMediaBox() : null, pdPage != null ? pdPage.getRotation() : 0,
+                    pdDocument.isEncrypted(), false);
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * 缓存的最大文件数
+     */
+    public void setMaxEntries(int maxEntries) {
+        synchronized (cache) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public long getHits() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+
+    /**
+     * 退回到PDDocument.load的次数
+     */
+    public long getFallbacks() {
+        synchronized (cache) {
+            return fallbacks;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (cache) {
+            return "PdfProbe{entries=" + cache.size() + ", hits=" + hits + ", misses=" + misses + ", fallbacks=" + fallbacks + "}";
+        }
+    }
+
+    private static class CacheKey {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+
+        CacheKey(String path, long length, long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return path.equals(other.path) && length == other.length && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + Long.hashCode(length) * 17 + Long.hashCode(lastModified);
+        }
+    }
+
+    /**
+     * 解析一个文件, 对象按需读取
+     */
+    private static class Probe {
+        private final FileSource source;
+        private final Parser parser;
+
+        private final List<XrefSection> sections = new ArrayList<>();
+        private final Set<Long> visitedXrefs = new HashSet<>();
+        private long nextXref = -1;
+
+        private final Map<Integer, Object> objects = new HashMap<>();
+        private final Map<Integer, ObjectStream> objectStreams = new HashMap<>();
+
+        Probe(FileSource source) {
+            this.source = source;
+            this.parser = new Parser(source);
+        }
+
+        PdfInfo read() throws IOException {
+            String version = readHeader();
+
+            // a linearized file starts with the linearization dictionary followed by the first-page xref
+            Map<String, Object> linearization = readLinearization();
+            Integer pageCount = null;
+            Object firstPage = null;
+            if (linearization != null) {
+                pageCount = toInt(linearization.get("N"));
+                firstPage = new Ref(toInt(linearization.get("O")), 0);
+                parser.skipWhitespace();
+                long start = parser.pos;
+                visitedXrefs.add(start);
+                addSection("xref".equals(parser.token()) ? readTable(start) : readStream(start));
+            } else {
+                nextXref = readStartxref();
+                loadNextSection();
+            }
+
+            Map<String, Object> trailer = sections.get(0).trailer;
+            boolean encrypted = trailer.get("Encrypt") != null;
+
+            if (pageCount == null) {
+                Map<String, Object> catalog = dict(resolve(trailer.get("Root")));
+                Map<String, Object> pages = dict(resolve(catalog.get("Pages")));
+                pageCount = toInt(resolve(pages.get("Count")));
+                firstPage = pages;
+            }
+
+            PDRectangle mediaBox = null;
+            int rotation = 0;
+            if (pageCount > 0) {
+                Map<String, Object> node = dict(resolve(firstPage));
+                // descend to the first leaf, walking up afterwards for inherited attributes
+                while (!"Page".equals(node.get("Type")) && node.get("Kids") != null) {
+                    List<Object> kids = list(resolve(node.get("Kids")));
+                    node = dict(resolve(kids.get(0)));
+                }
+                // the first page of a linearized file carries its attributes itself, the page tree
+                // is outside the first-page section and only read when MediaBox is still inherited
+                Object box = resolve(node.get("MediaBox"));
+                if (box == null) {
+                    box = inherited(node, "MediaBox");
+                }
+                mediaBox = box != null ? toRectangle(list(box)) : PDRectangle.LETTER;
+                Object rotate = linearization != null ? resolve(node.get("Rotate")) : inherited(node, "Rotate");
+                rotation = rotate != null ? toInt(rotate) : 0;
+            }
+            return new PdfInfo(version, pageCount, mediaBox, rotation, encrypted, linearization != null);
+        }
+
+        private String readHeader() throws IOException {
+            byte[] head = source.read(0, (int) Math.min(TAIL_SIZE, source.length));
+            String text = new String(head, StandardCharsets.ISO_8859_1);
+            int index = text.indexOf("%PDF-");
+            if (index < 0) {
+                throw new IOException("no PDF header");
+            }
+            parser.pos = index + 5;
+            return parser.token();
+        }
+
+        private Map<String, Object> readLinearization() throws IOException {
+            long start = parser.pos;
+            try {
+                parser.skipWhitespace();
+                Object first = parser.parseIndirect(parser.pos).value;
+                if (first instanceof Map) {
+                    Map<String, Object> dict = dict(first);
+                    Object length = dict.get("L");
+                    if (dict.get("Linearized") != null && length instanceof Number
+                            && ((Number) length).longValue() == source.length) {
+                        // otherwise the file was updated incrementally and the hints are stale
+                        if (!"endobj".equals(parser.token())) {
+                            return null;
+                        }
+                        return dict;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // not linearized, read the file from the end
+            }
+            parser.pos = start;
+            return null;
+        }
+
+        private long readStartxref() throws IOException {
+            int size = (int) Math.min(TAIL_SIZE, source.length);
+            byte[] tail = source.read(source.length - size, size);
+            String text = new String(tail, StandardCharsets.ISO_8859_1);
+            int index = text.lastIndexOf("startxref");
+            if (index < 0) {
+                throw new IOException("startxref not found");
+            }
+            parser.pos = source.length - size + index + "startxref".length();
+            return toLong(parser.parseObject());
+        }
+
+        private void addSection(XrefSection section) throws IOException {
+            sections.add(section);
+            Object xrefStm = section.trailer.get("XRefStm");
+            if (xrefStm instanceof Number && visitedXrefs.add(((Number) xrefStm).longValue())) {
+                // hybrid file, the xref stream holds the compressed objects
+                sections.add(readStream(((Number) xrefStm).longValue()));
+            }
+            Object prev = section.trailer.get("Prev");
+            nextXref = prev instanceof Number ? ((Number) prev).longValue() : -1;
+        }
+
+        private boolean loadNextSection() throws IOException {
+            if (nextXref < 0 || !visitedXrefs.add(nextXref)) {
+                return false;
+            }
+            long offset = nextXref;
+            parser.pos = offset;
+            String token = parser.token();
+            addSection("xref".equals(token) ? readTable(offset) : readStream(offset));
+            return true;
+        }
+
+        private XrefSection readTable(long offset) throws IOException {
+            parser.pos = offset;
+            if (!"xref".equals(parser.token())) {
+                throw new IOException("xref expected at " + offset);
+            }
+            TableSection section = new TableSection();
+            while (true) {
+                parser.skipWhitespace();
+                long start = parser.pos;
+                String token = parser.token();
+                if ("trailer".equals(token)) {
+                    section.trailer = dict(parser.parseObject());
+                    return section;
+                }
+                parser.pos = start;
+                int first = toInt(parser.parseObject());
+                int count = toInt(parser.parseObject());
+                parser.skipWhitespace();
+                long entries = parser.pos;
+
+                // entries should be 20 bytes, some writers use a single end-of-line byte
+                int entryLength = 20;
+                if (count > 0) {
+                    int c18 = source.at(entries + 18);
+                    int c19 = source.at(entries + 19);
+                    if (c18 == '\n' || (c18 == '\r' && c19 != '\n')) {
+                        entryLength = 19;
+                    }
+                }
+                section.subsections.add(new long[]{first, count, entries, entryLength});
+                parser.pos = entries + (long) count * entryLength;
+            }
+        }
+
+        private XrefSection readStream(long offset) throws IOException {
+            IndirectObject object = parser.parseIndirect(offset);
+            Map<String, Object> dict = dict(object.value);
+            if (!"XRef".equals(dict.get("Type"))) {
+                throw new IOException("xref stream expected at " + offset);
+            }
+            byte[] data = readStreamData(object);
+
+            List<Object> widths = list(dict.get("W"));
+            int[] w = new int[]{toInt(widths.get(0)), toInt(widths.get(1)), toInt(widths.get(2))};
+            List<Object> index = dict.get("Index") != null ? list(dict.get("Index")) : null;
+            if (index == null) {
+                index = new ArrayList<>();
+                index.add(0L);
+                index.add(dict.get("Size"));
+            }
+
+            StreamSection section = new StreamSection();
+            section.trailer = dict;
+            int pos = 0;
+            for (int i = 0; i + 1 < index.size(); i += 2) {
+                int first = toInt(index.get(i));
+                int count = toInt(index.get(i + 1));
+                for (int j = 0; j < count && pos + w[0] + w[1] + w[2] <= data.length; j++) {
+                    long type = w[0] == 0 ? 1 : field(data, pos, w[0]);
+                    long field2 = field(data, pos + w[0], w[1]);
+                    long field3 = field(data, pos + w[0] + w[1], w[2]);
+                    pos += w[0] + w[1] + w[2];
+                    section.entries.putIfAbsent(first + j, new long[]{type, field2, field3});
+                }
+            }
+            return section;
+        }
+
+        private static long field(byte[] data, int pos, int width) {
+            long value = 0;
+            for (int i = 0; i < width; i++) {
+                value = (value << 8) | (data[pos + i] & 0xff);
+            }
+            return value;
+        }
+
+        /**
+         * 对象的xref条目{类型, 偏移或对象流号, 代号或索引}, 需要时才读取更早的xref
+         */
+        private long[] findEntry(int number) throws IOException {
+            int index = 0;
+            while (true) {
+                for (; index < sections.size(); index++) {
+                    long[] entry = sections.get(index).lookup(source, number);
+                    if (entry != null) {
+                        return entry;
+                    }
+                }
+                if (!loadNextSection()) {
+                    return null;
+                }
+            }
+        }
+
+        private Object resolve(Object value) throws IOException {
+            int depth = 0;
+            while (value instanceof Ref) {
+                if (++depth > 32) {
+                    throw new IOException("reference loop");
+                }
+                value = getObject(((Ref) value).number);
+            }
+            return value;
+        }
+
+        private Object getObject(int number) throws IOException {
+            if (objects.containsKey(number)) {
+                return objects.get(number);
+            }
+            long[] entry = findEntry(number);
+            Object value = null;
+            if (entry != null && entry[0] == 1) {
+                IndirectObject object = parser.parseIndirect(entry[1]);
+                if (object.number != number) {
+                    throw new IOException("xref offset of object " + number + " points to object " + object.number);
+                }
+                value = object.value;
+            } else if (entry != null && entry[0] == 2) {
+                value = getObjectStream((int) entry[1]).get(number);
+            }
+            objects.put(number, value);
+            return value;
+        }
+
+        private ObjectStream getObjectStream(int number) throws IOException {
+            ObjectStream objectStream = objectStreams.get(number);
+            if (objectStream == null) {
+                long[] entry = findEntry(number);
+                if (entry == null || entry[0] != 1) {
+                    throw new IOException("object stream " + number + " not found");
+                }
+                IndirectObject object = parser.parseIndirect(entry[1]);
+                objectStream = new ObjectStream(dict(object.value), readStreamData(object));
+                objectStreams.put(number, objectStream);
+            }
+            return objectStream;
+        }
+
+        private byte[] readStreamData(IndirectObject object) throws IOException {
+            Map<String, Object> dict = dict(object.value);
+            long length = toLong(resolve(dict.get("Length")));
+            byte[] data = source.read(object.streamStart, (int) length);
+
+            Object filter = resolve(dict.get("Filter"));
+            Object parms = resolve(dict.get("DecodeParms"));
+            if (filter instanceof List) {
+                List<Object> filters = list(filter);
+                if (filters.size() > 1) {
+                    throw new IOException("unsupported filter chain " + filters);
+                }
+                filter = filters.isEmpty() ? null : resolve(filters.get(0));
+                parms = parms instanceof List && !list(parms).isEmpty() ? resolve(list(parms).get(0)) : null;
+            }
+            if (filter == null) {
+                return data;
+            }
+            if (!"FlateDecode".equals(filter)) {
+                throw new IOException("unsupported filter " + filter);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            byte[] decoded = out.toByteArray();
+
+            if (parms instanceof Map) {
+                Map<String, Object> decodeParms = dict(parms);
+                int predictor = decodeParms.get("Predictor") != null ? toInt(decodeParms.get("Predictor")) : 1;
+                if (predictor >= 10) {
+                    int columns = decodeParms.get("Columns") != null ? toInt(decodeParms.get("Columns")) : 1;
+                    int colors = decodeParms.get("Colors") != null ? toInt(decodeParms.get("Colors")) : 1;
+                    int bits = decodeParms.get("BitsPerComponent") != null ? toInt(decodeParms.get("BitsPerComponent")) : 8;
+                    decoded = unpredict(decoded, columns, colors, bits);
+                } else if (predictor != 1) {
+                    throw new IOException("unsupported predictor " + predictor);
+                }
+            }
+            return decoded;
+        }
+
+        private Object inherited(Map<String, Object> node, String key) throws IOException {
+            for (int depth = 0; node != null && depth < 64; depth++) {
+                Object value = resolve(node.get(key));
+                if (value != null) {
+                    return value;
+                }
+                Object parent = resolve(node.get("Parent"));
+                node = parent instanceof Map ? dict(parent) : null;
+            }
+            return null;
+        }
+
+        private PDRectangle toRectangle(List<Object> box) throws IOException {
+            float[] v = new float[4];
+            for (int i = 0; i < 4; i++) {
+                v[i] = ((Number) resolve(box.get(i))).floatValue();
+            }
+            return new PDRectangle(Math.min(v[0], v[2]), Math.min(v[1], v[3]), Math.abs(v[2] - v[0]), Math.abs(v[3] - v[1]));
+        }
+    }
+
+    /**
+     * PNG预测(Predictor 10-15)
+     */
+    private static byte[] unpredict(byte[] data, int columns, int colors, int bits) {
+        int bytesPerPixel = Math.max(1, colors * bits / 8);
+        int rowLength = (columns * colors * bits + 7) / 8;
+        int rows = data.length / (rowLength + 1);
+        byte[] out = new byte[rows * rowLength];
+        for (int row = 0; row < rows; row++) {
+            int type = data[row * (rowLength + 1)] & 0xff;
+            int in = row * (rowLength + 1) + 1;
+            int pos = row * rowLength;
+            for (int i = 0; i < rowLength; i++) {
+                int raw = data[in + i] & 0xff;
+                int left = i >= bytesPerPixel ? out[pos + i - bytesPerPixel] & 0xff : 0;
+                int up = row > 0 ? out[pos + i - rowLength] & 0xff : 0;
+                int upLeft = row > 0 && i >= bytesPerPixel ? out[pos + i - rowLength - bytesPerPixel] & 0xff : 0;
+                int value;
+                switch (type) {
+                    case 1:
+                        value = raw + left;
+                        break;
+                    case 2:
+                        value = raw + up;
+                        break;
+                    case 3:
+                        value = raw + (left + up) / 2;
+                        break;
+                    case 4:
+                        int p = left + up - upLeft;
+                        int pa = Math.abs(p - left);
+                        int pb = Math.abs(p - up);
+                        int pc = Math.abs(p - upLeft);
+                        value = raw + (pa <= pb && pa <= pc ? left : pb <= pc ? up : upLeft);
+                        break;
+                    default:
+                        value = raw;
+                        break;
+                }
+                out[pos + i] = (byte) value;
+            }
+        }
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> dict(Object value) throws IOException {
+        if (!(value instanceof Map)) {
+            throw new IOException("dictionary expected, found " + value);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Object value) throws IOException {
+        if (!(value instanceof List)) {
+            throw new IOException("array expected, found " + value);
+        }
+        return (List<Object>) value;
+    }
+
+    private static int toInt(Object value) throws IOException {
+        return (int) toLong(value);
+    }
+
+    private static long toLong(Object value) throws IOException {
+        if (!(value instanceof Number)) {
+            throw new IOException("number expected, found " + value);
+        }
+        return ((Number) value).longValue();
+    }
+
+    private abstract static class XrefSection {
+        Map<String, Object> trailer;
+
+        abstract long[] lookup(Source source, int number) throws IOException;
+    }
+
+    private static class TableSection extends XrefSection {
+        // {first object, count, offset of the first entry, entry length}
+        private final List<long[]> subsections = new ArrayList<>();
+
+        @Override
+        long[] lookup(Source source, int number) throws IOException {
+            for (long[] subsection : subsections) {
+                if (number >= subsection[0] && number < subsection[0] + subsection[1]) {
+                    long pos = subsection[2] + (number - subsection[0]) * subsection[3];
+                    String entry = new String(source.read(pos, 18), StandardCharsets.ISO_8859_1);
+                    long offset = Long.parseLong(entry.substring(0, 10).trim());
+                    return entry.charAt(17) == 'n' ? new long[]{1, offset, 0} : new long[]{0, 0, 0};
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class StreamSection extends XrefSection {
+        private final Map<Integer, long[]> entries = new HashMap<>();
+
+        @Override
+        long[] lookup(Source source, int number) {
+            return entries.get(number);
+        }
+    }
+
+    private static class ObjectStream {
+        private final Map<Integer, Object> objects = new HashMap<>();
+
+        ObjectStream(Map<String, Object> dict, byte[] data) throws IOException {
+            int count = toInt(dict.get("N"));
+            int first = toInt(dict.get("First"));
+            Parser parser = new Parser(new ArraySource(data));
+            int[] numbers = new int[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                numbers[i] = toInt(parser.parseObject());
+                offsets[i] = toLong(parser.parseObject());
+            }
+            for (int i = 0; i < count; i++) {
+                parser.pos = first + offsets[i];
+                objects.put(numbers[i], parser.parseObject());
+            }
+        }
+
+        Object get(int number) {
+            return objects.get(number);
+        }
+    }
+
+    private static class Ref {
+        private final int number;
+        private final int generation;
+
+        Ref(int number, int generation) {
+            this.number = number;
+            this.generation = generation;
+        }
+
+        @Override
+        public String toString() {
+            return number + " " + generation + " R";
+        }
+    }
+
+    private static class IndirectObject {
+        private final int number;
+        private final Object value;
+        private final long streamStart;
+
+        IndirectObject(int number, Object value, long streamStart) {
+            this.number = number;
+            this.value = value;
+            this.streamStart = streamStart;
+        }
+    }
+
+    private static class Keyword {
+        private final String keyword;
+
+        Keyword(String keyword) {
+            this.keyword = keyword;
+        }
+
+        @Override
+        public String toString() {
+            return keyword;
+        }
+    }
+
+    /**
+     * PDF对象的最小解析器: 字典的键和名字为String, 字符串为byte[], 数字为Long或Double
+     */
+    private static class Parser {
+        private final Source source;
+        private long pos;
+
+        Parser(Source source) {
+            this.source = source;
+        }
+
+        IndirectObject parseIndirect(long offset) throws IOException {
+            pos = offset;
+            int number = toInt(parseObject());
+            parseObject();
+            if (!"obj".equals(token())) {
+                throw new IOException("obj expected at " + offset);
+            }
+            Object value = parseObject();
+            long streamStart = -1;
+            if (value instanceof Map) {
+                long end = pos;
+                if ("stream".equals(token())) {
+                    if (source.at(pos) == '\r') {
+                        pos++;
+                    }
+                    if (source.at(pos) == '\n') {
+                        pos++;
+                    }
+                    streamStart = pos;
+                } else {
+                    pos = end;
+                }
+            }
+            return new IndirectObject(number, value, streamStart);
+        }
+
+        Object parseObject() throws IOException {
+            skipWhitespace();
+            int c = source.at(pos);
+            switch (c) {
+                case -1:
+                    throw new IOException("unexpected end of data");
+                case '<':
+                    if (source.at(pos + 1) == '<') {
+                        pos += 2;
+                        return parseDictionary();
+                    }
+                    return parseHexString();
+                case '[':
+                    pos++;
+                    return parseArray();
+                case '(':
+                    return parseLiteralString();
+                case '/':
+                    pos++;
+                    return parseName();
+                default:
+                    break;
+            }
+
+            String token = token();
+            if (token.isEmpty()) {
+                throw new IOException("unexpected character '" + (char) c + "' at " + pos);
+            }
+            char first = token.charAt(0);
+            if ((first >= '0' && first <= '9') || first == '-' || first == '+' || first == '.') {
+                if (token.indexOf('.') >= 0) {
+                    return Double.valueOf(token);
+                }
+                long number = Long.parseLong(token);
+                long start = pos;
+                String generation = token();
+                if (!generation.isEmpty() && isInteger(generation) && "R".equals(token())) {
+                    return new Ref((int) number, Integer.parseInt(generation));
+                }
+                pos = start;
+                return number;
+            }
+            if ("true".equals(token) || "false".equals(token)) {
+                return Boolean.valueOf(token);
+            }
+            if ("null".equals(token)) {
+                return null;
+            }
+            return new Keyword(token);
+        }
+
+        private Map<String, Object> parseDictionary() throws IOException {
+            Map<String, Object> dict = new HashMap<>();
+            while (true) {
+                skipWhitespace();
+                int c = source.at(pos);
+                if (c == '>' && source.at(pos + 1) == '>') {
+                    pos += 2;
+                    return dict;
+                }
+                if (c != '/') {
+                    throw new IOException("name expected at " + pos);
+                }
+                pos++;
+                String key = parseName();
+                dict.put(key, parseObject());
+            }
+        }
+
+        private List<Object> parseArray() throws IOException {
+            List<Object> array = new ArrayList<>();
+            while (true) {
+                skipWhitespace();
+                if (source.at(pos) == ']') {
+                    pos++;
+                    return array;
+                }
+                array.add(parseObject());
+            }
+        }
+
+        private String parseName() throws IOException {
+            StringBuilder name = new StringBuilder();
+            while (true) {
+                int c = source.at(pos);
+                if (c == -1 || isWhitespace(c) || isDelimiter(c)) {
+                    return name.toString();
+                }
+                pos++;
+                if (c == '#' && isHex(source.at(pos)) && isHex(source.at(pos + 1))) {
+                    c = Integer.parseInt("" + (char) source.at(pos) + (char) source.at(pos + 1), 16);
+                    pos += 2;
+                }
+                name.append((char) c);
+            }
+        }
+
+        private byte[] parseHexString() throws IOException {
+            pos++;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int high = -1;
+            while (true) {
+                int c = source.at(pos++);
+                if (c == -1 || c == '>') {
+                    if (high >= 0) {
+                        out.write(high << 4);
+                    }
+                    return out.toByteArray();
+                }
+                if (isHex(c)) {
+                    int digit = Character.digit(c, 16);
+                    if (high < 0) {
+                        high = digit;
+                    } else {
+                        out.write((high << 4) | digit);
+                        high = -1;
+                    }
+                }
+            }
+        }
+
+        private byte[] parseLiteralString() throws IOException {
+            pos++;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int depth = 1;
+            while (true) {
+                int c = source.at(pos++);
+                if (c == -1) {
+                    throw new IOException("unterminated string");
+                }
+                if (c == '\\') {
+                    // escapes only matter for finding the end of the string, values are not used
+                    int next = source.at(pos++);
+                    out.write(next);
+                    continue;
+                }
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return out.toByteArray();
+                }
+                out.write(c);
+            }
+        }
+
+        String token() throws IOException {
+            skipWhitespace();
+            StringBuilder token = new StringBuilder();
+            while (true) {
+                int c = source.at(pos);
+                if (c == -1 || isWhitespace(c) || isDelimiter(c)) {
+                    return token.toString();
+                }
+                token.append((char) c);
+                pos++;
+            }
+        }
+
+        void skipWhitespace() throws IOException {
+            while (true) {
+                int c = source.at(pos);
+                if (c == '%') {
+                    while (c != -1 && c != '\r' && c != '\n') {
+                        c = source.at(++pos);
+                    }
+                } else if (c != -1 && isWhitespace(c)) {
+                    pos++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private static boolean isInteger(String token) {
+            for (int i = 0; i < token.length(); i++) {
+                if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isWhitespace(int c) {
+            return c == 0 || c == 9 || c == 10 || c == 12 || c == 13 || c == 32;
+        }
+
+        private static boolean isDelimiter(int c) {
+            return c == '(' || c == ')' || c == '<' || c == '>' || c == '[' || c == ']'
+                    || c == '{' || c == '}' || c == '/' || c == '%';
+        }
+
+        private static boolean isHex(int c) {
+            return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+        }
+    }
+
+    private interface Source {
+        /**
+         * pos位置的字节, 超出范围时为-1
+         */
+        int at(long pos) throws IOException;
+
+        byte[] read(long pos, int length) throws IOException;
+    }
+
+    private static class ArraySource implements Source {
+        private final byte[] data;
+
+        ArraySource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int at(long pos) {
+            return pos >= 0 && pos < data.length ? data[(int) pos] & 0xff : -1;
+        }
+
+        @Override
+        public byte[] read(long pos, int length) throws IOException {
+            if (pos < 0 || pos + length > data.length) {
+                throw new IOException("read beyond end of data");
+            }
+            byte[] bytes = new byte[length];
+            System.arraycopy(data, (int) pos, bytes, 0, length);
+            return bytes;
+        }
+    }
+
+    /**
+     * 带4K缓冲的随机访问文件
+     */
+    private static class FileSource implements Source, Closeable {
+        private final RandomAccessFile file;
+        private final long length;
+        private final byte[] buffer = new byte[4096];
+        private long bufferStart = -1;
+        private int bufferLength;
+
+        FileSource(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            this.length = this.file.length();
+        }
+
+        @Override
+        public int at(long pos) throws IOException {
+            if (pos < 0 || pos >= length) {
+                return -1;
+            }
+            if (bufferStart < 0 || pos < bufferStart || pos >= bufferStart + bufferLength) {
+                // keep a little before pos in the buffer, the parser steps back after look-ahead
+                bufferStart = Math.max(0, pos - 64);
+                file.seek(bufferStart);
+                bufferLength = file.read(buffer, 0, (int) Math.min(buffer.length, length - bufferStart));
+            }
+            return buffer[(int) (pos - bufferStart)] & 0xff;
+        }
+
+        @Override
+        public byte[] read(long pos, int length) throws IOException {
+            if (pos < 0 || pos + length > this.length) {
+                throw new IOException("read beyond end of file");
+            }
+            byte[] bytes = new byte[length];
+            file.seek(pos);
+            file.readFully(bytes);
+            return bytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,724 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 印前检查
+ *
+ * 用PDFStreamParser逐个解析页面内容流的操作符, 不渲染页面. 检查RGB、灰度和专色颜色操作符与颜色空间,
+ * 图片和内嵌图片的颜色空间, 描边线宽和字体嵌入. Form XObject和平铺图案单独检查一次, 结果计入使用它们的页面.
+ *
+ * 资源字典和内容流由调用线程按页读取, 内容流的解压和解析在线程池中并行进行.
+ * 线宽按内容流中cm的缩放计算, Form XObject按自身坐标检查.
+ *
+ * <pre>
+ * PreflightReport report = new Preflight().check(new File("/data/press-run.pdf"));
+ * if (!report.isPassed()) {
+ *     try (Writer writer = Files.newBufferedWriter(Paths.get("/data/press-run.json"))) {
+ *         report.writeJson(writer);
+ *     }
+ * }
+ * </pre>
+ */
+public class Preflight {
+    private enum Family {
+        CMYK, GRAY, RGB, SPOT, NONE
+    }
+
+    private static final COSName LINE_WIDTH = COSName.getPDFName("LW");
+    private static final COSName PATTERN_TYPE = COSName.getPDFName("PatternType");
+    private static final Set<String> PROCESS_COLORANTS = new HashSet<>(Arrays.asList("Cyan", "Magenta", "Yellow", "Black", "None", "All"));
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private float minLineWidth = 0.25f;
+    private boolean allowGray = true;
+    private MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupTempFileOnly();
+
+    /**
+     * 检查PDF文件
+     *
+     * @param file PDF文件
+     */
+    public PreflightReport check(File file) throws IOException {
+        try (PDDocument pdDocument = PDDocument.load(file, memoryUsageSetting)) {
+            return check(pdDocument, file.getPath());
+        }
+    }
+
+    /**
+     * 检查文档的所有页面
+     *
+     * @param pdDocument 文档, 检查期间不能修改
+     */
+    public PreflightReport check(PDDocument pdDocument) throws IOException {
+        return check(pdDocument, null);
+    }
+
+    private PreflightReport check(PDDocument pdDocument, String file) throws IOException {
+        long start = System.nanoTime();
+        Scan scan = new Scan();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "pdf-preflight-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // bounds the content read ahead of the workers
+        Semaphore pending = new Semaphore(threads * 4);
+
+        List<Future<PageIssues>> pages = new ArrayList<>();
+        List<PreflightReport.Issue> issues = new ArrayList<>();
+        try {
+            for (PDPage pdPage : pdDocument.getPages()) {
+                PDResources pdResources = pdPage.getResources();
+                Resources resources = scan.resources(pdResources != null ? pdResources.getCOSObject() : null, null);
+                Content content = scan.content(pdPage.getCOSObject().getDictionaryObject(COSName.CONTENTS), resources);
+                int pageNumber = pages.size() + 1;
+                acquire(pending);
+                pages.add(executor.submit(Metrics.getInstance().withJobId(() -> {
+                    try {
+                        PageIssues pageIssues = new PageIssues(pageNumber);
+                        content.check(pageIssues);
+                        return pageIssues;
+                    } finally {
+                        pending.release();
+                    }
+                })));
+            }
+            for (Future<PageIssues> page : pages) {
+                issues.addAll(waitFor(page).issues.values());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Metrics.getInstance().record(Instrumentation.Stage.PREFLIGHT, start, scan.contentBytes, 0);
+        return new PreflightReport(file, pages.size(), issues, (System.nanoTime() - start) / 1000000);
+    }
+
+    private static void acquire(Semaphore semaphore) throws IOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading pages");
+        }
+    }
+
+    private static <T> T waitFor(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a page");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * 解析内容流的线程数, 默认为CPU核数
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    public float getMinLineWidth() {
+        return minLineWidth;
+    }
+
+    /**
+     * 最小描边线宽(pt), 更细的线报告为HAIRLINE, 默认0.25
+     */
+    public void setMinLineWidth(float minLineWidth) {
+        this.minLineWidth = minLineWidth;
+    }
+
+    public boolean isAllowGray() {
+        return allowGray;
+    }
+
+    /**
+     * 是否允许灰度颜色和灰度图片, 灰度输出时只用K版, 默认允许
+     */
+    public void setAllowGray(boolean allowGray) {
+        this.allowGray = allowGray;
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    /**
+     * check(File)加载文件使用的内存设置
+     */
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+
+    /**
+     * 一页的问题, 相同类型和内容的问题合并计数
+     */
+    private static class PageIssues {
+        private final int page;
+        private final Map<String, PreflightReport.Issue> issues = new LinkedHashMap<>();
+
+        PageIssues(int page) {
+            this.page = page;
+        }
+
+        void add(PreflightReport.IssueType type, String detail, int count) {
+            PreflightReport.Issue issue = issues.get(type.name() + detail);
+            if (issue == null) {
+                issues.put(type.name() + detail, new PreflightReport.Issue(page, type, detail, count));
+            } else {
+                issue.add(count);
+            }
+        }
+    }
+
+    /**
+     * 资源字典中各名字的检查结果, 由调用线程创建, 检查线程只读
+     */
+    private static class Resources {
+        final Map<String, Family> colorSpaces = new HashMap<>();
+        final Map<String, Family> shadings = new HashMap<>();
+        final Map<String, Family> images = new HashMap<>();
+        final Map<String, Content> forms = new HashMap<>();
+        // shading patterns map to a family, tiling patterns to their content
+        final Map<String, Object> patterns = new HashMap<>();
+        final Map<String, Float> lineWidths = new HashMap<>();
+        // fonts that are not embedded, resource name -> font name
+        final Map<String, String> fonts = new HashMap<>();
+    }
+
+    /**
+     * 一次检查中读取的资源和内容流, 同一个对象只处理一次. 只在调用线程中使用
+     */
+    private class Scan {
+        private final Map<COSBase, Resources> resources = new IdentityHashMap<>();
+        private final Map<COSBase, Content> forms = new IdentityHashMap<>();
+        private final Set<COSBase> building = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Map<COSBase, Family> colorSpaces = new IdentityHashMap<>();
+        private final Map<COSBase, String> fonts = new IdentityHashMap<>();
+        private long contentBytes;
+
+        /**
+         * @param dictionary 资源字典, 为空时使用inherited
+         * @param inherited  没有自己资源字典的Form XObject使用所在页面的资源
+         */
+        Resources resources(COSDictionary dictionary, Resources inherited) throws IOException {
+            if (dictionary == null) {
+                return inherited != null ? inherited : new Resources();
+            }
+            Resources result = resources.get(dictionary);
+            if (result != null) {
+                return result;
+            }
+            result = new Resources();
+            COSDictionary colorSpaceDictionary = dictionary(dictionary, COSName.COLORSPACE);
+            for (COSName name : colorSpaceDictionary.keySet()) {
+                result.colorSpaces.put(name.getName(), family(colorSpaceDictionary.getDictionaryObject(name)));
+            }
+            COSDictionary shadingDictionary = dictionary(dictionary, COSName.SHADING);
+            for (COSName name : shadingDictionary.keySet()) {
+                result.shadings.put(name.getName(), shadingFamily(shadingDictionary.getDictionaryObject(name)));
+            }
+            COSDictionary extGStateDictionary = dictionary(dictionary, COSName.EXT_G_STATE);
+            for (COSName name : extGStateDictionary.keySet()) {
+                COSBase extGState = extGStateDictionary.getDictionaryObject(name);
+                if (extGState instanceof COSDictionary
+                        && ((COSDictionary) extGState).getDictionaryObject(LINE_WIDTH) instanceof COSNumber) {
+                    result.lineWidths.put(name.getName(), ((COSDictionary) extGState).getFloat(LINE_WIDTH));
+                }
+            }
+            COSDictionary fontDictionary = dictionary(dictionary, COSName.FONT);
+            for (COSName name : fontDictionary.keySet()) {
+                String fontName = notEmbedded(fontDictionary.getDictionaryObject(name));
+                if (fontName != null) {
+                    result.fonts.put(name.getName(), fontName);
+                }
+            }
+            COSDictionary xObjectDictionary = dictionary(dictionary, COSName.XOBJECT);
+            for (COSName name : xObjectDictionary.keySet()) {
+                COSBase xObject = xObjectDictionary.getDictionaryObject(name);
+                if (!(xObject instanceof COSStream)) {
+                    continue;
+                }
+                COSStream stream = (COSStream) xObject;
+                if (COSName.IMAGE.equals(stream.getCOSName(COSName.SUBTYPE))) {
+                    result.images.put(name.getName(), stream.getBoolean(COSName.IMAGE_MASK, false)
+                            ? Family.NONE : family(stream.getDictionaryObject(COSName.COLORSPACE)));
+                } else if (COSName.FORM.equals(stream.getCOSName(COSName.SUBTYPE))) {
+                    Content form = form(stream, result);
+                    if (form != null) {
+                        result.forms.put(name.getName(), form);
+                    }
+                }
+            }
+            COSDictionary patternDictionary = dictionary(dictionary, COSName.PATTERN);
+            for (COSName name : patternDictionary.keySet()) {
+                COSBase pattern = patternDictionary.getDictionaryObject(name);
+                if (pattern instanceof COSStream && ((COSStream) pattern).getInt(PATTERN_TYPE) == 1) {
+                    Content tiling = form((COSStream) pattern, result);
+                    if (tiling != null) {
+                        result.patterns.put(name.getName(), tiling);
+                    }
+                } else if (pattern instanceof COSDictionary) {
+                    result.patterns.put(name.getName(),
+                            shadingFamily(((COSDictionary) pattern).getDictionaryObject(COSName.SHADING)));
+                }
+            }
+            resources.put(dictionary, result);
+            return result;
+        }
+
+        // a form XObject or tiling pattern, null while it is being read (a form that draws itself)
+        private Content form(COSStream stream, Resources parent) throws IOException {
+            Content form = forms.get(stream);
+            if (form != null || !building.add(stream)) {
+                return form;
+            }
+            try {
+                Resources formResources = resources(dictionary(stream, COSName.RESOURCES, null), parent);
+                form = content(stream, formResources);
+            } finally {
+                building.remove(stream);
+            }
+            forms.put(stream, form);
+            return form;
+        }
+
+        /**
+         * 读取内容流. 只用Flate压缩的流读取原始字节, 在检查线程中解压
+         *
+         * @param contents  内容流或内容流数组
+         * @param resources 内容流使用的资源
+         */
+        Content content(COSBase contents, Resources resources) throws IOException {
+            List<COSStream> streams = new ArrayList<>();
+            if (contents instanceof COSStream) {
+                streams.add((COSStream) contents);
+            } else if (contents instanceof COSArray) {
+                for (int i = 0; i < ((COSArray) contents).size(); i++) {
+                    COSBase stream = ((COSArray) contents).getObject(i);
+                    if (stream instanceof COSStream) {
+                        streams.add((COSStream) stream);
+                    }
+                }
+            }
+            byte[][] data = new byte[streams.size()][];
+            boolean[] deflated = new boolean[streams.size()];
+            for (int i = 0; i < streams.size(); i++) {
+                COSStream stream = streams.get(i);
+                COSBase filters = stream.getFilters();
+                if (filters instanceof COSArray && ((COSArray) filters).size() == 1) {
+                    filters = ((COSArray) filters).getObject(0);
+                }
+                boolean raw = filters == null
+                        || (COSName.FLATE_DECODE.equals(filters) && stream.getDictionaryObject(COSName.DECODE_PARMS) == null);
+                try (InputStream input = raw ? stream.createRawInputStream() : stream.createInputStream()) {
+                    data[i] = IOUtils.toByteArray(input);
+                }
+                deflated[i] = filters != null && raw;
+                contentBytes += data[i].length;
+            }
+            return new Content(data, deflated, resources);
+        }
+
+        private Family family(COSBase colorSpace) {
+            if (colorSpace instanceof COSName) {
+                return deviceFamily(((COSName) colorSpace).getName());
+            }
+            if (!(colorSpace instanceof COSArray) || ((COSArray) colorSpace).size() == 0) {
+                return Family.NONE;
+            }
+            Family family = colorSpaces.get(colorSpace);
+            if (family == null) {
+                family = arrayFamily((COSArray) colorSpace);
+                colorSpaces.put(colorSpace, family);
+            }
+            return family;
+        }
+
+        private Family arrayFamily(COSArray colorSpace) {
+            COSBase type = colorSpace.getObject(0);
+            String name = type instanceof COSName ? ((COSName) type).getName() : "";
+            switch (name) {
+                case "ICCBased":
+                    COSBase profile = colorSpace.getObject(1);
+                    int components = profile instanceof COSStream ? ((COSStream) profile).getInt(COSName.N) : 0;
+                    return components == 4 ? Family.CMYK : components == 3 ? Family.RGB : components == 1 ? Family.GRAY : Family.NONE;
+                case "Indexed":
+                case "I":
+                case "Pattern":
+                    return colorSpace.size() > 1 ? family(colorSpace.getObject(1)) : Family.NONE;
+                case "Separation":
+                    COSBase colorant = colorSpace.getObject(1);
+                    return colorant instanceof COSName && PROCESS_COLORANTS.contains(((COSName) colorant).getName())
+                            ? Family.CMYK : Family.SPOT;
+                case "DeviceN":
+                    COSBase colorants = colorSpace.getObject(1);
+                    if (!(colorants instanceof COSArray)) {
+                        return Family.SPOT;
+                    }
+                    for (int i = 0; i < ((COSArray) colorants).size(); i++) {
+                        COSBase colorantName = ((COSArray) colorants).getObject(i);
+                        if (!(colorantName instanceof COSName) || !PROCESS_COLORANTS.contains(((COSName) colorantName).getName())) {
+                            return Family.SPOT;
+                        }
+                    }
+                    return Family.CMYK;
+                default:
+                    return deviceFamily(name);
+            }
+        }
+
+        private Family shadingFamily(COSBase shading) {
+            return shading instanceof COSDictionary
+                    ? family(((COSDictionary) shading).getDictionaryObject(COSName.COLORSPACE)) : Family.NONE;
+        }
+
+        // the font name when the font is not embedded, null when it is
+        private String notEmbedded(COSBase font) {
+            if (!(font instanceof COSDictionary)) {
+                return null;
+            }
+            if (fonts.containsKey(font)) {
+                return fonts.get(font);
+            }
+            COSDictionary fontDictionary = (COSDictionary) font;
+            COSDictionary descriptor = dictionary(fontDictionary, COSName.FONT_DESC, null);
+            COSName subtype = fontDictionary.getCOSName(COSName.SUBTYPE);
+            if (COSName.TYPE0.equals(subtype)) {
+                COSBase descendants = fontDictionary.getDictionaryObject(COSName.DESCENDANT_FONTS);
+                COSBase descendant = descendants instanceof COSArray && ((COSArray) descendants).size() > 0
+                        ? ((COSArray) descendants).getObject(0) : null;
+                descriptor = descendant instanceof COSDictionary
+                        ? dictionary((COSDictionary) descendant, COSName.FONT_DESC, null) : null;
+            }
+            boolean embedded = COSName.TYPE3.equals(subtype) || (descriptor != null
+                    && (descriptor.containsKey(COSName.FONT_FILE) || descriptor.containsKey(COSName.FONT_FILE2)
+                    || descriptor.containsKey(COSName.FONT_FILE3)));
+            String name = embedded ? null : fontDictionary.getNameAsString(COSName.BASE_FONT, "unnamed");
+            fonts.put(font, name);
+            return name;
+        }
+    }
+
+    private static Family deviceFamily(String name) {
+        switch (name) {
+            case "DeviceCMYK":
+            case "CMYK":
+                return Family.CMYK;
+            case "DeviceGray":
+            case "G":
+            case "CalGray":
+                return Family.GRAY;
+            case "DeviceRGB":
+            case "RGB":
+            case "CalRGB":
+            case "Lab":
+                return Family.RGB;
+            default:
+                return Family.NONE;
+        }
+    }
+
+    private static COSDictionary dictionary(COSDictionary dictionary, COSName key) {
+        COSDictionary value = dictionary(dictionary, key, null);
+        return value != null ? value : new COSDictionary();
+    }
+
+    private static COSDictionary dictionary(COSDictionary dictionary, COSName key, COSDictionary defaultValue) {
+        COSBase value = dictionary.getDictionaryObject(key);
+        return value instanceof COSDictionary ? (COSDictionary) value : defaultValue;
+    }
+
+    /**
+     * 一个页面、Form XObject或平铺图案的内容流
+     */
+    private class Content {
+        private final byte[][] data;
+        private final boolean[] deflated;
+        private final Resources resources;
+
+        // issues of a form, page 0, checked once by the first page that draws it
+        private PageIssues formIssues;
+
+        Content(byte[][] data, boolean[] deflated, Resources resources) {
+            this.data = data;
+            this.deflated = deflated;
+            this.resources = resources;
+        }
+
+        synchronized PageIssues formIssues() throws IOException {
+            if (formIssues == null) {
+                PageIssues pageIssues = new PageIssues(0);
+                check(pageIssues);
+                formIssues = pageIssues;
+            }
+            return formIssues;
+        }
+
+        void check(PageIssues pageIssues) throws IOException {
+            PDFStreamParser parser = new PDFStreamParser(bytes());
+            Deque<float[]> stack = new ArrayDeque<>();
+            // line width and the scale of the current transformation matrix
+            float lineWidth = 1;
+            float scale = 1;
+            List<COSBase> operands = new ArrayList<>();
+            Object token;
+            while ((token = parser.parseNextToken()) != null) {
+                if (token instanceof COSBase) {
+                    operands.add((COSBase) token);
+                    continue;
+                }
+                if (!(token instanceof Operator)) {
+                    continue;
+                }
+                Operator operator = (Operator) token;
+                String name = operator.getName();
+                switch (name) {
+                    case "q":
+                        stack.push(new float[]{lineWidth, scale});
+                        break;
+                    case "Q":
+                        if (!stack.isEmpty()) {
+                            float[] state = stack.pop();
+                            lineWidth = state[0];
+                            scale = state[1];
+                        }
+                        break;
+                    case "cm":
+                        if (operands.size() == 6) {
+                            float a = number(operands.get(0));
+                            float b = number(operands.get(1));
+                            float c = number(operands.get(2));
+                            float d = number(operands.get(3));
+                            scale *= (float) Math.sqrt(Math.abs(a * d - b * c));
+                        }
+                        break;
+                    case "w":
+                        if (operands.size() == 1) {
+                            lineWidth = number(operands.get(0));
+                        }
+                        break;
+                    case "gs":
+                        Float extGStateWidth = resources.lineWidths.get(lastName(operands));
+                        if (extGStateWidth != null) {
+                            lineWidth = extGStateWidth;
+                        }
+                        break;
+                    case "S":
+                    case "s":
+                    case "B":
+                    case "B*":
+                    case "b":
+                    case "b*":
+                        if (lineWidth * scale < minLineWidth) {
+                            pageIssues.add(PreflightReport.IssueType.HAIRLINE,
+                                    String.format(Locale.ROOT, "%.3fpt", lineWidth * scale), 1);
+                        }
+                        break;
+                    case "rg":
+                    case "RG":
+                        color(pageIssues, Family.RGB, name, false);
+                        break;
+                    case "g":
+                    case "G":
+                        color(pageIssues, Family.GRAY, name, false);
+                        break;
+                    case "cs":
+                    case "CS":
+                        String colorSpace = lastName(operands);
+                        if (colorSpace != null) {
+                            Family family = deviceFamily(colorSpace);
+                            if (family == Family.NONE) {
+                                family = resources.colorSpaces.getOrDefault(colorSpace, Family.NONE);
+                            }
+                            color(pageIssues, family, name + " /" + colorSpace, false);
+                        }
+                        break;
+                    case "sh":
+                        String shading = lastName(operands);
+                        color(pageIssues, resources.shadings.getOrDefault(shading, Family.NONE), "sh /" + shading, false);
+                        break;
+                    case "scn":
+                    case "SCN":
+                        String patternName = lastName(operands);
+                        Object pattern = patternName != null ? resources.patterns.get(patternName) : null;
+                        if (pattern instanceof Content) {
+                            merge(pageIssues, ((Content) pattern).formIssues(), patternName);
+                        } else if (pattern instanceof Family) {
+                            color(pageIssues, (Family) pattern, name + " /" + patternName, false);
+                        }
+                        break;
+                    case "Do":
+                        String xObject = lastName(operands);
+                        Content form = resources.forms.get(xObject);
+                        if (form != null) {
+                            merge(pageIssues, form.formIssues(), xObject);
+                        } else if (resources.images.containsKey(xObject)) {
+                            color(pageIssues, resources.images.get(xObject), "Do /" + xObject, true);
+                        }
+                        break;
+                    case "BI":
+                        inlineImage(pageIssues, operator.getImageParameters());
+                        break;
+                    case "Tf":
+                        String font = operands.size() == 2 ? lastName(operands.subList(0, 1)) : null;
+                        if (font != null && resources.fonts.containsKey(font)) {
+                            pageIssues.add(PreflightReport.IssueType.FONT_NOT_EMBEDDED, resources.fonts.get(font), 1);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                operands.clear();
+            }
+        }
+
+        private void inlineImage(PageIssues pageIssues, COSDictionary parameters) {
+            if (parameters == null || parameters.getBoolean(COSName.IM, false) || parameters.getBoolean(COSName.IMAGE_MASK, false)) {
+                return;
+            }
+            COSBase colorSpace = parameters.getDictionaryObject(COSName.CS, COSName.COLORSPACE);
+            Family family = Family.NONE;
+            if (colorSpace instanceof COSName) {
+                String name = ((COSName) colorSpace).getName();
+                family = deviceFamily(name);
+                if (family == Family.NONE) {
+                    family = resources.colorSpaces.getOrDefault(name, Family.NONE);
+                }
+            } else if (colorSpace instanceof COSArray && ((COSArray) colorSpace).size() > 1) {
+                // an inline indexed color space: [/I base hival lookup]
+                COSBase base = ((COSArray) colorSpace).getObject(1);
+                if (base instanceof COSName) {
+                    String name = ((COSName) base).getName();
+                    family = deviceFamily(name);
+                    if (family == Family.NONE) {
+                        family = resources.colorSpaces.getOrDefault(name, Family.NONE);
+                    }
+                }
+            }
+            color(pageIssues, family, "BI", true);
+        }
+
+        private void color(PageIssues pageIssues, Family family, String detail, boolean image) {
+            if (family == Family.RGB) {
+                pageIssues.add(image ? PreflightReport.IssueType.RGB_IMAGE : PreflightReport.IssueType.RGB_COLOR, detail, 1);
+            } else if (family == Family.GRAY && !allowGray) {
+                pageIssues.add(PreflightReport.IssueType.GRAY_COLOR, detail, 1);
+            } else if (family == Family.SPOT) {
+                pageIssues.add(PreflightReport.IssueType.SPOT_COLOR, detail, 1);
+            }
+        }
+
+        private void merge(PageIssues pageIssues, PageIssues form, String name) {
+            for (PreflightReport.Issue issue : form.issues.values()) {
+                pageIssues.add(issue.getType(), name + ": " + issue.getDetail(), issue.getCount());
+            }
+        }
+
+        // content streams of a page are parsed as one, an operator may continue in the next stream
+        private byte[] bytes() {
+            if (data.length == 1 && !deflated[0]) {
+                return data[0];
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            for (int i = 0; i < data.length; i++) {
+                if (deflated[i]) {
+                    inflate(data[i], output);
+                } else {
+                    output.write(data[i], 0, data[i].length);
+                }
+                output.write('\n');
+            }
+            return output.toByteArray();
+        }
+    }
+
+    // keeps what could be decoded of a damaged stream, as FlateFilter does
+    private static void inflate(byte[] data, ByteArrayOutputStream output) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] buffer = new byte[16 * 1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                output.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            // truncated or corrupt data
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String lastName(List<COSBase> operands) {
+        COSBase last = operands.isEmpty() ? null : operands.get(operands.size() - 1);
+        return last instanceof COSName ? ((COSName) last).getName() : null;
+    }
+
+    private static float number(COSBase operand) {
+        return operand instanceof COSNumber ? ((COSNumber) operand).floatValue() : 0;
+    }
+}
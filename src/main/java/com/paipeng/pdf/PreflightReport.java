@@ -0,0 +1,215 @@
+package com.paipeng.pdf;
+
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 印前检查结果
+ *
+ * 问题按页码排序, 同一页相同类型和内容的问题合并为一条并记录出现次数. writeJson输出机器可读的报告:
+ *
+ * <pre>
+ * {"file":"out.pdf","pages":2,"passed":false,"elapsedMillis":35,
+ *  "summary":{"RGB_COLOR":1},
+ *  "issues":[{"page":1,"type":"RGB_COLOR","detail":"rg","count":3}]}
+ * </pre>
+ */
+public class PreflightReport {
+    public enum IssueType {
+        /**
+         * 使用RGB颜色(rg/RG, 或RGB、ICC RGB、Lab颜色空间)
+         */
+        RGB_COLOR,
+        /**
+         * 使用灰度颜色, 只在Preflight.setAllowGray(false)时检查
+         */
+        GRAY_COLOR,
+        /**
+         * 使用专色(Separation或DeviceN中CMYK以外的色版)
+         */
+        SPOT_COLOR,
+        /**
+         * RGB图片, 包括内嵌图片
+         */
+        RGB_IMAGE,
+        /**
+         * 描边线宽小于最小线宽
+         */
+        HAIRLINE,
+        /**
+         * 字体没有嵌入
+         */
+        FONT_NOT_EMBEDDED
+    }
+
+    /**
+     * 一页中的一类问题
+     */
+    public static class Issue {
+        private final int page;
+        private final IssueType type;
+        private final String detail;
+        private int count;
+
+        Issue(int page, IssueType type, String detail, int count) {
+            this.page = page;
+            this.type = type;
+            this.detail = detail;
+            this.count = count;
+        }
+
+        /**
+         * 页码, 从1开始
+         */
+        public int getPage() {
+            return page;
+        }
+
+        public IssueType getType() {
+            return type;
+        }
+
+        /**
+         * 问题内容, 例如操作符、资源名或字体名
+         */
+        public String getDetail() {
+            return detail;
+        }
+
+        /**
+         * 在这一页出现的次数
+         */
+        public int getCount() {
+            return count;
+        }
+
+        void add(int count) {
+            this.count += count;
+        }
+
+        @Override
+        public String toString() {
+            return "page " + page + ": " + type + " " + detail + " (" + count + ")";
+        }
+    }
+
+    private final String file;
+    private final int pageCount;
+    private final List<Issue> issues;
+    private final long elapsedMillis;
+
+    PreflightReport(String file, int pageCount, List<Issue> issues, long elapsedMillis) {
+        this.file = file;
+        this.pageCount = pageCount;
+        this.issues = Collections.unmodifiableList(issues);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * 检查的文件, 检查PDDocument时为空
+     */
+    public String getFile() {
+        return file;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public List<Issue> getIssues() {
+        return issues;
+    }
+
+    /**
+     * 没有任何问题
+     */
+    public boolean isPassed() {
+        return issues.isEmpty();
+    }
+
+    /**
+     * 每类问题的出现次数
+     */
+    public Map<IssueType, Integer> getSummary() {
+        Map<IssueType, Integer> summary = new EnumMap<>(IssueType.class);
+        for (Issue issue : issues) {
+            summary.merge(issue.type, issue.count, Integer::sum);
+        }
+        return summary;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 输出JSON格式的报告
+     *
+     * @param writer 输出, 不关闭
+     */
+    public void writeJson(Writer writer) throws IOException {
+        writer.write("{\"file\":");
+        writeString(writer, file);
+        writer.write(",\"pages\":" + pageCount + ",\"passed\":" + isPassed() + ",\"elapsedMillis\":" + elapsedMillis);
+        writer.write(",\"summary\":{");
+        boolean first = true;
+        for (Map.Entry<IssueType, Integer> entry : getSummary().entrySet()) {
+            writer.write(first ? "\"" : ",\"");
+            writer.write(entry.getKey().name() + "\":" + entry.getValue());
+            first = false;
+        }
+        writer.write("},\"issues\":[");
+        first = true;
+        for (Issue issue : issues) {
+            writer.write(first ? "{\"page\":" : ",\n{\"page\":");
+            writer.write(issue.page + ",\"type\":\"" + issue.type.name() + "\",\"detail\":");
+            writeString(writer, issue.detail);
+            writer.write(",\"count\":" + issue.count + "}");
+            first = false;
+        }
+        writer.write("]}\n");
+    }
+
+    public String toJson() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeJson(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    @Override
+    public String toString() {
+        return "PreflightReport{file=" + file + ", pages=" + pageCount + ", issues=" + getSummary()
+                + ", elapsedMillis=" + elapsedMillis + "}";
+    }
+}
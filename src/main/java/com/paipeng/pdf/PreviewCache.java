@@ -0,0 +1,503 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 页面预览缓存
+ *
+ * 预览图按页面内容哈希(页面字典、内容流、资源、页面框和旋转)加分辨率、颜色类型和格式作为键,
+ * 编码后的图片保存在本地目录中, 目录总大小超过上限时删除最久未使用的文件; 最近使用的图片同时保存在内存中.
+ * 文档修改后内容没有变化的页面仍然命中缓存. 多个线程同时请求同一个预览时只渲染一次.
+ * 同一文件(路径、大小和修改时间相同)再次请求时不重新加载PDF.
+ *
+ * <pre>
+ * PreviewCache cache = PreviewCache.getInstance();
+ * cache.setDirectory(new File("/var/cache/proof"));
+ * byte[] jpeg = cache.getPreview(new File("/data/proof.pdf"), 0, 96);
+ * </pre>
+ */
+public class PreviewCache {
+    private static final PreviewCache INSTANCE = new PreviewCache();
+
+    private static final int MAX_FILE_KEYS = 10000;
+
+    private File directory = new File(System.getProperty("java.io.tmpdir"), "pdf-preview");
+    private long maxDiskBytes = 1L << 30;
+    private long maxMemoryBytes = 64L << 20;
+    private volatile ImageType imageType = ImageType.RGB;
+    private volatile PageRasterizer.Format format = PageRasterizer.Format.JPEG;
+    private MemoryUsageSetting memoryUsageSetting;
+
+    // hot tier and disk index, both in least recently used order
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private LinkedHashMap<String, Long> disk;
+    private long diskBytes;
+
+    // file, page and dpi -> content key, so an unchanged file is not loaded again
+    private final Map<FileKey, String> fileKeys = new LinkedHashMap<FileKey, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileKey, String> eldest) {
+            return size() > MAX_FILE_KEYS;
+        }
+    };
+
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>();
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+
+    public static PreviewCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取PDF文件一页的预览图
+     *
+     * @param pdfFile   PDF文件
+     * @param pageIndex 页码, 从0开始
+     * @param dpi       分辨率
+     * @return 编码后的图片
+     */
+    public byte[] getPreview(File pdfFile, int pageIndex, float dpi) throws IOException {
+        FileKey fileKey = new FileKey(pdfFile.getCanonicalPath(), pdfFile.length(), pdfFile.lastModified(), pageIndex, dpi);
+        String key;
+        synchronized (fileKeys) {
+            key = fileKeys.get(fileKey);
+        }
+        if (key != null) {
+            byte[] preview = lookup(key);
+            if (preview != null) {
+                return preview;
+            }
+        }
+
+        MemoryUsageSetting setting = memoryUsageSetting;
+        try (PDDocument pdDocument = PDDocument.load(pdfFile,
+                setting != null ? setting : MemorySettings.getInstance().getMemoryUsageSetting())) {
+            key = key(pdDocument.getPage(pageIndex), dpi);
+            synchronized (fileKeys) {
+                fileKeys.put(fileKey, key);
+            }
+            return getPreview(pdDocument, pageIndex, dpi, key);
+        }
+    }
+
+    /**
+     * 获取文档一页的预览图. 文档不能同时在其他线程中使用
+     *
+     * @param pdDocument 文档
+     * @param pageIndex  页码, 从0开始
+     * @param dpi        分辨率
+     * @return 编码后的图片
+     */
+    public byte[] getPreview(PDDocument pdDocument, int pageIndex, float dpi) throws IOException {
+        return getPreview(pdDocument, pageIndex, dpi, key(pdDocument.getPage(pageIndex), dpi));
+    }
+
+    private byte[] getPreview(PDDocument pdDocument, int pageIndex, float dpi, String key) throws IOException {
+        byte[] preview = lookup(key);
+        if (preview != null) {
+            return preview;
+        }
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = rendering.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return waitFor(running);
+        }
+        try {
+            // another thread may have stored it between the lookup and putIfAbsent
+            preview = lookup(key);
+            if (preview == null) {
+                preview = render(pdDocument, pageIndex, dpi);
+                store(key, preview);
+            }
+            future.complete(preview);
+            return preview;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.remove(key);
+        }
+    }
+
+    private byte[] render(PDDocument pdDocument, int pageIndex, float dpi) throws IOException {
+        renders.incrementAndGet();
+        long start = System.nanoTime();
+        BufferedImage image = new PDFRenderer(pdDocument).renderImageWithDPI(pageIndex, dpi, imageType);
+        Metrics.getInstance().record(Instrumentation.Stage.RENDER_PAGE, start, 0,
+                (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format.name(), output)) {
+            throw new IOException("no " + format + " writer for image type " + imageType);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * 页面内容的键, 页面对象或资源变化时改变
+     */
+    private String key(PDPage pdPage, float dpi) throws IOException {
+        CosHasher hasher = new CosHasher();
+        MessageDigest messageDigest = sha256();
+        messageDigest.update(hasher.digest(pdPage.getCOSObject()).toHex().getBytes(StandardCharsets.US_ASCII));
+        // inherited from the page tree, not part of the page dictionary
+        PDResources pdResources = pdPage.getResources();
+        if (pdResources != null) {
+            messageDigest.update(hasher.digest(pdResources.getCOSObject()).toHex().getBytes(StandardCharsets.US_ASCII));
+        }
+        String settings = pdPage.getMediaBox() + " " + pdPage.getCropBox() + " " + pdPage.getRotation()
+                + " " + dpi + " " + imageType + " " + format;
+        messageDigest.update(settings.getBytes(StandardCharsets.US_ASCII));
+        return new CosHasher.Digest(messageDigest.digest()).toHex();
+    }
+
+    private byte[] lookup(String key) {
+        File file;
+        synchronized (this) {
+            byte[] preview = memory.get(key);
+            if (preview != null) {
+                memoryHits.incrementAndGet();
+                return preview;
+            }
+            if (disk().get(key) == null) {
+                return null;
+            }
+            file = file(key);
+        }
+
+        byte[] preview;
+        try {
+            preview = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            // evicted, or removed from the directory by someone else
+            synchronized (this) {
+                removeFromDisk(key);
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+        // the file time keeps the order across restarts
+        file.setLastModified(System.currentTimeMillis());
+        diskHits.incrementAndGet();
+        synchronized (this) {
+            putInMemory(key, preview);
+        }
+        return preview;
+    }
+
+    private void store(String key, byte[] preview) throws IOException {
+        File file;
+        synchronized (this) {
+            putInMemory(key, preview);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("cannot create preview directory " + directory);
+            }
+            file = file(key);
+        }
+
+        // written under a temporary name, a reader never sees a partial file
+        File temp = File.createTempFile("preview-", ".tmp", file.getParentFile());
+        try {
+            Files.write(temp.toPath(), preview);
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+
+        synchronized (this) {
+            LinkedHashMap<String, Long> index = disk();
+            Long previous = index.put(key, (long) preview.length);
+            diskBytes += preview.length - (previous != null ? previous : 0);
+            Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+            while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                if (entry.getKey().equals(key)) {
+                    continue;
+                }
+                file(entry.getKey()).delete();
+                diskBytes -= entry.getValue();
+                eldest.remove();
+            }
+        }
+    }
+
+    private void putInMemory(String key, byte[] preview) {
+        if (preview.length > maxMemoryBytes) {
+            return;
+        }
+        byte[] previous = memory.put(key, preview);
+        memoryBytes += preview.length - (previous != null ? previous.length : 0);
+        trimMemory();
+    }
+
+    private void trimMemory() {
+        Iterator<byte[]> eldest = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private void removeFromDisk(String key) {
+        Long size = disk().remove(key);
+        if (size != null) {
+            diskBytes -= size;
+        }
+    }
+
+    /**
+     * 磁盘索引, 第一次使用时按修改时间读取目录中已有的文件
+     */
+    private LinkedHashMap<String, Long> disk() {
+        if (disk == null) {
+            disk = new LinkedHashMap<>(16, 0.75f, true);
+            diskBytes = 0;
+            String suffix = "." + extension();
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+            if (files != null) {
+                Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+                for (File file : files) {
+                    String name = file.getName();
+                    disk.put(name.substring(0, name.length() - suffix.length()), file.length());
+                    diskBytes += file.length();
+                }
+            }
+        }
+        return disk;
+    }
+
+    private File file(String key) {
+        return new File(directory, key + "." + extension());
+    }
+
+    private String extension() {
+        return format.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] waitFor(CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a preview");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 清空内存中的预览, 磁盘上的文件保留
+     */
+    public synchronized void clearMemory() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * 清空内存和目录中的预览
+     */
+    public synchronized void clear() {
+        clearMemory();
+        LinkedHashMap<String, Long> index = disk();
+        for (String key : index.keySet()) {
+            file(key).delete();
+        }
+        index.clear();
+        diskBytes = 0;
+        clearFileKeys();
+    }
+
+    public synchronized File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 预览图目录, 默认为系统临时目录下的pdf-preview. 目录中已有的预览在第一次使用时读入索引
+     */
+    public synchronized void setDirectory(File directory) {
+        this.directory = directory;
+        this.disk = null;
+        clearFileKeys();
+    }
+
+    public synchronized long getMaxDiskBytes() {
+        return maxDiskBytes;
+    }
+
+    /**
+     * 目录中预览图的总大小上限, 默认1GB
+     */
+    public synchronized void setMaxDiskBytes(long maxDiskBytes) {
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    public synchronized long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    /**
+     * 内存中预览图的总大小上限, 默认64MB
+     */
+    public synchronized void setMaxMemoryBytes(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        trimMemory();
+    }
+
+    public synchronized ImageType getImageType() {
+        return imageType;
+    }
+
+    /**
+     * 颜色类型, 默认RGB. 不同颜色类型的预览分别缓存
+     */
+    public synchronized void setImageType(ImageType imageType) {
+        this.imageType = imageType;
+        clearFileKeys();
+    }
+
+    public synchronized PageRasterizer.Format getFormat() {
+        return format;
+    }
+
+    /**
+     * 图片格式, 默认JPEG
+     */
+    public synchronized void setFormat(PageRasterizer.Format format) {
+        this.format = format;
+        this.disk = null;
+        clearFileKeys();
+    }
+
+    // the remembered keys were computed with the previous settings
+    private void clearFileKeys() {
+        synchronized (fileKeys) {
+            fileKeys.clear();
+        }
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    /**
+     * 从文件生成预览时加载PDF使用的内存设置, 为空时使用MemorySettings
+     */
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * 等待其他线程正在进行的同一渲染的次数
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getRenders() {
+        return renders.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PreviewCache{memoryEntries=" + memory.size() + ", memoryBytes=" + memoryBytes
+                + ", diskEntries=" + disk().size() + ", diskBytes=" + diskBytes + ", memoryHits=" + memoryHits
+                + ", diskHits=" + diskHits + ", coalesced=" + coalesced + ", renders=" + renders + "}";
+    }
+
+    private static class FileKey {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final int pageIndex;
+        private final float dpi;
+
+        FileKey(String path, long length, long lastModified, int pageIndex, float dpi) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.pageIndex = pageIndex;
+            this.dpi = dpi;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileKey)) {
+                return false;
+            }
+            FileKey other = (FileKey) o;
+            return path.equals(other.path) && length == other.length && lastModified == other.lastModified
+                    && pageIndex == other.pageIndex && dpi == other.dpi;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((path.hashCode() * 31 + Long.hashCode(length)) * 17 + Long.hashCode(lastModified)) * 31
+                    + pageIndex * 7 + Float.hashCode(dpi);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 印刷任务调度器
+ *
+ * 任务按优先级排队, 同一优先级先进先出; 同时执行的任务数和内存预算总和有上限, 队列满时拒绝新任务.
+ * 每个任务有自己的内存预算, 超过预算的部分写入临时文件.
+ *
+ * <pre>
+ * PrintJobScheduler scheduler = new PrintJobScheduler(2, 100);
+ * scheduler.setMaxMemory(512L * 1024 * 1024);
+ * CompletableFuture&lt;List&lt;File&gt;&gt; result = scheduler.submit("order-1001", PrintJobScheduler.Priority.URGENT,
+ *         64L * 1024 * 1024, context -&gt; {
+ *             SerialPrintJob job = new SerialPrintJob(outputDirectory, context.getJobId());
+ *             job.setMemoryUsageSetting(context.getMemoryUsageSetting());
+ *             return job.run(csvFile);
+ *         });
+ * </pre>
+ */
+public class PrintJobScheduler implements AutoCloseable {
+    public enum Priority {
+        URGENT, NORMAL, BULK
+    }
+
+    /**
+     * 调度器执行的任务
+     */
+    public interface Job<T> {
+        T run(JobContext context) throws Exception;
+    }
+
+    private enum State {
+        QUEUED, RUNNING, DONE
+    }
+
+    private final int maxInFlight;
+    private final int queueCapacity;
+
+    private long maxMemory;
+    private File tempDirectory;
+
+    private final PriorityQueue<Entry<?>> queue = new PriorityQueue<>(
+            Comparator.<Entry<?>, Priority>comparing(entry -> entry.context.getPriority()).thenComparingLong(entry -> entry.sequence));
+    private final List<Thread> workers = new ArrayList<>();
+    private final List<Entry<?>> running = new ArrayList<>();
+    private long sequence;
+    private int inFlight;
+    private long memoryInUse;
+    private boolean shutdown;
+
+    private final Map<Priority, AtomicLong> submitted = new EnumMap<>(Priority.class);
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private int maxQueueDepth;
+
+    /**
+     * @param maxInFlight   同时执行的最大任务数
+     * @param queueCapacity 排队任务的最大数量, 超过时拒绝
+     */
+    public PrintJobScheduler(int maxInFlight, int queueCapacity) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+        this.queueCapacity = queueCapacity;
+        for (Priority priority : Priority.values()) {
+            submitted.put(priority, new AtomicLong());
+        }
+        for (int i = 0; i < maxInFlight; i++) {
+            Thread worker = new Thread(this::work, "pdf-job-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param jobId        任务ID, 同时设置为Metrics的任务ID
+     * @param priority     优先级
+     * @param memoryBudget 堆内存预算(字节), 0为只使用堆内存且不计入总预算
+     * @param job          任务
+     * @return 任务结果; 队列已满或预算超过总预算时以RejectedExecutionException结束; 调用cancel可以取消任务
+     */
+    public <T> CompletableFuture<T> submit(String jobId, Priority priority, long memoryBudget, Job<T> job) {
+        MemoryUsageSetting memoryUsageSetting = memoryBudget > 0
+                ? MemoryUsageSetting.setupMixed(memoryBudget) : MemoryUsageSetting.setupMainMemoryOnly();
+        if (tempDirectory != null) {
+            memoryUsageSetting.setTempDir(tempDirectory);
+        }
+        Entry<T> entry = new Entry<>(new JobContext(jobId, priority, Math.max(0, memoryBudget), memoryUsageSetting), job);
+
+        synchronized (this) {
+            String reason = null;
+            if (shutdown) {
+                reason = "scheduler is shut down";
+            } else if (queue.size() >= queueCapacity) {
+                reason = "queue is full (" + queueCapacity + " jobs)";
+            } else if (maxMemory > 0 && memoryBudget > maxMemory) {
+                reason = "memory budget " + memoryBudget + " exceeds the limit " + maxMemory;
+            }
+            if (reason != null) {
+                rejected.incrementAndGet();
+                entry.future.completeExceptionally(new RejectedExecutionException("job " + jobId + " rejected: " + reason));
+                return entry.future;
+            }
+            entry.sequence = sequence++;
+            queue.add(entry);
+            maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            submitted.get(priority).incrementAndGet();
+            notifyAll();
+        }
+
+        entry.future.whenComplete((result, e) -> {
+            if (entry.future.isCancelled()) {
+                cancel(entry);
+            }
+        });
+        return entry.future;
+    }
+
+    /**
+     * 取消任务; 只有把任务从QUEUED改为DONE的一方计入cancelled, 已开始的任务由执行线程计数
+     *
+     * @return 任务是否在开始前被取消
+     */
+    private boolean cancel(Entry<?> entry) {
+        // the context first, so a job that starts now already sees the cancellation
+        entry.context.cancel();
+        if (entry.state.compareAndSet(State.QUEUED, State.DONE)) {
+            cancelled.incrementAndGet();
+            synchronized (this) {
+                queue.remove(entry);
+            }
+            entry.future.cancel(false);
+            return true;
+        }
+        synchronized (this) {
+            if (entry.thread != null) {
+                entry.thread.interrupt();
+            }
+        }
+        return false;
+    }
+
+    private void work() {
+        while (true) {
+            Entry<?> entry;
+            synchronized (this) {
+                // the head of the queue waits for memory, so a big job is not starved by smaller ones behind it
+                while (queue.isEmpty() || !fits(queue.peek())) {
+                    if (queue.isEmpty() && shutdown) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // a cancellation that arrived after the previous job finished
+                    }
+                }
+                entry = queue.poll();
+                inFlight++;
+                memoryInUse += entry.context.getMemoryBudget();
+                entry.thread = Thread.currentThread();
+                running.add(entry);
+            }
+
+            try {
+                entry.run();
+            } finally {
+                synchronized (this) {
+                    entry.thread = null;
+                    running.remove(entry);
+                    inFlight--;
+                    memoryInUse -= entry.context.getMemoryBudget();
+                    notifyAll();
+                }
+                // clear an interrupt from a cancellation that arrived after the job finished
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private boolean fits(Entry<?> entry) {
+        return maxMemory <= 0 || memoryInUse == 0 || memoryInUse + entry.context.getMemoryBudget() <= maxMemory;
+    }
+
+    /**
+     * 不再接受新任务, 已排队的任务继续执行
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
+    }
+
+    /**
+     * 不再接受新任务, 取消排队的任务并中断正在执行的任务
+     *
+     * @return 被取消的排队任务数
+     */
+    public int shutdownNow() {
+        List<Entry<?>> pending;
+        List<Entry<?>> active;
+        synchronized (this) {
+            shutdown = true;
+            pending = new ArrayList<>(queue);
+            queue.clear();
+            active = new ArrayList<>(running);
+            notifyAll();
+        }
+        int count = 0;
+        for (Entry<?> entry : pending) {
+            if (cancel(entry)) {
+                count++;
+            }
+        }
+        // running jobs are interrupted through the cancellation of their futures
+        for (Entry<?> entry : active) {
+            entry.context.cancel();
+            entry.future.cancel(false);
+        }
+        return count;
+    }
+
+    /**
+     * 等待所有任务结束
+     *
+     * @return 是否在超时前结束
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedJoin(worker, remaining);
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 等待已排队的任务执行完后关闭. 等待时线程被中断则不再等待并保留中断状态, 已排队的任务继续执行
+     */
+    @Override
+    public void close() {
+        shutdown();
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public synchronized long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * 设置同时执行的任务的内存预算总和上限, 0为不限. 预算超过上限的任务会被拒绝
+     */
+    public synchronized void setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+        notifyAll();
+    }
+
+    public synchronized File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * 设置超过内存预算后临时文件的目录, 默认为系统临时目录
+     */
+    public synchronized void setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 某个优先级的排队任务数
+     */
+    public synchronized int getQueueDepth(Priority priority) {
+        int depth = 0;
+        for (Entry<?> entry : queue) {
+            if (entry.context.getPriority() == priority) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getMemoryInUse() {
+        return memoryInUse;
+    }
+
+    public long getSubmitted(Priority priority) {
+        return submitted.get(priority).get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getCancelled() {
+        return cancelled.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PrintJobScheduler{queueDepth=" + queue.size() + ", maxQueueDepth=" + maxQueueDepth
+                + ", inFlight=" + inFlight + ", memoryInUse=" + memoryInUse + ", rejected=" + rejected
+                + ", completed=" + completed + ", failed=" + failed + ", cancelled=" + cancelled + "}";
+    }
+
+    private class Entry<T> {
+        private final JobContext context;
+        private final Job<T> job;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        // every entry ends in exactly one of completed, failed and cancelled
+        private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+        private long sequence;
+        private Thread thread;
+
+        Entry(JobContext context, Job<T> job) {
+            this.context = context;
+            this.job = job;
+        }
+
+        void run() {
+            if (!state.compareAndSet(State.QUEUED, State.RUNNING)) {
+                // cancelled after it was taken from the queue, already counted
+                return;
+            }
+            String previousJobId = Metrics.getInstance().getJobId();
+            Metrics.getInstance().setJobId(context.getJobId());
+            try {
+                T result = job.run(context);
+                if (future.complete(result)) {
+                    completed.incrementAndGet();
+                } else {
+                    // the future was cancelled while the job ran
+                    cancelled.incrementAndGet();
+                }
+            } catch (Throwable e) {
+                if (!context.isCancelled() && future.completeExceptionally(e)) {
+                    failed.incrementAndGet();
+                } else {
+                    future.cancel(false);
+                    cancelled.incrementAndGet();
+                }
+            } finally {
+                state.set(State.DONE);
+                if (previousJobId != null) {
+                    Metrics.getInstance().setJobId(previousJobId);
+                } else {
+                    Metrics.getInstance().clearJobId();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 渲染线程池, 也用于并行提取文字
+ *
+ * PDDocument和PDFRenderer不是线程安全的, 每个线程第一次渲染时打开自己的文档, 线程池关闭时一起关闭.
+ * 任务按顺序提交, 结果按顺序交给调用线程, 同时进行的任务不超过线程数的两倍.
+ */
+class RenderPool implements AutoCloseable {
+    interface Task<T> {
+        T run(int index) throws IOException;
+    }
+
+    interface Consumer<T> {
+        void accept(T result) throws IOException;
+    }
+
+    private final File pdfFile;
+    private final MemoryUsageSetting memoryUsageSetting;
+    private final int threads;
+    private final int pageCount;
+    private final ExecutorService executor;
+
+    private final ThreadLocal<Context> contexts = new ThreadLocal<>();
+    private final List<Context> opened = Collections.synchronizedList(new ArrayList<>());
+
+    RenderPool(File pdfFile, MemoryUsageSetting memoryUsageSetting, int threads, String threadName) throws IOException {
+        this.pdfFile = pdfFile;
+        this.memoryUsageSetting = memoryUsageSetting;
+        this.threads = threads;
+        // the calling thread keeps its document, it is used for page geometry
+        this.pageCount = getDocument().getNumberOfPages();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, threadName + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * 结束页码, -1或超出范围时为最后一页
+     */
+    int lastPage(int endPage) {
+        return endPage < 0 ? pageCount - 1 : Math.min(endPage, pageCount - 1);
+    }
+
+    /**
+     * 当前线程的文档
+     */
+    PDDocument getDocument() throws IOException {
+        return context().pdDocument;
+    }
+
+    /**
+     * 当前线程的渲染器
+     */
+    PDFRenderer getRenderer() throws IOException {
+        return context().renderer;
+    }
+
+    private Context context() throws IOException {
+        Context context = contexts.get();
+        if (context == null) {
+            PDDocument pdDocument = PDDocument.load(pdfFile, memoryUsageSetting);
+            context = new Context(pdDocument, new PDFRenderer(pdDocument));
+            opened.add(context);
+            contexts.set(context);
+        }
+        return context;
+    }
+
+    <T> Future<T> submit(int index, Task<T> task) {
+        return executor.submit(Metrics.getInstance().withJobId((Callable<T>) () -> task.run(index)));
+    }
+
+    /**
+     * 并行执行first到last(包含)的任务, 按顺序把结果交给consumer
+     */
+    <T> void run(int first, int last, Task<T> task, Consumer<T> consumer) throws IOException {
+        Deque<Future<T>> pending = new ArrayDeque<>();
+        int window = threads * 2;
+        int next = Math.max(0, first);
+        try {
+            while (next <= last || !pending.isEmpty()) {
+                while (next <= last && pending.size() < window) {
+                    pending.add(submit(next++, task));
+                }
+                consumer.accept(waitFor(pending.poll()));
+            }
+        } finally {
+            for (Future<T> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (opened) {
+            for (Context context : opened) {
+                context.pdDocument.close();
+            }
+            opened.clear();
+        }
+    }
+
+    static <T> T waitFor(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while rendering");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static class Context {
+        private final PDDocument pdDocument;
+        private final PDFRenderer renderer;
+
+        Context(PDDocument pdDocument, PDFRenderer renderer) {
+            this.pdDocument = pdDocument;
+            this.renderer = renderer;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 页面资源去重
+ *
+ * 按内容哈希找出字体、图片、Form XObject等相同的资源, 让所有页面引用同一个对象, 保存时只写一份.
+ * 一个实例可以处理多个文档的页面, 例如合并前的多个分段文档.
+ */
+public class ResourceDeduplicator {
+    private static final COSName[] CATEGORIES = {
+            COSName.XOBJECT, COSName.FONT, COSName.EXT_G_STATE, COSName.COLORSPACE, COSName.PATTERN, COSName.SHADING
+    };
+    private static final COSName[] APPEARANCES = {COSName.N, COSName.R, COSName.D};
+
+    private final CosHasher hasher = new CosHasher();
+    private final Map<CosHasher.Digest, COSBase> canonical = new HashMap<>();
+    private final Map<COSBase, Boolean> visited = new IdentityHashMap<>();
+
+    private long uniqueResources;
+    private long duplicateResources;
+
+    /**
+     * 对页面的资源和注释外观去重
+     *
+     * @param pdPage 页面
+     */
+    public void deduplicate(PDPage pdPage) throws IOException {
+        PDResources resources = pdPage.getResources();
+        if (resources != null) {
+            deduplicateResources(resources.getCOSObject());
+        }
+
+        COSBase annots = pdPage.getCOSObject().getDictionaryObject(COSName.ANNOTS);
+        if (annots instanceof COSArray) {
+            for (COSBase annot : (COSArray) annots) {
+                COSBase annotation = CosHasher.dereference(annot);
+                if (annotation instanceof COSDictionary) {
+                    COSBase appearance = ((COSDictionary) annotation).getDictionaryObject(COSName.AP);
+                    if (appearance instanceof COSDictionary) {
+                        deduplicateAppearance((COSDictionary) appearance);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 对多个页面去重
+     *
+     * @param pages 页面
+     */
+    public void deduplicate(Iterable<PDPage> pages) throws IOException {
+        for (PDPage pdPage : pages) {
+            deduplicate(pdPage);
+        }
+    }
+
+    private void deduplicateResources(COSDictionary resources) throws IOException {
+        if (visited.put(resources, Boolean.TRUE) != null) {
+            return;
+        }
+
+        for (COSName category : CATEGORIES) {
+            COSBase value = resources.getDictionaryObject(category);
+            if (!(value instanceof COSDictionary)) {
+                continue;
+            }
+            COSDictionary dictionary = (COSDictionary) value;
+            for (COSName name : new ArrayList<>(dictionary.keySet())) {
+                COSBase item = dictionary.getItem(name);
+                COSBase object = CosHasher.dereference(item);
+
+                // nested forms and patterns carry their own resources
+                if (object instanceof COSStream) {
+                    COSBase nested = ((COSStream) object).getDictionaryObject(COSName.RESOURCES);
+                    if (nested instanceof COSDictionary) {
+                        deduplicateResources((COSDictionary) nested);
+                    }
+                }
+
+                COSBase replacement = canonicalize(item);
+                if (replacement != item) {
+                    dictionary.setItem(name, replacement);
+                }
+            }
+        }
+    }
+
+    private void deduplicateAppearance(COSDictionary appearance) throws IOException {
+        for (COSName key : APPEARANCES) {
+            COSBase item = appearance.getItem(key);
+            COSBase object = CosHasher.dereference(item);
+            if (object instanceof COSStream) {
+                COSBase replacement = canonicalize(item);
+                if (replacement != item) {
+                    appearance.setItem(key, replacement);
+                }
+            } else if (object instanceof COSDictionary) {
+                // appearance states, e.g. /N << /On 1 0 R /Off 2 0 R >>
+                COSDictionary states = (COSDictionary) object;
+                for (COSName state : new ArrayList<>(states.keySet())) {
+                    COSBase stateItem = states.getItem(state);
+                    if (CosHasher.dereference(stateItem) instanceof COSStream) {
+                        COSBase replacement = canonicalize(stateItem);
+                        if (replacement != stateItem) {
+                            states.setItem(state, replacement);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private COSBase canonicalize(COSBase item) throws IOException {
+        CosHasher.Digest digest = hasher.digest(item);
+        COSBase existing = canonical.get(digest);
+        if (existing == null) {
+            canonical.put(digest, item);
+            uniqueResources++;
+            return item;
+        }
+        if (CosHasher.dereference(existing) != CosHasher.dereference(item)) {
+            duplicateResources++;
+        }
+        return existing;
+    }
+
+    /**
+     * 不同内容的资源数
+     */
+    public long getUniqueResources() {
+        return uniqueResources;
+    }
+
+    /**
+     * 被替换掉的重复资源数
+     */
+    public long getDuplicateResources() {
+        return duplicateResources;
+    }
+}
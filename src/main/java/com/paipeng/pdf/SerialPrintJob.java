@@ -0,0 +1,362 @@
+package com.paipeng.pdf;
+
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 序列号印刷任务
+ *
+ * 逐条读取CSV中的序列号, 按页排版成标签, 页面内容写入临时文件而不是堆内存,
+ * 达到页数或文件大小上限后保存当前分卷并开始新的分卷, 堆内存占用与任务总量无关.
+ *
+ * <pre>
+ * SerialPrintJob job = new SerialPrintJob(new File("/data/out"), "order-1001");
+ * job.setColumns(4);
+ * job.setRows(12);
+ * List&lt;File&gt; files = job.run(new File("/data/serials.csv"));
+ * </pre>
+ */
+public class SerialPrintJob {
+    private final File outputDirectory;
+    private final String outputPrefix;
+
+    private PDRectangle pageSize = PDRectangle.A4;
+    private float border = 20;
+    private int columns = 3;
+    private int rows = 10;
+
+    private String fontPath;
+    private int fontSize = 10;
+
+    private boolean header;
+    private String serialColumn;
+
+    private String pageTitle;
+    private boolean printMarks = true;
+
+    private int maxPagesPerChunk = 1000;
+    private long maxBytesPerChunk;
+    private MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupTempFileOnly();
+
+    private LabelRenderer labelRenderer;
+
+    public SerialPrintJob(File outputDirectory, String outputPrefix) {
+        this.outputDirectory = outputDirectory;
+        this.outputPrefix = outputPrefix;
+    }
+
+    /**
+     * 读取CSV文件生成印刷文件
+     *
+     * @param csvFile CSV文件, UTF-8编码
+     * @return 生成的分卷文件
+     */
+    public List<File> run(File csvFile) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8))) {
+            return run(reader);
+        }
+    }
+
+    /**
+     * 读取CSV生成印刷文件
+     *
+     * @param reader CSV内容
+     * @return 生成的分卷文件
+     */
+    public List<File> run(Reader reader) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("cannot create output directory " + outputDirectory);
+        }
+
+        CSVFormat format = CSVFormat.DEFAULT.withIgnoreEmptyLines().withTrim();
+        if (header) {
+            format = format.withFirstRecordAsHeader();
+        }
+
+        List<File> files = new ArrayList<>();
+        int labelsPerPage = columns * rows;
+        int pageCap = maxPagesPerChunk;
+
+        Chunk chunk = null;
+        List<CSVRecord> pageRecords = new ArrayList<>(labelsPerPage);
+
+        try (CSVParser parser = format.parse(reader)) {
+            for (CSVRecord record : parser) {
+                pageRecords.add(record);
+                if (pageRecords.size() < labelsPerPage) {
+                    continue;
+                }
+
+                if (chunk == null) {
+                    chunk = new Chunk(new File(outputDirectory, chunkName(files.size())));
+                }
+                writePage(chunk, pageRecords);
+                pageRecords.clear();
+
+                if (chunk.pages >= pageCap) {
+                    files.add(chunk.save());
+                    pageCap = nextPageCap(chunk);
+                    chunk = null;
+                }
+            }
+
+            if (!pageRecords.isEmpty()) {
+                if (chunk == null) {
+                    chunk = new Chunk(new File(outputDirectory, chunkName(files.size())));
+                }
+                writePage(chunk, pageRecords);
+            }
+            if (chunk != null) {
+                files.add(chunk.save());
+                chunk = null;
+            }
+        } finally {
+            if (chunk != null) {
+                chunk.close();
+            }
+        }
+
+        return files;
+    }
+
+    private void writePage(Chunk chunk, List<CSVRecord> records) throws IOException {
+        PDDocument pdDocument = chunk.pdDocument;
+        PDPage pdPage = new PDPage(pageSize);
+        pdDocument.addPage(pdPage);
+
+        PDFont font = fontPath != null ? FontCache.getInstance().getFont(pdDocument, fontPath) : PDType1Font.HELVETICA;
+        FontMetrics fontMetrics = FontCache.getInstance().getMetrics(pdDocument, font);
+
+        float cellWidth = (pageSize.getWidth() - border * 2) / columns;
+        float cellHeight = (pageSize.getHeight() - border * 2) / rows;
+
+        String firstSerialNumber = null;
+        String lastSerialNumber = null;
+
+        try (PageComposer composer = PageComposer.begin(pdDocument, pdPage)) {
+            if (printMarks) {
+                PDFUtils.drawPrintFocus(pdDocument, pdPage, border);
+                PDFUtils.drawPrintColor(pdDocument, pdPage, border);
+            }
+
+            for (int i = 0; i < records.size(); i++) {
+                CSVRecord record = records.get(i);
+                String serial = serialColumn != null ? record.get(serialColumn) : record.get(0);
+                if (firstSerialNumber == null) {
+                    firstSerialNumber = serial;
+                }
+                lastSerialNumber = serial;
+
+                // labels are filled left to right, top to bottom
+                int column = i % columns;
+                int row = i / columns;
+                PDRectangle cell = new PDRectangle(border + column * cellWidth,
+                        pageSize.getHeight() - border - (row + 1) * cellHeight, cellWidth, cellHeight);
+
+                if (labelRenderer != null) {
+                    labelRenderer.drawLabel(composer, record, serial, cell);
+                } else {
+                    drawSerial(composer, font, fontMetrics, serial, cell);
+                }
+            }
+
+            if (printMarks) {
+                PDFUtils.drawPrintText(pdDocument, pdPage, border, pageTitle, firstSerialNumber, lastSerialNumber);
+            }
+        }
+        chunk.pages++;
+    }
+
+    private void drawSerial(PageComposer composer, PDFont font, FontMetrics fontMetrics, String serial, PDRectangle cell) throws IOException {
+        float textWidth = fontMetrics.getStringWidth(serial, fontSize);
+        composer.beginText();
+        composer.setFont(font, fontSize);
+        composer.setNonStrokingColor(0f, 0, 0, 1);
+        composer.newLineAtOffset(cell.getLowerLeftX() + (cell.getWidth() - textWidth) / 2,
+                cell.getLowerLeftY() + (cell.getHeight() - fontSize) / 2);
+        composer.showText(serial);
+        composer.endText();
+    }
+
+    private int nextPageCap(Chunk chunk) {
+        if (maxBytesPerChunk <= 0 || chunk.pages == 0) {
+            return maxPagesPerChunk;
+        }
+        // the size cap is applied from the measured size per page of the previous chunk
+        long bytesPerPage = Math.max(1, chunk.file.length() / chunk.pages);
+        return (int) Math.max(1, Math.min(maxPagesPerChunk, maxBytesPerChunk / bytesPerPage));
+    }
+
+    private String chunkName(int index) {
+        return String.format("%s-%05d.pdf", outputPrefix, index + 1);
+    }
+
+    public PDRectangle getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(PDRectangle pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public float getBorder() {
+        return border;
+    }
+
+    public void setBorder(float border) {
+        this.border = border;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public void setColumns(int columns) {
+        this.columns = columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    public String getFontPath() {
+        return fontPath;
+    }
+
+    public void setFontPath(String fontPath) {
+        this.fontPath = fontPath;
+    }
+
+    public int getFontSize() {
+        return fontSize;
+    }
+
+    public void setFontSize(int fontSize) {
+        this.fontSize = fontSize;
+    }
+
+    public boolean isHeader() {
+        return header;
+    }
+
+    /**
+     * CSV第一行是否为表头
+     */
+    public void setHeader(boolean header) {
+        this.header = header;
+    }
+
+    public String getSerialColumn() {
+        return serialColumn;
+    }
+
+    /**
+     * 序列号所在列的表头名称, 为空时使用第一列
+     */
+    public void setSerialColumn(String serialColumn) {
+        this.serialColumn = serialColumn;
+    }
+
+    public String getPageTitle() {
+        return pageTitle;
+    }
+
+    public void setPageTitle(String pageTitle) {
+        this.pageTitle = pageTitle;
+    }
+
+    public boolean isPrintMarks() {
+        return printMarks;
+    }
+
+    public void setPrintMarks(boolean printMarks) {
+        this.printMarks = printMarks;
+    }
+
+    public int getMaxPagesPerChunk() {
+        return maxPagesPerChunk;
+    }
+
+    public void setMaxPagesPerChunk(int maxPagesPerChunk) {
+        this.maxPagesPerChunk = maxPagesPerChunk;
+    }
+
+    public long getMaxBytesPerChunk() {
+        return maxBytesPerChunk;
+    }
+
+    /**
+     * 分卷文件大小上限, 0表示不限制. 第一个分卷只按页数限制, 之后的分卷按已生成分卷的每页大小估算页数
+     */
+    public void setMaxBytesPerChunk(long maxBytesPerChunk) {
+        this.maxBytesPerChunk = maxBytesPerChunk;
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+
+    public LabelRenderer getLabelRenderer() {
+        return labelRenderer;
+    }
+
+    /**
+     * 自定义标签绘制, 为空时居中绘制序列号
+     */
+    public void setLabelRenderer(LabelRenderer labelRenderer) {
+        this.labelRenderer = labelRenderer;
+    }
+
+    private class Chunk {
+        private final File file;
+        private final PDDocument pdDocument;
+        private int pages;
+
+        Chunk(File file) {
+            this.file = file;
+            this.pdDocument = new PDDocument(memoryUsageSetting);
+        }
+
+        File save() throws IOException {
+            try {
+                PDFUtils.save(pdDocument, file);
+            } finally {
+                close();
+            }
+            return file;
+        }
+
+        void close() throws IOException {
+            FontCache.getInstance().release(pdDocument);
+            ImageCache.getInstance().release(pdDocument);
+            MarkTemplates.getInstance().release(pdDocument);
+            pdDocument.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.paipeng.pdf;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 把每次操作写入slf4j日志(com.paipeng.pdf.metrics, DEBUG级别), 超过阈值的操作写为WARN
+ */
+public class Slf4jInstrumentation implements Instrumentation {
+    private static final Logger logger = LoggerFactory.getLogger("com.paipeng.pdf.metrics");
+
+    private final long slowNanos;
+
+    public Slf4jInstrumentation() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param slowMillis 超过这个耗时(毫秒)的操作写为WARN
+     */
+    public Slf4jInstrumentation(long slowMillis) {
+        this.slowNanos = slowMillis == Long.MAX_VALUE ? Long.MAX_VALUE : slowMillis * 1000000L;
+    }
+
+    @Override
+    public void record(Stage stage, String jobId, long durationNanos, long bytesIn, long bytesOut) {
+        if (durationNanos >= slowNanos) {
+            logger.warn("{} job={} {}us in={} out={}", stage, jobId, durationNanos / 1000, bytesIn, bytesOut);
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("{} job={} {}us in={} out={}", stage, jobId, durationNanos / 1000, bytesIn, bytesOut);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 流式AES-256加密保存
+ *
+ * PDDocument.protect后save时, PDFBox把每个流整个读入内存再加密, 一张几百MB的扫描图片就需要同样大小的堆.
+ * 这里从文档的Root和Info开始逐个写出对象, 流数据边读边经过AES-256(R6)加密写入输出文件, 堆中只有一个缓冲区.
+ * 源文件用MemorySettings的低内存设置加载, 流数据在临时文件中; 对象图在加载时全部解析并留在堆中,
+ * 堆内存随对象数量增长. 源文件本身不应加密.
+ *
+ * <pre>
+ * AccessPermission permission = new AccessPermission();
+ * permission.setCanPrint(false);
+ * new StreamingEncryptor("owner", "", permission).encrypt(new File("/data/scan.pdf"), new File("/data/scan-protected.pdf"));
+ * </pre>
+ */
+public class StreamingEncryptor {
+    private final String ownerPassword;
+    private final String userPassword;
+    private final AccessPermission permission;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param ownerPassword 所有者密码
+     * @param userPassword  用户密码, 为空字符串时打开文件不需要密码
+     * @param permission    用户密码打开时的权限
+     */
+    public StreamingEncryptor(String ownerPassword, String userPassword, AccessPermission permission) {
+        this.ownerPassword = ownerPassword;
+        this.userPassword = userPassword;
+        this.permission = permission;
+    }
+
+    /**
+     * 加密PDF文件
+     *
+     * @param input  源文件
+     * @param output 输出文件, 不能和源文件相同
+     */
+    public void encrypt(File input, File output) throws IOException {
+        if (input.getCanonicalFile().equals(output.getCanonicalFile())) {
+            throw new IOException("cannot encrypt " + input + " onto itself, the source is read while the output is written");
+        }
+        long start = System.nanoTime();
+        // both are closed before the catch block deletes the output
+        try (PDDocument pdDocument = PDDocument.load(input, MemorySettings.getInstance().getLowMemoryUsageSetting());
+             OutputStream outputStream = new FileOutputStream(output)) {
+            encrypt(pdDocument, outputStream);
+        } catch (IOException | RuntimeException e) {
+            output.delete();
+            throw e;
+        }
+        Metrics.getInstance().record(Instrumentation.Stage.SAVE, start, input.length(), output.length());
+    }
+
+    /**
+     * 加密保存文档. 文档不会被修改
+     *
+     * @param pdDocument   文档
+     * @param outputStream 输出, 写完或失败后关闭
+     */
+    public void encrypt(PDDocument pdDocument, OutputStream outputStream) throws IOException {
+        long start = System.nanoTime();
+        byte[] fileKey = randomBytes(32);
+        COSDictionary encryption;
+        try {
+            encryption = encryptionDictionary(fileKey);
+        } catch (IOException | RuntimeException e) {
+            outputStream.close();
+            throw e;
+        }
+        Metrics.getInstance().record(Instrumentation.Stage.ENCRYPT, start);
+
+        try (Writer writer = new Writer(new CountingOutputStream(new BufferedOutputStream(outputStream, 64 * 1024)), fileKey)) {
+            writer.write(pdDocument.getDocument().getTrailer(), encryption);
+        }
+    }
+
+    /**
+     * Standard安全处理器, V5 R6: O, U, OE, UE和Perms
+     */
+    private COSDictionary encryptionDictionary(byte[] fileKey) throws IOException {
+        byte[] user = password(userPassword);
+        byte[] owner = password(ownerPassword);
+
+        byte[] userValidationSalt = randomBytes(8);
+        byte[] userKeySalt = randomBytes(8);
+        byte[] u = concat(hash(user, userValidationSalt, new byte[0]), userValidationSalt, userKeySalt);
+        byte[] ue = aesNoPadding(hash(user, userKeySalt, new byte[0]), fileKey, true);
+
+        byte[] ownerValidationSalt = randomBytes(8);
+        byte[] ownerKeySalt = randomBytes(8);
+        byte[] o = concat(hash(owner, ownerValidationSalt, u), ownerValidationSalt, ownerKeySalt);
+        byte[] oe = aesNoPadding(hash(owner, ownerKeySalt, u), fileKey, true);
+
+        int p = permission.getPermissionBytes();
+        byte[] perms = new byte[16];
+        for (int i = 0; i < 4; i++) {
+            perms[i] = (byte) (p >>> (8 * i));
+            perms[i + 4] = (byte) 0xff;
+        }
+        perms[8] = 'T';
+        perms[9] = 'a';
+        perms[10] = 'd';
+        perms[11] = 'b';
+        System.arraycopy(randomBytes(4), 0, perms, 12, 4);
+        perms = aesNoPadding(fileKey, perms, false);
+
+        COSDictionary cryptFilter = new COSDictionary();
+        cryptFilter.setItem(COSName.TYPE, COSName.getPDFName("CryptFilter"));
+        cryptFilter.setItem(COSName.getPDFName("CFM"), COSName.getPDFName("AESV3"));
+        cryptFilter.setItem(COSName.getPDFName("AuthEvent"), COSName.getPDFName("DocOpen"));
+        cryptFilter.setInt(COSName.LENGTH, 32);
+        COSDictionary cryptFilters = new COSDictionary();
+        cryptFilters.setItem(COSName.getPDFName("StdCF"), cryptFilter);
+
+        COSDictionary encryption = new COSDictionary();
+        encryption.setItem(COSName.FILTER, COSName.getPDFName("Standard"));
+        encryption.setInt(COSName.V, 5);
+        encryption.setInt(COSName.R, 6);
+        encryption.setInt(COSName.LENGTH, 256);
+        encryption.setItem(COSName.CF, cryptFilters);
+        encryption.setItem(COSName.STM_F, COSName.getPDFName("StdCF"));
+        encryption.setItem(COSName.STR_F, COSName.getPDFName("StdCF"));
+        encryption.setItem(COSName.O, new COSString(o));
+        encryption.setItem(COSName.U, new COSString(u));
+        encryption.setItem(COSName.OE, new COSString(oe));
+        encryption.setItem(COSName.UE, new COSString(ue));
+        encryption.setItem(COSName.PERMS, new COSString(perms));
+        encryption.setInt(COSName.P, p);
+        encryption.setBoolean(COSName.ENCRYPT_META_DATA, true);
+        return encryption;
+    }
+
+    // UTF-8, at most 127 bytes; passwords are not normalised with SASLprep
+    private static byte[] password(String password) {
+        byte[] bytes = (password != null ? password : "").getBytes(StandardCharsets.UTF_8);
+        return bytes.length > 127 ? Arrays.copyOf(bytes, 127) : bytes;
+    }
+
+    /**
+     * ISO 32000-2 算法2.B: 由密码、盐和用户键计算哈希
+     */
+    private static byte[] hash(byte[] password, byte[] salt, byte[] userKey) throws IOException {
+        try {
+            byte[] k = MessageDigest.getInstance("SHA-256").digest(concat(password, salt, userKey));
+            byte[] e = null;
+            for (int round = 0; round < 64 || (e[e.length - 1] & 0xff) > round - 32; round++) {
+                byte[] sequence = concat(password, k, userKey);
+                byte[] k1 = new byte[sequence.length * 64];
+                for (int i = 0; i < 64; i++) {
+                    System.arraycopy(sequence, 0, k1, i * sequence.length, sequence.length);
+                }
+                Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(k, 0, 16, "AES"), new IvParameterSpec(k, 16, 16));
+                e = cipher.doFinal(k1);
+                int remainder = new BigInteger(1, Arrays.copyOf(e, 16)).mod(BigInteger.valueOf(3)).intValue();
+                k = MessageDigest.getInstance(remainder == 0 ? "SHA-256" : remainder == 1 ? "SHA-384" : "SHA-512").digest(e);
+            }
+            return Arrays.copyOf(k, 32);
+        } catch (GeneralSecurityException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    // OE and UE: CBC with a zero IV, Perms: ECB
+    private static byte[] aesNoPadding(byte[] key, byte[] data, boolean cbc) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance(cbc ? "AES/CBC/NoPadding" : "AES/ECB/NoPadding");
+            if (cbc) {
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(new byte[16]));
+            } else {
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+            }
+            return cipher.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * 写出一个文档的所有对象, 对象按引用顺序重新编号
+     */
+    private class Writer implements AutoCloseable {
+        private final CountingOutputStream output;
+        private final SecretKeySpec key;
+
+        private final Map<COSBase, Integer> numbers = new IdentityHashMap<>();
+        private final Deque<COSBase> pending = new ArrayDeque<>();
+        private long[] offsets = new long[1024];
+        private int nextNumber = 1;
+
+        Writer(CountingOutputStream output, byte[] fileKey) throws IOException {
+            this.output = output;
+            this.key = new SecretKeySpec(fileKey, "AES");
+            output.write("%PDF-1.7\n%âãÏÓ\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        void write(COSDictionary trailer, COSDictionary encryption) throws IOException {
+            COSBase root = CosHasher.dereference(trailer.getItem(COSName.ROOT));
+            COSBase info = CosHasher.dereference(trailer.getItem(COSName.INFO));
+            if (!(root instanceof COSDictionary)) {
+                throw new IOException("document has no catalog");
+            }
+            int rootNumber = reference(root);
+            int infoNumber = info instanceof COSDictionary ? reference(info) : 0;
+            while (!pending.isEmpty()) {
+                COSBase object = pending.poll();
+                beginObject(numbers.get(object));
+                if (object instanceof COSStream) {
+                    writeStream((COSStream) object);
+                } else {
+                    writeDirect(object, true);
+                }
+                endObject();
+            }
+
+            // the encryption dictionary itself is not encrypted
+            int encryptNumber = nextNumber++;
+            beginObject(encryptNumber);
+            writeDirect(encryption, false);
+            endObject();
+
+            long xref = output.count;
+            StringBuilder table = new StringBuilder("xref\n0 ").append(nextNumber).append("\n0000000000 65535 f\r\n");
+            for (int number = 1; number < nextNumber; number++) {
+                table.append(String.format("%010d 00000 n\r\n", offsets[number]));
+            }
+            String id = new BigInteger(1, randomBytes(16)).toString(16);
+            while (id.length() < 32) {
+                id = "0" + id;
+            }
+            table.append("trailer\n<</Size ").append(nextNumber).append(" /Root ").append(rootNumber).append(" 0 R");
+            if (infoNumber > 0) {
+                table.append(" /Info ").append(infoNumber).append(" 0 R");
+            }
+            table.append(" /Encrypt ").append(encryptNumber).append(" 0 R /ID [<").append(id).append("> <").append(id)
+                    .append(">]>>\nstartxref\n").append(xref).append("\n%%EOF\n");
+            output.write(table.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private void writeStream(COSStream stream) throws IOException {
+            long length = stream.getLength();
+            output.write("<<".getBytes(StandardCharsets.US_ASCII));
+            for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+                if (!COSName.LENGTH.equals(entry.getKey())) {
+                    writeEntry(entry.getKey(), entry.getValue(), true);
+                }
+            }
+            // IV and the data padded to whole AES blocks, PKCS#5 always adds at least one byte
+            long encryptedLength = 16 + (length / 16 + 1) * 16;
+            output.write(("\n/Length " + encryptedLength + ">>\nstream\n").getBytes(StandardCharsets.US_ASCII));
+            long position = output.count;
+            long copied = 0;
+            byte[] buffer = new byte[8192];
+            byte[] iv = randomBytes(16);
+            output.write(iv);
+            // the cipher closes its stream, the output stays open
+            try (InputStream in = stream.createRawInputStream();
+                 OutputStream encrypted = new CipherOutputStream(new FilterOutputStream(output) {
+                     @Override
+                     public void write(byte[] b, int off, int len) throws IOException {
+                         out.write(b, off, len);
+                     }
+
+                     @Override
+                     public void close() throws IOException {
+                         flush();
+                     }
+                 }, cipher(iv))) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    encrypted.write(buffer, 0, n);
+                    copied += n;
+                }
+            }
+            if (copied != length || output.count - position != encryptedLength) {
+                throw new IOException("stream length " + length + " does not match its data (" + copied + " bytes)");
+            }
+            output.write("\nendstream".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private Cipher cipher(byte[] iv) throws IOException {
+            try {
+                Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+                cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+                return cipher;
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private byte[] encryptString(byte[] data) throws IOException {
+            byte[] iv = randomBytes(16);
+            try {
+                return concat(iv, cipher(iv).doFinal(data));
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private void writeEntry(COSName key, COSBase value, boolean encrypt) throws IOException {
+            output.write('\n');
+            key.writePDF(output);
+            output.write(' ');
+            writeValue(value, encrypt);
+        }
+
+        private void writeValue(COSBase value, boolean encrypt) throws IOException {
+            COSBase object = CosHasher.dereference(value);
+            if (object == null || object instanceof COSNull) {
+                output.write("null".getBytes(StandardCharsets.US_ASCII));
+            } else if (value instanceof COSObject || object instanceof COSStream) {
+                output.write((reference(object) + " 0 R").getBytes(StandardCharsets.US_ASCII));
+            } else {
+                writeDirect(object, encrypt);
+            }
+        }
+
+        private void writeDirect(COSBase object, boolean encrypt) throws IOException {
+            if (object instanceof COSDictionary) {
+                output.write("<<".getBytes(StandardCharsets.US_ASCII));
+                for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) object).entrySet()) {
+                    writeEntry(entry.getKey(), entry.getValue(), encrypt);
+                }
+                output.write(">>".getBytes(StandardCharsets.US_ASCII));
+            } else if (object instanceof COSArray) {
+                output.write('[');
+                boolean first = true;
+                for (COSBase item : (COSArray) object) {
+                    if (!first) {
+                        output.write(' ');
+                    }
+                    first = false;
+                    writeValue(item == null ? COSNull.NULL : item, encrypt);
+                }
+                output.write(']');
+            } else if (object instanceof COSString) {
+                byte[] bytes = ((COSString) object).getBytes();
+                COSString string = new COSString(encrypt ? encryptString(bytes) : bytes);
+                string.setForceHexForm(true);
+                COSWriter.writeString(string, output);
+            } else if (object instanceof COSName) {
+                ((COSName) object).writePDF(output);
+            } else if (object instanceof COSInteger) {
+                ((COSInteger) object).writePDF(output);
+            } else if (object instanceof COSFloat) {
+                ((COSFloat) object).writePDF(output);
+            } else if (object instanceof COSBoolean) {
+                ((COSBoolean) object).writePDF(output);
+            } else {
+                output.write("null".getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+
+        // object number of an indirect object, written later
+        private int reference(COSBase object) {
+            Integer number = numbers.get(object);
+            if (number == null) {
+                number = nextNumber++;
+                numbers.put(object, number);
+                pending.add(object);
+            }
+            return number;
+        }
+
+        private void beginObject(int number) throws IOException {
+            if (number >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(number + 1, offsets.length * 2));
+            }
+            offsets[number] = output.count;
+            output.write((number + " 0 obj\n").getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private void endObject() throws IOException {
+            output.write("\nendobj\n".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
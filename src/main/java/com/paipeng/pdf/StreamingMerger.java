@@ -0,0 +1,524 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 流式合并
+ *
+ * 源文件逐个加载, 页面和它们引用的对象直接写入输出文件后关闭源文件, 内存中只保留对象偏移量和资源哈希.
+ * 字体、图片、Form XObject等流和字体、图形状态字典按内容哈希去重, 多个源文件中相同的资源只写一份.
+ * 只合并页面, 书签、表单、结构树等文档级内容不保留.
+ * 字体子集每个文件都不同, 要去重字体时生成源文件应完整嵌入字体(FontCache.setEmbedSubset).
+ * 源文件在写入前失败(例如无法加载)时可以继续追加其它文件; 写入过程中失败时输出已不完整, 之后的append和close都抛出IOException.
+ *
+ * <pre>
+ * try (StreamingMerger merger = new StreamingMerger(new File("/data/press-run.pdf"))) {
+ *     for (File order : orders) {
+ *         merger.append(order);
+ *     }
+ * }
+ * </pre>
+ */
+public class StreamingMerger implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingMerger.class);
+
+    private static final COSName STRUCT_PARENTS = COSName.getPDFName("StructParents");
+    private static final int CATALOG = 1;
+    private static final int ROOT = 2;
+    // pages are grouped under intermediate nodes, so no /Kids array gets very long
+    private static final int PAGES_PER_NODE = 256;
+
+    private final CountingOutputStream output;
+
+    private MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupTempFileOnly();
+    private int progressInterval = 1000;
+
+    // offsets of the written objects, index is the object number
+    private long[] offsets = new long[1024];
+    private int nextNumber = ROOT + 1;
+
+    // page numbers grouped by node, and the node numbers
+    private int[] pageNumbers = new int[1024];
+    private int pageCount;
+    private int[] nodeNumbers = new int[16];
+    private int nodeCount;
+
+    // content digest -> object number, kept for the whole merge
+    private final Map<CosHasher.Digest, Integer> resources = new HashMap<>();
+
+    // per source: source object -> object number, and objects still to be written
+    private Map<COSBase, Integer> numbers;
+    private Deque<COSBase> pending;
+    private CosHasher hasher;
+
+    private long sources;
+    private long uniqueResources;
+    private long duplicateResources;
+    private final long startNanos = System.nanoTime();
+    private boolean closed;
+    // a source failed after part of it was written
+    private boolean failed;
+
+    /**
+     * @param file 输出文件
+     */
+    public StreamingMerger(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    /**
+     * @param outputStream 输出, 在close时关闭
+     */
+    public StreamingMerger(OutputStream outputStream) throws IOException {
+        this.output = new CountingOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+        output.write("%PDF-1.7\n%âãÏÓ\n".getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * 追加一个源文件的所有页面, 写入后关闭源文件
+     *
+     * @param source 源PDF文件
+     * @return 追加的页数
+     */
+    public int append(File source) throws IOException {
+        long start = System.nanoTime();
+        long position = output.count;
+        int pages;
+        try (PDDocument pdDocument = PDDocument.load(source, memoryUsageSetting)) {
+            pages = append(pdDocument);
+        }
+        Metrics.getInstance().record(Instrumentation.Stage.MERGE, start, source.length(), output.count - position);
+        return pages;
+    }
+
+    /**
+     * 追加文档的所有页面. 文档由调用者关闭
+     *
+     * @param pdDocument 源文档
+     * @return 追加的页数
+     */
+    public int append(PDDocument pdDocument) throws IOException {
+        if (closed) {
+            throw new IOException("merger is closed");
+        }
+        if (failed) {
+            throw new IOException("merger failed on an earlier source, the output is incomplete");
+        }
+        int first = pageCount;
+        int firstNumber = nextNumber;
+        int firstNode = nodeCount;
+        long position = output.count;
+        boolean appended = false;
+        numbers = new IdentityHashMap<>();
+        pending = new ArrayDeque<>();
+        hasher = new CosHasher();
+        try {
+            // numbers of all pages first, so links between them resolve
+            for (PDPage pdPage : pdDocument.getPages()) {
+                int number = nextNumber++;
+                numbers.put(pdPage.getCOSObject(), number);
+                addPage(number);
+            }
+            int index = first;
+            for (PDPage pdPage : pdDocument.getPages()) {
+                writePage(pdPage, pageNumbers[index], nodeNumbers[index / PAGES_PER_NODE]);
+                index++;
+                writePending();
+            }
+            sources++;
+            appended = true;
+            if (progressInterval > 0 && sources % progressInterval == 0) {
+                logProgress();
+            }
+            return pageCount - first;
+        } finally {
+            if (!appended) {
+                if (output.count == position) {
+                    // nothing of this source was written, its numbers are given out again
+                    nextNumber = firstNumber;
+                    pageCount = first;
+                    nodeCount = firstNode;
+                } else {
+                    // the pages are linked into the tree and their objects are partly written
+                    failed = true;
+                }
+            }
+            numbers = null;
+            pending = null;
+            hasher = null;
+        }
+    }
+
+    private void addPage(int number) {
+        if (pageCount % PAGES_PER_NODE == 0) {
+            if (nodeCount == nodeNumbers.length) {
+                nodeNumbers = Arrays.copyOf(nodeNumbers, nodeCount * 2);
+            }
+            nodeNumbers[nodeCount++] = nextNumber++;
+        }
+        if (pageCount == pageNumbers.length) {
+            pageNumbers = Arrays.copyOf(pageNumbers, pageCount * 2);
+        }
+        pageNumbers[pageCount++] = number;
+    }
+
+    private void writePage(PDPage pdPage, int number, int parent) throws IOException {
+        COSDictionary page = pdPage.getCOSObject();
+        beginObject(number);
+        output.write("<<".getBytes(StandardCharsets.US_ASCII));
+        for (Map.Entry<COSName, COSBase> entry : page.entrySet()) {
+            COSName key = entry.getKey();
+            // inherited attributes are written from the page, the structure tree is not merged
+            if (COSName.PARENT.equals(key) || COSName.RESOURCES.equals(key) || COSName.MEDIA_BOX.equals(key)
+                    || COSName.CROP_BOX.equals(key) || COSName.ROTATE.equals(key) || STRUCT_PARENTS.equals(key)) {
+                continue;
+            }
+            writeEntry(key, entry.getValue());
+        }
+        writeEntry(COSName.PARENT, null);
+        output.write((" " + parent + " 0 R").getBytes(StandardCharsets.US_ASCII));
+        writeInherited(page, COSName.RESOURCES);
+        writeInherited(page, COSName.MEDIA_BOX);
+        writeInherited(page, COSName.CROP_BOX);
+        writeInherited(page, COSName.ROTATE);
+        output.write(">>".getBytes(StandardCharsets.US_ASCII));
+        endObject();
+    }
+
+    private void writeInherited(COSDictionary page, COSName key) throws IOException {
+        COSDictionary node = page;
+        int depth = 0;
+        while (node != null && depth++ < 64) {
+            COSBase value = node.getItem(key);
+            if (value != null) {
+                writeEntry(key, value);
+                return;
+            }
+            COSBase parent = node.getDictionaryObject(COSName.PARENT, COSName.P);
+            node = parent instanceof COSDictionary ? (COSDictionary) parent : null;
+        }
+    }
+
+    private void writeEntry(COSName key, COSBase value) throws IOException {
+        output.write('\n');
+        key.writePDF(output);
+        if (value != null) {
+            output.write(' ');
+            writeValue(value);
+        }
+    }
+
+    private void writePending() throws IOException {
+        while (!pending.isEmpty()) {
+            COSBase object = pending.poll();
+            beginObject(numbers.get(object));
+            if (object instanceof COSStream) {
+                writeStream((COSStream) object);
+            } else {
+                writeDirect(object);
+            }
+            endObject();
+        }
+    }
+
+    private void writeStream(COSStream stream) throws IOException {
+        long length = stream.getLength();
+        output.write("<<".getBytes(StandardCharsets.US_ASCII));
+        for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+            if (!COSName.LENGTH.equals(entry.getKey())) {
+                writeEntry(entry.getKey(), entry.getValue());
+            }
+        }
+        output.write(("\n/Length " + length + ">>\nstream\n").getBytes(StandardCharsets.US_ASCII));
+        long copied = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = stream.createRawInputStream()) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                output.write(buffer, 0, n);
+                copied += n;
+            }
+        }
+        if (copied != length) {
+            throw new IOException("stream length " + length + " does not match its data (" + copied + " bytes)");
+        }
+        output.write("\nendstream".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void writeValue(COSBase value) throws IOException {
+        COSBase object = value instanceof COSObject ? ((COSObject) value).getObject() : value;
+        if (object == null || object instanceof COSNull) {
+            output.write("null".getBytes(StandardCharsets.US_ASCII));
+        } else if (value instanceof COSObject || object instanceof COSStream) {
+            int number = reference(object);
+            output.write((number > 0 ? number + " 0 R" : "null").getBytes(StandardCharsets.US_ASCII));
+        } else {
+            writeDirect(object);
+        }
+    }
+
+    private void writeDirect(COSBase object) throws IOException {
+        if (object instanceof COSDictionary) {
+            output.write("<<".getBytes(StandardCharsets.US_ASCII));
+            for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) object).entrySet()) {
+                writeEntry(entry.getKey(), entry.getValue());
+            }
+            output.write(">>".getBytes(StandardCharsets.US_ASCII));
+        } else if (object instanceof COSArray) {
+            output.write('[');
+            boolean first = true;
+            for (COSBase item : (COSArray) object) {
+                if (!first) {
+                    output.write(' ');
+                }
+                first = false;
+                writeValue(item == null ? COSNull.NULL : item);
+            }
+            output.write(']');
+        } else if (object instanceof COSString) {
+            COSWriter.writeString((COSString) object, output);
+        } else if (object instanceof COSName) {
+            ((COSName) object).writePDF(output);
+        } else if (object instanceof COSInteger) {
+            ((COSInteger) object).writePDF(output);
+        } else if (object instanceof COSFloat) {
+            ((COSFloat) object).writePDF(output);
+        } else if (object instanceof COSBoolean) {
+            ((COSBoolean) object).writePDF(output);
+        } else {
+            output.write("null".getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    // object number of an indirect object, written later; 0 for pages that are not merged
+    private int reference(COSBase object) throws IOException {
+        Integer number = numbers.get(object);
+        if (number != null) {
+            return number;
+        }
+        if (object instanceof COSDictionary && COSName.PAGE.equals(((COSDictionary) object).getCOSName(COSName.TYPE))) {
+            // e.g. a link to a page of another document
+            return 0;
+        }
+        CosHasher.Digest digest = null;
+        if (isResource(object)) {
+            digest = hasher.digest(object);
+            number = resources.get(digest);
+            if (number != null) {
+                duplicateResources++;
+                numbers.put(object, number);
+                return number;
+            }
+        }
+        number = nextNumber++;
+        numbers.put(object, number);
+        pending.add(object);
+        if (digest != null) {
+            resources.put(digest, number);
+            uniqueResources++;
+        }
+        return number;
+    }
+
+    // objects that may be shared by the pages of different sources; page contents are not, their digests would only fill the map
+    private static boolean isResource(COSBase object) {
+        if (object instanceof COSStream) {
+            for (COSName key : ((COSStream) object).keySet()) {
+                if (!COSName.LENGTH.equals(key) && !COSName.FILTER.equals(key) && !COSName.DECODE_PARMS.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (object instanceof COSDictionary) {
+            COSName type = ((COSDictionary) object).getCOSName(COSName.TYPE);
+            return COSName.FONT.equals(type) || COSName.FONT_DESC.equals(type) || COSName.EXT_G_STATE.equals(type);
+        }
+        return false;
+    }
+
+    private void beginObject(int number) throws IOException {
+        if (number >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(number + 1, offsets.length * 2));
+        }
+        offsets[number] = output.count;
+        output.write((number + " 0 obj\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void endObject() throws IOException {
+        output.write("\nendobj\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void logProgress() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        logger.info("merged {} files, {} pages, {} MB, {} files/s, {} unique and {} duplicate resources",
+                sources, pageCount, output.count / (1024 * 1024), String.format("%.1f", sources / Math.max(seconds, 1e-9)),
+                uniqueResources, duplicateResources);
+    }
+
+    /**
+     * 写入页面树、目录和交叉引用表, 关闭输出. 合并失败时只关闭输出
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (failed) {
+            output.close();
+            throw new IOException("merger failed on an earlier source, the output is incomplete");
+        }
+        try {
+            // the intermediate nodes; an empty merge still needs one
+            if (nodeCount == 0) {
+                nodeNumbers[nodeCount++] = nextNumber++;
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                int first = node * PAGES_PER_NODE;
+                int last = Math.min(pageCount, first + PAGES_PER_NODE);
+                StringBuilder kids = new StringBuilder();
+                for (int i = first; i < last; i++) {
+                    kids.append(i > first ? " " : "").append(pageNumbers[i]).append(" 0 R");
+                }
+                beginObject(nodeNumbers[node]);
+                output.write(("<</Type /Pages /Parent " + ROOT + " 0 R /Count " + (last - first) + " /Kids [" + kids + "]>>")
+                        .getBytes(StandardCharsets.US_ASCII));
+                endObject();
+            }
+            StringBuilder kids = new StringBuilder();
+            for (int node = 0; node < nodeCount; node++) {
+                kids.append(node > 0 ? " " : "").append(nodeNumbers[node]).append(" 0 R");
+            }
+            beginObject(ROOT);
+            output.write(("<</Type /Pages /Count " + pageCount + " /Kids [" + kids + "]>>").getBytes(StandardCharsets.US_ASCII));
+            endObject();
+            beginObject(CATALOG);
+            output.write(("<</Type /Catalog /Pages " + ROOT + " 0 R>>").getBytes(StandardCharsets.US_ASCII));
+            endObject();
+
+            long xref = output.count;
+            StringBuilder table = new StringBuilder("xref\n0 ").append(nextNumber).append("\n0000000000 65535 f\r\n");
+            for (int number = 1; number < nextNumber; number++) {
+                table.append(String.format("%010d 00000 n\r\n", offsets[number]));
+            }
+            String id = UUID.randomUUID().toString().replace("-", "");
+            table.append("trailer\n<</Size ").append(nextNumber).append(" /Root ").append(CATALOG)
+                    .append(" 0 R /ID [<").append(id).append("> <").append(id).append(">]>>\nstartxref\n")
+                    .append(xref).append("\n%%EOF\n");
+            output.write(table.toString().getBytes(StandardCharsets.US_ASCII));
+            if (progressInterval > 0) {
+                logProgress();
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    /**
+     * 设置加载源文件时的内存使用方式, 默认使用临时文件
+     */
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * 每合并多少个文件写一条INFO日志, 0为不写
+     */
+    public void setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * 已合并的源文件数
+     */
+    public long getSources() {
+        return sources;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * 已写入的字节数
+     */
+    public long getBytesWritten() {
+        return output.count;
+    }
+
+    /**
+     * 不同内容的资源数
+     */
+    public long getUniqueResources() {
+        return uniqueResources;
+    }
+
+    /**
+     * 引用已写入的相同资源的次数
+     */
+    public long getDuplicateResources() {
+        return duplicateResources;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
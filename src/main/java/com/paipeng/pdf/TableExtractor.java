@@ -0,0 +1,439 @@
+package com.paipeng.pdf;
+
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 表格提取
+ *
+ * 每页只解析一次, 把带位置的文字(TextPosition)按行聚类, 行内按间距切成片段, 片段按纵坐标放入网格索引.
+ * 所有命名区域都从同一个索引查询, 区域内的片段按行和列聚类成单元格. 多页按段并行处理, 结果按页序返回.
+ * 区域坐标和PDFTextStripperByArea相同, 单位为点, 原点在页面左上角.
+ *
+ * <pre>
+ * TableExtractor extractor = new TableExtractor(4);
+ * extractor.addRegion("items", new Rectangle2D.Float(30, 200, 535, 500));
+ * extractor.addRegion("total", new Rectangle2D.Float(350, 700, 215, 60));
+ * try (Writer writer = Files.newBufferedWriter(Paths.get("/data/statements.csv"))) {
+ *     extractor.extractCsv(new File("/data/statements.pdf"), 0, -1, writer);
+ * }
+ * </pre>
+ */
+public class TableExtractor {
+    public static final String PAGE_REGION = "page";
+
+    private static final float BUCKET_HEIGHT = 32;
+
+    private final int threads;
+    private final Map<String, Rectangle2D> regions = new LinkedHashMap<>();
+
+    private int pagesPerPart = 8;
+    private float cellGap = 1.5f;
+    private MemoryUsageSetting memoryUsageSetting = MemorySettings.getInstance().getMemoryUsageSetting();
+
+    /**
+     * @param threads 提取线程数
+     */
+    public TableExtractor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * 添加一个命名区域, 没有区域时整页作为一个表格
+     *
+     * @param name 区域名称
+     * @param rect 区域, 单位为点, 原点在页面左上角
+     */
+    public void addRegion(String name, Rectangle2D rect) {
+        regions.put(name, rect);
+    }
+
+    public void removeRegion(String name) {
+        regions.remove(name);
+    }
+
+    /**
+     * 提取表格行
+     *
+     * @param pdfFile   PDF文件
+     * @param startPage 开始页码, 从0开始
+     * @param endPage   结束页码(包含), -1表示最后一页
+     * @param handler   每行的回调
+     */
+    public void extract(File pdfFile, int startPage, int endPage, TableRowHandler handler) throws IOException {
+        Map<String, Rectangle2D> areas = new LinkedHashMap<>(regions);
+        if (areas.isEmpty()) {
+            areas.put(PAGE_REGION, null);
+        }
+
+        try (RenderPool pool = new RenderPool(pdfFile, memoryUsageSetting, threads, "pdf-table")) {
+            int first = Math.max(0, startPage);
+            int last = pool.lastPage(endPage);
+            if (first > last) {
+                return;
+            }
+            int parts = (last - first + pagesPerPart) / pagesPerPart;
+
+            pool.run(0, parts - 1, part -> {
+                int partStart = first + part * pagesPerPart;
+                int partEnd = Math.min(last, partStart + pagesPerPart - 1);
+                return extractPart(pool.getDocument(), partStart, partEnd, areas);
+            }, rows -> {
+                for (Row row : rows) {
+                    handler.handleRow(row.pageIndex, row.regionName, row.cells);
+                }
+            });
+        }
+    }
+
+    /**
+     * 提取表格为CSV, 每行的前两列为页码(从1开始)和区域名称
+     *
+     * @param pdfFile   PDF文件
+     * @param startPage 开始页码, 从0开始
+     * @param endPage   结束页码(包含), -1表示最后一页
+     * @param out       CSV输出
+     */
+    public void extractCsv(File pdfFile, int startPage, int endPage, Appendable out) throws IOException {
+        CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT);
+        extract(pdfFile, startPage, endPage, (pageIndex, regionName, cells) -> {
+            List<Object> record = new ArrayList<>(cells.size() + 2);
+            record.add(pageIndex + 1);
+            record.add(regionName);
+            record.addAll(cells);
+            printer.printRecord(record);
+        });
+        printer.flush();
+    }
+
+    private List<Row> extractPart(PDDocument pdDocument, int startPage, int endPage, Map<String, Rectangle2D> areas) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        PositionStripper stripper = new PositionStripper((pageIndex, glyphs) -> {
+            PageLayout layout = new PageLayout(glyphs);
+            for (Map.Entry<String, Rectangle2D> area : areas.entrySet()) {
+                for (List<String> cells : layout.table(area.getValue())) {
+                    rows.add(new Row(pageIndex, area.getKey(), cells));
+                }
+            }
+        });
+        stripper.setStartPage(startPage + 1);
+        stripper.setEndPage(endPage + 1);
+        stripper.writeText(pdDocument, new StringWriter());
+        return rows;
+    }
+
+    private static class Row {
+        private final int pageIndex;
+        private final String regionName;
+        private final List<String> cells;
+
+        Row(int pageIndex, String regionName, List<String> cells) {
+            this.pageIndex = pageIndex;
+            this.regionName = regionName;
+            this.cells = cells;
+        }
+    }
+
+    private interface PageGlyphs {
+        void handlePage(int pageIndex, List<TextPosition> glyphs) throws IOException;
+    }
+
+    /**
+     * 只收集TextPosition, 不输出文字
+     */
+    private static class PositionStripper extends PDFTextStripper {
+        private final PageGlyphs handler;
+        private final List<TextPosition> glyphs = new ArrayList<>();
+
+        PositionStripper(PageGlyphs handler) throws IOException {
+            this.handler = handler;
+        }
+
+        @Override
+        protected void startPage(PDPage page) {
+            glyphs.clear();
+        }
+
+        @Override
+        protected void processTextPosition(TextPosition text) {
+            String unicode = text.getUnicode();
+            if (unicode != null && !unicode.trim().isEmpty()) {
+                glyphs.add(text);
+            }
+        }
+
+        @Override
+        protected void endPage(PDPage page) throws IOException {
+            handler.handlePage(getCurrentPageNo() - 1, new ArrayList<>(glyphs));
+            glyphs.clear();
+        }
+    }
+
+    /**
+     * 同一行中相邻的文字, 间距小于cellGap个空格宽度时属于同一片段
+     */
+    private static class Segment {
+        private final int line;
+        private final float x;
+        private final float y;
+        private final float width;
+        private final float height;
+        private final String text;
+
+        Segment(int line, float x, float y, float width, float height, String text) {
+            this.line = line;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.text = text;
+        }
+
+        float centerX() {
+            return x + width / 2;
+        }
+
+        float centerY() {
+            return y + height / 2;
+        }
+    }
+
+    /**
+     * 一页文字的行、片段和按纵坐标分桶的索引
+     */
+    private class PageLayout {
+        private final Map<Integer, List<Segment>> buckets = new HashMap<>();
+
+        PageLayout(List<TextPosition> glyphs) {
+            glyphs.sort(Comparator.comparingDouble(TextPosition::getYDirAdj).thenComparingDouble(TextPosition::getXDirAdj));
+
+            List<TextPosition> line = new ArrayList<>();
+            float baseline = 0;
+            int lineIndex = 0;
+            for (TextPosition glyph : glyphs) {
+                if (!line.isEmpty() && Math.abs(glyph.getYDirAdj() - baseline) > Math.max(glyph.getHeightDir(), 1) / 2) {
+                    addLine(lineIndex++, line);
+                    line.clear();
+                }
+                if (line.isEmpty()) {
+                    baseline = glyph.getYDirAdj();
+                }
+                line.add(glyph);
+            }
+            if (!line.isEmpty()) {
+                addLine(lineIndex, line);
+            }
+        }
+
+        private void addLine(int lineIndex, List<TextPosition> line) {
+            line.sort(Comparator.comparingDouble(TextPosition::getXDirAdj));
+
+            StringBuilder text = new StringBuilder();
+            float left = 0;
+            float right = 0;
+            float top = 0;
+            float bottom = 0;
+            for (TextPosition glyph : line) {
+                float x = glyph.getXDirAdj();
+                float glyphTop = glyph.getYDirAdj() - glyph.getHeightDir();
+                float spaceWidth = glyph.getWidthOfSpace();
+                if (!(spaceWidth > 0)) {
+                    spaceWidth = glyph.getWidthDirAdj();
+                }
+
+                if (text.length() > 0) {
+                    float gap = x - right;
+                    if (gap > spaceWidth * cellGap) {
+                        addSegment(lineIndex, left, top, right, bottom, text.toString());
+                        text.setLength(0);
+                    } else if (gap > spaceWidth * 0.3f) {
+                        text.append(' ');
+                    }
+                }
+                if (text.length() == 0) {
+                    left = x;
+                    right = x;
+                    top = glyphTop;
+                    bottom = glyph.getYDirAdj();
+                }
+                text.append(glyph.getUnicode());
+                right = Math.max(right, x + glyph.getWidthDirAdj());
+                top = Math.min(top, glyphTop);
+                bottom = Math.max(bottom, glyph.getYDirAdj());
+            }
+            if (text.length() > 0) {
+                addSegment(lineIndex, left, top, right, bottom, text.toString());
+            }
+        }
+
+        private void addSegment(int lineIndex, float left, float top, float right, float bottom, String text) {
+            Segment segment = new Segment(lineIndex, left, top, right - left, bottom - top, text);
+            int bucket = (int) Math.floor(segment.centerY() / BUCKET_HEIGHT);
+            buckets.computeIfAbsent(bucket, key -> new ArrayList<>()).add(segment);
+        }
+
+        /**
+         * 片段中心在区域内的片段
+         */
+        private List<Segment> query(Rectangle2D rect) {
+            List<Segment> result = new ArrayList<>();
+            if (rect == null) {
+                for (List<Segment> segments : buckets.values()) {
+                    result.addAll(segments);
+                }
+                return result;
+            }
+            int first = (int) Math.floor(rect.getMinY() / BUCKET_HEIGHT);
+            int last = (int) Math.floor(rect.getMaxY() / BUCKET_HEIGHT);
+            for (int bucket = first; bucket <= last; bucket++) {
+                List<Segment> segments = buckets.get(bucket);
+                if (segments != null) {
+                    for (Segment segment : segments) {
+                        if (rect.contains(segment.centerX(), segment.centerY())) {
+                            result.add(segment);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 区域内的表格, 每行为一个单元格列表
+         */
+        List<List<String>> table(Rectangle2D rect) {
+            TreeMap<Integer, List<Segment>> lines = new TreeMap<>();
+            for (Segment segment : query(rect)) {
+                lines.computeIfAbsent(segment.line, key -> new ArrayList<>()).add(segment);
+            }
+            if (lines.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            float[][] columns = columns(lines.values());
+
+            List<List<String>> table = new ArrayList<>(lines.size());
+            for (List<Segment> line : lines.values()) {
+                String[] cells = new String[columns.length];
+                Arrays.fill(cells, "");
+                line.sort(Comparator.comparingDouble(segment -> segment.x));
+                for (Segment segment : line) {
+                    int column = column(columns, segment);
+                    cells[column] = cells[column].isEmpty() ? segment.text : cells[column] + " " + segment.text;
+                }
+                table.add(Arrays.asList(cells));
+            }
+            return table;
+        }
+    }
+
+    /**
+     * 列的横向范围. 先用片段最多的行确定列, 跨列的表头等片段不会把两列合并; 再合并这些行中重叠的片段
+     */
+    private static float[][] columns(Iterable<List<Segment>> lines) {
+        int maxSegments = 0;
+        for (List<Segment> line : lines) {
+            maxSegments = Math.max(maxSegments, line.size());
+        }
+
+        List<float[]> spans = new ArrayList<>();
+        for (List<Segment> line : lines) {
+            if (line.size() == maxSegments) {
+                for (Segment segment : line) {
+                    spans.add(new float[]{segment.x, segment.x + segment.width});
+                }
+            }
+        }
+        spans.sort(Comparator.comparingDouble(span -> span[0]));
+
+        List<float[]> merged = new ArrayList<>();
+        for (float[] span : spans) {
+            float[] previous = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (previous != null && span[0] <= previous[1]) {
+                previous[1] = Math.max(previous[1], span[1]);
+            } else {
+                merged.add(span.clone());
+            }
+        }
+        return merged.toArray(new float[0][]);
+    }
+
+    /**
+     * 片段所在的列: 重叠最多的列, 没有重叠时为中心最近的列
+     */
+    private static int column(float[][] columns, Segment segment) {
+        int best = 0;
+        float bestOverlap = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < columns.length; i++) {
+            float overlap = Math.min(columns[i][1], segment.x + segment.width) - Math.max(columns[i][0], segment.x);
+            float distance = Math.abs((columns[i][0] + columns[i][1]) / 2 - segment.centerX());
+            if (overlap > bestOverlap || (bestOverlap <= 0 && overlap <= 0 && distance < bestDistance)) {
+                best = i;
+                bestOverlap = Math.max(overlap, 0);
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getPagesPerPart() {
+        return pagesPerPart;
+    }
+
+    /**
+     * 每个任务的页数
+     */
+    public void setPagesPerPart(int pagesPerPart) {
+        if (pagesPerPart < 1) {
+            throw new IllegalArgumentException("pagesPerPart must be at least 1");
+        }
+        this.pagesPerPart = pagesPerPart;
+    }
+
+    public float getCellGap() {
+        return cellGap;
+    }
+
+    /**
+     * 单元格之间的最小间距, 以空格宽度为单位
+     */
+    public void setCellGap(float cellGap) {
+        this.cellGap = cellGap;
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+}
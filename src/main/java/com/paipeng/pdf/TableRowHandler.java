@@ -0,0 +1,19 @@
+package com.paipeng.pdf;
+
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 表格行回调, 按页序、区域和行序在调用线程中被调用
+ */
+public interface TableRowHandler {
+    /**
+     * 处理表格的一行
+     *
+     * @param pageIndex  页码, 从0开始
+     * @param regionName 区域名称, 没有添加区域时为"page"
+     * @param cells      单元格文字, 空单元格为空字符串
+     */
+    void handleRow(int pageIndex, String regionName, List<String> cells) throws IOException;
+}
@@ -0,0 +1,180 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 逐页提取文字
+ *
+ * 文字按页写入Writer或交给回调, 不在内存中拼接整个文档的文字. 文件通过PDFBox的带缓冲的随机访问读取,
+ * 不整体读入内存. 并行模式把页码范围分成多段, 每个线程使用自己的文档, 结果仍按页序返回.
+ *
+ * <pre>
+ * TextExtractor extractor = new TextExtractor(4);
+ * try (Writer writer = Files.newBufferedWriter(Paths.get("/data/archive.txt"))) {
+ *     extractor.extract(new File("/data/archive.pdf"), 0, -1, writer);
+ * }
+ * </pre>
+ */
+public class TextExtractor {
+    private final int threads;
+
+    private int pagesPerPart = 16;
+    private boolean sortByPosition;
+    private MemoryUsageSetting memoryUsageSetting = MemorySettings.getInstance().getMemoryUsageSetting();
+
+    /**
+     * @param threads 提取线程数, 1表示在调用线程中顺序提取
+     */
+    public TextExtractor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * 提取文字到Writer
+     *
+     * @param pdfFile   PDF文件
+     * @param startPage 开始页码, 从0开始
+     * @param endPage   结束页码(包含), -1表示最后一页
+     * @param writer    输出, 每页写完后flush
+     */
+    public void extract(File pdfFile, int startPage, int endPage, Writer writer) throws IOException {
+        extract(pdfFile, startPage, endPage, (pageIndex, text) -> {
+            writer.write(text);
+            writer.flush();
+        });
+    }
+
+    /**
+     * 逐页提取文字
+     *
+     * @param pdfFile   PDF文件
+     * @param startPage 开始页码, 从0开始
+     * @param endPage   结束页码(包含), -1表示最后一页
+     * @param handler   每页的回调, 按页序调用
+     */
+    public void extract(File pdfFile, int startPage, int endPage, PageTextHandler handler) throws IOException {
+        if (threads == 1) {
+            try (PDDocument pdDocument = PDDocument.load(pdfFile, memoryUsageSetting)) {
+                int last = endPage < 0 ? pdDocument.getNumberOfPages() - 1 : Math.min(endPage, pdDocument.getNumberOfPages() - 1);
+                extractPages(pdDocument, Math.max(0, startPage), last, handler);
+            }
+            return;
+        }
+
+        try (RenderPool pool = new RenderPool(pdfFile, memoryUsageSetting, threads, "pdf-text")) {
+            int first = Math.max(0, startPage);
+            int last = pool.lastPage(endPage);
+            int parts = (last - first + pagesPerPart) / pagesPerPart;
+
+            pool.run(0, parts - 1, part -> {
+                int partStart = first + part * pagesPerPart;
+                int partEnd = Math.min(last, partStart + pagesPerPart - 1);
+                List<String> texts = new ArrayList<>();
+                extractPages(pool.getDocument(), partStart, partEnd, (pageIndex, text) -> texts.add(text));
+                return new Part(partStart, texts);
+            }, part -> {
+                for (int i = 0; i < part.texts.size(); i++) {
+                    handler.handlePage(part.startPage + i, part.texts.get(i));
+                }
+            });
+        }
+    }
+
+    /**
+     * 一次遍历提取startPage到endPage的文字; PDFTextStripper每调用一次writeText都会遍历整个页面树,
+     * 所以不能逐页调用
+     */
+    private void extractPages(PDDocument pdDocument, int startPage, int endPage, PageTextHandler handler) throws IOException {
+        if (startPage > endPage) {
+            return;
+        }
+        PageStripper stripper = new PageStripper(handler);
+        stripper.setSortByPosition(sortByPosition);
+        stripper.setStartPage(startPage + 1);
+        stripper.setEndPage(endPage + 1);
+        stripper.writeText(pdDocument, new StringWriter());
+    }
+
+    private static class Part {
+        private final int startPage;
+        private final List<String> texts;
+
+        Part(int startPage, List<String> texts) {
+            this.startPage = startPage;
+            this.texts = texts;
+        }
+    }
+
+    /**
+     * 每页开始时换一个新的输出, 页面结束时把这一页的文字交给回调
+     */
+    private static class PageStripper extends PDFTextStripper {
+        private final PageTextHandler handler;
+        private StringWriter pageOutput;
+
+        PageStripper(PageTextHandler handler) throws IOException {
+            this.handler = handler;
+        }
+
+        @Override
+        protected void startPage(PDPage page) throws IOException {
+            pageOutput = new StringWriter();
+            output = pageOutput;
+            super.startPage(page);
+        }
+
+        @Override
+        protected void endPage(PDPage page) throws IOException {
+            super.endPage(page);
+            handler.handlePage(getCurrentPageNo() - 1, pageOutput.toString());
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getPagesPerPart() {
+        return pagesPerPart;
+    }
+
+    /**
+     * 并行模式下每个任务的页数
+     */
+    public void setPagesPerPart(int pagesPerPart) {
+        if (pagesPerPart < 1) {
+            throw new IllegalArgumentException("pagesPerPart must be at least 1");
+        }
+        this.pagesPerPart = pagesPerPart;
+    }
+
+    public boolean isSortByPosition() {
+        return sortByPosition;
+    }
+
+    public void setSortByPosition(boolean sortByPosition) {
+        this.sortByPosition = sortByPosition;
+    }
+
+    public MemoryUsageSetting getMemoryUsageSetting() {
+        return memoryUsageSetting;
+    }
+
+    public void setMemoryUsageSetting(MemoryUsageSetting memoryUsageSetting) {
+        this.memoryUsageSetting = memoryUsageSetting;
+    }
+}
@@ -0,0 +1,363 @@
+package com.paipeng.pdf;
+
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.BitSet;
+
+/**
+ * 文字排版
+ *
+ * 按字符宽度断行, 文字排满一页后自动新建页面. 西文在空格和连字符后断行, 中日韩文字之间可以断行,
+ * 行首不放句号、逗号、右括号等标点, 行尾不放左括号和左引号. 过长的单词按字符断开.
+ * 输入按块读取, 每行写出后即丢弃, 几MB的文本也只占用一行的内存.
+ *
+ * <pre>
+ * TextLayout layout = new TextLayout();
+ * layout.setPageSize(PDRectangle.A4);
+ * try (Reader reader = Files.newBufferedReader(path)) {
+ *     layout.layout(pdDocument, fontPath, reader);
+ * }
+ * </pre>
+ */
+public class TextLayout {
+    public enum Alignment {
+        LEFT, CENTER, RIGHT
+    }
+
+    // not at the start of a line
+    private static final BitSet NO_START = codePoints("!%),.:;?]}¢°·’”‰′″℃∶、。〃〉》」』】〕〗〞︶︺︾﹀﹄﹚﹜﹞！％），．：；？］｝～…—ゝゞヽヾーァィゥェォッャュョヮヵヶぁぃぅぇぉっゃゅょゎゕゖ");
+    // not at the end of a line
+    private static final BitSet NO_END = codePoints("$(£¥‘“〈《「『【〔〖〝﹙﹛﹝＄（［｛￡￥[{");
+
+    private PDRectangle pageSize = PDRectangle.A4;
+    private float marginLeft = 40;
+    private float marginRight = 40;
+    private float marginTop = 40;
+    private float marginBottom = 40;
+    private float fontSize = 12;
+    private float leading = 18;
+    private Alignment alignment = Alignment.LEFT;
+
+    /**
+     * 排版文字, 从新的一页开始
+     *
+     * @param pdDocument 文档
+     * @param fontPath   TTF字体文件路径
+     * @param text       文字, 换行符开始新的段落
+     * @return 新建的页数
+     */
+    public int layout(PDDocument pdDocument, String fontPath, String text) throws IOException {
+        return layout(pdDocument, fontPath, new StringReader(text));
+    }
+
+    /**
+     * 排版文字, 从新的一页开始. 文字按块读取, 不需要全部读入内存
+     *
+     * @param pdDocument 文档
+     * @param fontPath   TTF字体文件路径
+     * @param reader     文字, 换行符开始新的段落
+     * @return 新建的页数
+     */
+    public int layout(PDDocument pdDocument, String fontPath, Reader reader) throws IOException {
+        PDFont font = FontCache.getInstance().getFont(pdDocument, fontPath);
+        return layout(pdDocument, font, FontCache.getInstance().getMetrics(pdDocument, font), reader);
+    }
+
+    /**
+     * 排版文字, 从新的一页开始
+     *
+     * @param pdDocument  文档
+     * @param font        字体
+     * @param fontMetrics 字体的度量, 由FontCache.getMetrics获得
+     * @param reader      文字, 换行符开始新的段落
+     * @return 新建的页数
+     */
+    public int layout(PDDocument pdDocument, PDFont font, FontMetrics fontMetrics, Reader reader) throws IOException {
+        LineWriter writer = new LineWriter(pdDocument, font, fontMetrics);
+        try {
+            char[] buffer = new char[8192];
+            char highSurrogate = 0;
+            boolean carriageReturn = false;
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char c = buffer[i];
+                    int codePoint = c;
+                    if (highSurrogate != 0) {
+                        if (Character.isLowSurrogate(c)) {
+                            codePoint = Character.toCodePoint(highSurrogate, c);
+                        }
+                        highSurrogate = 0;
+                    } else if (Character.isHighSurrogate(c)) {
+                        // the low surrogate may be in the next block
+                        highSurrogate = c;
+                        continue;
+                    }
+                    if (c == '\n' && carriageReturn) {
+                        carriageReturn = false;
+                        continue;
+                    }
+                    carriageReturn = c == '\r';
+                    writer.append(codePoint);
+                }
+            }
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+        return writer.pages;
+    }
+
+    private static boolean isCJK(int codePoint) {
+        return (codePoint >= 0x2e80 && codePoint <= 0x9fff)
+                || (codePoint >= 0xac00 && codePoint <= 0xd7af)
+                || (codePoint >= 0xf900 && codePoint <= 0xfaff)
+                || (codePoint >= 0xfe30 && codePoint <= 0xfe4f)
+                || (codePoint >= 0xff00 && codePoint <= 0xffef)
+                || (codePoint >= 0x20000 && codePoint <= 0x3ffff);
+    }
+
+    // whether a line may break between two characters
+    private static boolean canBreak(int previous, int codePoint) {
+        if (codePoint == ' ' || NO_START.get(codePoint) || NO_END.get(previous)) {
+            return false;
+        }
+        return previous == ' ' || previous == '-' || isCJK(previous) || isCJK(codePoint);
+    }
+
+    private static BitSet codePoints(String characters) {
+        BitSet bitSet = new BitSet();
+        characters.codePoints().forEach(bitSet::set);
+        return bitSet;
+    }
+
+    public PDRectangle getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(PDRectangle pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public float getMarginLeft() {
+        return marginLeft;
+    }
+
+    public void setMarginLeft(float marginLeft) {
+        this.marginLeft = marginLeft;
+    }
+
+    public float getMarginRight() {
+        return marginRight;
+    }
+
+    public void setMarginRight(float marginRight) {
+        this.marginRight = marginRight;
+    }
+
+    public float getMarginTop() {
+        return marginTop;
+    }
+
+    /**
+     * 页面上边到第一行文字顶部的距离, 第一行基线在这个距离再向下一个字号处
+     */
+    public void setMarginTop(float marginTop) {
+        this.marginTop = marginTop;
+    }
+
+    public float getMarginBottom() {
+        return marginBottom;
+    }
+
+    /**
+     * 最后一行基线到页面下边的最小距离
+     */
+    public void setMarginBottom(float marginBottom) {
+        this.marginBottom = marginBottom;
+    }
+
+    /**
+     * 同时设置四个边距
+     */
+    public void setMargin(float margin) {
+        this.marginLeft = margin;
+        this.marginRight = margin;
+        this.marginTop = margin;
+        this.marginBottom = margin;
+    }
+
+    public float getFontSize() {
+        return fontSize;
+    }
+
+    public void setFontSize(float fontSize) {
+        this.fontSize = fontSize;
+    }
+
+    public float getLeading() {
+        return leading;
+    }
+
+    /**
+     * 行距, 相邻两行基线的距离
+     */
+    public void setLeading(float leading) {
+        this.leading = leading;
+    }
+
+    public Alignment getAlignment() {
+        return alignment;
+    }
+
+    public void setAlignment(Alignment alignment) {
+        this.alignment = alignment;
+    }
+
+    /**
+     * 一次排版的状态: 当前行和当前页
+     */
+    private class LineWriter {
+        private final PDDocument pdDocument;
+        private final PDFont font;
+        private final FontMetrics fontMetrics;
+        private final float lineWidth;
+        private final float spaceWidth;
+
+        // the current line; breakIndex is the last position a line may break at
+        private final StringBuilder line = new StringBuilder();
+        private float width;
+        private int breakIndex = -1;
+        private float breakWidth;
+        private int previous;
+
+        // the text position: x and lastY of the previous line, y of the next one
+        private PageComposer composer;
+        private float x;
+        private float y;
+        private float lastY;
+        private int pages;
+
+        LineWriter(PDDocument pdDocument, PDFont font, FontMetrics fontMetrics) {
+            this.pdDocument = pdDocument;
+            this.font = font;
+            this.fontMetrics = fontMetrics;
+            this.lineWidth = pageSize.getWidth() - marginLeft - marginRight;
+            this.spaceWidth = fontMetrics.getWidth(' ') / 1000 * fontSize;
+        }
+
+        void append(int codePoint) throws IOException {
+            if (codePoint == '\n' || codePoint == '\r' || codePoint == 0x2028 || codePoint == 0x2029) {
+                writeLine(line.length(), width);
+                clear(line.length());
+                return;
+            }
+            if (codePoint == '\t' || (Character.isSpaceChar(codePoint) && codePoint != 0xa0 && codePoint != 0x202f)) {
+                codePoint = ' ';
+            } else if (Character.isISOControl(codePoint) || !fontMetrics.hasGlyph(codePoint)) {
+                // showText fails on characters the font does not have
+                return;
+            }
+            float advance = fontMetrics.getWidth(codePoint) / 1000 * fontSize;
+
+            if (line.length() > 0 && canBreak(previous, codePoint)) {
+                breakIndex = line.length();
+                breakWidth = width;
+            }
+            // spaces may hang over the margin, they are dropped at the end of the line
+            while (codePoint != ' ' && line.length() > 0 && width + advance > lineWidth) {
+                if (breakIndex > 0) {
+                    int end = breakIndex;
+                    float endWidth = breakWidth;
+                    writeLine(end, endWidth);
+                    // the spaces the line was broken at do not start the next line
+                    int next = end;
+                    while (next < line.length() && line.charAt(next) == ' ') {
+                        next++;
+                    }
+                    float remaining = width - endWidth - (next - end) * spaceWidth;
+                    clear(next);
+                    width = remaining;
+                } else {
+                    // a word longer than the line
+                    writeLine(line.length(), width);
+                    clear(line.length());
+                }
+            }
+            line.appendCodePoint(codePoint);
+            width += advance;
+            previous = codePoint;
+        }
+
+        void finish() throws IOException {
+            if (line.length() > 0) {
+                writeLine(line.length(), width);
+                clear(line.length());
+            }
+            if (composer == null) {
+                newPage();
+            }
+        }
+
+        private void clear(int end) {
+            line.delete(0, end);
+            width = 0;
+            breakIndex = -1;
+            previous = line.length() > 0 ? line.codePointBefore(line.length()) : 0;
+        }
+
+        private void writeLine(int end, float endWidth) throws IOException {
+            while (end > 0 && line.charAt(end - 1) == ' ') {
+                end--;
+                endWidth -= spaceWidth;
+            }
+            if (composer == null || y - leading < marginBottom) {
+                newPage();
+            } else {
+                y -= leading;
+            }
+            if (end == 0) {
+                return;
+            }
+            float lineX = marginLeft;
+            if (alignment == Alignment.CENTER) {
+                lineX += (lineWidth - endWidth) / 2;
+            } else if (alignment == Alignment.RIGHT) {
+                lineX += lineWidth - endWidth;
+            }
+            // Td is relative to the start of the previous line
+            composer.newLineAtOffset(lineX - x, y - lastY);
+            x = lineX;
+            lastY = y;
+            composer.showText(line.substring(0, end));
+        }
+
+        private void newPage() throws IOException {
+            close();
+            PDPage pdPage = new PDPage(pageSize);
+            pdDocument.addPage(pdPage);
+            pages++;
+            composer = PageComposer.begin(pdDocument, pdPage);
+            composer.beginText();
+            composer.setFont(font, fontSize);
+            x = 0;
+            lastY = 0;
+            y = pageSize.getHeight() - marginTop - fontSize;
+        }
+
+        void close() throws IOException {
+            if (composer != null) {
+                composer.endText();
+                composer.close();
+                composer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.paipeng.pdf;
+
+
+import org.apache.commons.csv.CSVRecord;
+import org.apache.pdfbox.multipdf.LayerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+import org.krysalis.barcode4j.BarcodeGenerator;
+import org.krysalis.barcode4j.HumanReadablePlacement;
+import org.krysalis.barcode4j.impl.AbstractBarcodeBean;
+import org.krysalis.barcode4j.impl.code128.Code128Bean;
+import org.krysalis.barcode4j.impl.code39.Code39Bean;
+import org.krysalis.barcode4j.impl.datamatrix.DataMatrixBean;
+import org.krysalis.barcode4j.impl.int2of5.Interleaved2Of5Bean;
+import org.krysalis.barcode4j.impl.pdf417.PDF417Bean;
+import org.krysalis.barcode4j.impl.upcean.EAN13Bean;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+
+/**
+ * 可变数据印刷模板
+ *
+ * 设计稿PDF的一页作为静态背景, 每个输出文档只导入一次为PDFormXObject, 每页只用一个Do操作符引用;
+ * 页面上只写入按字段位置绘制的可变文字、条码和图片. 每条记录的开销与背景的复杂程度无关.
+ *
+ * 模板可以在代码中定义, 也可以从描述文件加载(Properties格式, 路径相对于描述文件):
+ *
+ * <pre>
+ * background=artwork.pdf
+ * page=0
+ * fields=serial,code,photo
+ * serial.type=text
+ * serial.rect=20,30,120,12
+ * serial.font=/usr/share/fonts/truetype/droid/DroidSansFallbackFull.ttf
+ * serial.size=10
+ * serial.align=center
+ * code.type=barcode
+ * code.rect=20,50,0,0
+ * code.symbology=datamatrix
+ * code.moduleWidth=0.5
+ * photo.type=image
+ * photo.rect=150,20,60,80
+ * </pre>
+ *
+ * 作为SerialPrintJob的LabelRenderer时, 背景画在每个标签格中, 字段值取CSV中同名的列, 名为serial的字段取序列号.
+ */
+public class VdpTemplate implements LabelRenderer, AutoCloseable {
+    public enum FieldType {
+        TEXT, BARCODE, IMAGE
+    }
+
+    private static final float MM_TO_POINT = 72f / 25.4f;
+
+    private final PDDocument background;
+    private final int pageIndex;
+    private final PDRectangle pageSize;
+    private final List<Field> fields = new ArrayList<>();
+
+    // output document -> imported background
+    private final Map<PDDocument, PDFormXObject> forms = new WeakHashMap<>();
+
+    /**
+     * @param backgroundFile 设计稿PDF
+     * @param pageIndex      作为背景的页码, 从0开始
+     */
+    public VdpTemplate(File backgroundFile, int pageIndex) throws IOException {
+        this.background = MemorySettings.getInstance().load(backgroundFile);
+        this.pageIndex = pageIndex;
+        try {
+            PDPage pdPage = background.getPage(pageIndex);
+            PDRectangle cropBox = pdPage.getCropBox();
+            boolean rotated = pdPage.getRotation() % 180 != 0;
+            this.pageSize = rotated ? new PDRectangle(cropBox.getHeight(), cropBox.getWidth())
+                    : new PDRectangle(cropBox.getWidth(), cropBox.getHeight());
+        } catch (RuntimeException e) {
+            background.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 加载模板描述文件
+     *
+     * @param descriptor Properties格式的描述文件, UTF-8编码
+     */
+    public static VdpTemplate load(File descriptor) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(descriptor)) {
+            properties.load(new InputStreamReader(input, StandardCharsets.UTF_8));
+        }
+        File directory = descriptor.getAbsoluteFile().getParentFile();
+        String backgroundPath = required(properties, "background");
+        VdpTemplate template = new VdpTemplate(resolve(directory, backgroundPath),
+                Integer.parseInt(properties.getProperty("page", "0").trim()));
+        try {
+            for (String name : properties.getProperty("fields", "").split(",")) {
+                name = name.trim();
+                if (!name.isEmpty()) {
+                    template.fields.add(parseField(properties, directory, name));
+                }
+            }
+        } catch (RuntimeException e) {
+            template.close();
+            throw new IOException("invalid template " + descriptor + ": " + e.getMessage(), e);
+        }
+        return template;
+    }
+
+    private static Field parseField(Properties properties, File directory, String name) throws IOException {
+        String prefix = name + ".";
+        FieldType type = FieldType.valueOf(required(properties, prefix + "type").trim().toUpperCase());
+        String[] rect = required(properties, prefix + "rect").split(",");
+        if (rect.length != 4) {
+            throw new IllegalArgumentException(prefix + "rect must be x,y,width,height");
+        }
+        Field field = new Field(name, type, new PDRectangle(Float.parseFloat(rect[0].trim()), Float.parseFloat(rect[1].trim()),
+                Float.parseFloat(rect[2].trim()), Float.parseFloat(rect[3].trim())));
+        field.setColumn(properties.getProperty(prefix + "column", name).trim());
+
+        String font = properties.getProperty(prefix + "font");
+        if (font != null) {
+            field.setFontPath(resolve(directory, font.trim()).getPath());
+        }
+        field.setFontSize(Float.parseFloat(properties.getProperty(prefix + "size", "10").trim()));
+        field.setAlignment(TextLayout.Alignment.valueOf(properties.getProperty(prefix + "align", "left").trim().toUpperCase()));
+        String color = properties.getProperty(prefix + "color");
+        if (color != null) {
+            String[] cmyk = color.split(",");
+            if (cmyk.length != 4) {
+                throw new IllegalArgumentException(prefix + "color must be c,m,y,k");
+            }
+            field.setColor(new PDColor(new float[]{Float.parseFloat(cmyk[0].trim()), Float.parseFloat(cmyk[1].trim()),
+                    Float.parseFloat(cmyk[2].trim()), Float.parseFloat(cmyk[3].trim())}, PDDeviceCMYK.INSTANCE));
+        }
+        field.setOrientation(Integer.parseInt(properties.getProperty(prefix + "orientation", "0").trim()));
+        if (type == FieldType.BARCODE) {
+            field.setGenerator(createGenerator(properties.getProperty(prefix + "symbology", "code128").trim(),
+                    Double.parseDouble(properties.getProperty(prefix + "moduleWidth", "0.3").trim()),
+                    Double.parseDouble(properties.getProperty(prefix + "barHeight", "10").trim())));
+        }
+        return field;
+    }
+
+    private static BarcodeGenerator createGenerator(String symbology, double moduleWidth, double barHeight) {
+        AbstractBarcodeBean bean;
+        switch (symbology.toLowerCase()) {
+            case "code128":
+                bean = new Code128Bean();
+                break;
+            case "code39":
+                bean = new Code39Bean();
+                break;
+            case "ean13":
+                bean = new EAN13Bean();
+                break;
+            case "interleaved2of5":
+                bean = new Interleaved2Of5Bean();
+                break;
+            case "datamatrix":
+                bean = new DataMatrixBean();
+                break;
+            case "pdf417":
+                bean = new PDF417Bean();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown symbology " + symbology);
+        }
+        bean.setModuleWidth(moduleWidth);
+        bean.setBarHeight(barHeight);
+        // the serial is usually printed by a text field of its own
+        bean.setMsgPosition(HumanReadablePlacement.HRP_NONE);
+        return bean;
+    }
+
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("missing " + key);
+        }
+        return value.trim();
+    }
+
+    private static File resolve(File directory, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(directory, path);
+    }
+
+    /**
+     * 添加字段, 按添加的顺序绘制
+     *
+     * @param name 字段名, 也是默认的数据列名
+     * @param type 字段类型
+     * @param rect 字段位置, 相对于背景左下角; 条码只使用左下角, 图片按比例缩放到区域内并居中
+     * @return 字段, 可以继续设置字体、颜色等
+     */
+    public Field addField(String name, FieldType type, PDRectangle rect) {
+        Field field = new Field(name, type, rect);
+        fields.add(field);
+        return field;
+    }
+
+    public List<Field> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * 背景页面的尺寸
+     */
+    public PDRectangle getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * 获得文档中的背景, 每个文档只导入一次
+     *
+     * @param pdDocument 输出文档
+     */
+    public PDFormXObject getBackground(PDDocument pdDocument) throws IOException {
+        synchronized (forms) {
+            PDFormXObject form = forms.get(pdDocument);
+            if (form == null) {
+                // the background document is shared by all output documents
+                synchronized (background) {
+                    form = new LayerUtility(pdDocument).importPageAsForm(background, pageIndex);
+                }
+                forms.put(pdDocument, form);
+            }
+            return form;
+        }
+    }
+
+    /**
+     * 添加一页: 背景加上字段值
+     *
+     * @param pdDocument 输出文档
+     * @param values     字段名 -> 值; 文字和条码字段为内容, 图片字段为图片文件路径. 没有值的字段不绘制
+     * @return 新页面
+     */
+    public PDPage addPage(PDDocument pdDocument, Map<String, String> values) throws IOException {
+        PDPage pdPage = new PDPage(pageSize);
+        pdDocument.addPage(pdPage);
+        try (PageComposer composer = PageComposer.begin(pdDocument, pdPage)) {
+            composer.drawForm(getBackground(pdDocument));
+            for (Field field : fields) {
+                drawField(composer, field, values.get(field.getColumn()));
+            }
+        }
+        return pdPage;
+    }
+
+    @Override
+    public void drawLabel(PageComposer composer, CSVRecord record, String serial, PDRectangle cell) throws IOException {
+        composer.saveGraphicsState();
+        composer.transform(Matrix.getTranslateInstance(cell.getLowerLeftX(), cell.getLowerLeftY()));
+        composer.drawForm(getBackground(composer.getDocument()));
+        for (Field field : fields) {
+            String value;
+            if (record.isMapped(field.getColumn())) {
+                value = record.get(field.getColumn());
+            } else {
+                value = "serial".equals(field.getColumn()) ? serial : null;
+            }
+            drawField(composer, field, value);
+        }
+        composer.restoreGraphicsState();
+    }
+
+    private void drawField(PageComposer composer, Field field, String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        PDRectangle rect = field.getRect();
+        switch (field.getType()) {
+            case TEXT:
+                drawText(composer, field, value, rect);
+                break;
+            case BARCODE:
+                if (field.getGenerator() == null) {
+                    throw new IOException("barcode field " + field.getName() + " has no generator");
+                }
+                BarcodeDrawer.getInstance().draw(composer, field.getGenerator(), value, rect.getLowerLeftX(), rect.getLowerLeftY(),
+                        field.getOrientation(), field.getColor());
+                break;
+            case IMAGE:
+                PDImageXObject image = ImageCache.getInstance().getImage(composer.getDocument(), new File(value));
+                float scale = Math.min(rect.getWidth() / image.getWidth(), rect.getHeight() / image.getHeight());
+                float width = image.getWidth() * scale;
+                float height = image.getHeight() * scale;
+                composer.drawImage(image, rect.getLowerLeftX() + (rect.getWidth() - width) / 2,
+                        rect.getLowerLeftY() + (rect.getHeight() - height) / 2, width, height);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void drawText(PageComposer composer, Field field, String value, PDRectangle rect) throws IOException {
+        PDFont font = field.getFontPath() != null
+                ? FontCache.getInstance().getFont(composer.getDocument(), field.getFontPath()) : PDType1Font.HELVETICA;
+        FontMetrics fontMetrics = FontCache.getInstance().getMetrics(composer.getDocument(), font);
+        float fontSize = field.getFontSize();
+        float textWidth = fontMetrics.getStringWidth(value, fontSize);
+
+        float x = rect.getLowerLeftX();
+        if (field.getAlignment() == TextLayout.Alignment.CENTER) {
+            x += (rect.getWidth() - textWidth) / 2;
+        } else if (field.getAlignment() == TextLayout.Alignment.RIGHT) {
+            x += rect.getWidth() - textWidth;
+        }
+        // the baseline is placed so that the text is vertically centred in the field
+        float y = rect.getLowerLeftY() + (rect.getHeight() - fontSize) / 2 + fontSize * 0.2f;
+
+        composer.beginText();
+        composer.setFont(font, fontSize);
+        composer.setNonStrokingColor(field.getColor());
+        if (field.getOrientation() != 0) {
+            Matrix matrix = Matrix.getTranslateInstance(rect.getLowerLeftX(), rect.getLowerLeftY());
+            matrix.rotate(Math.toRadians(field.getOrientation()));
+            matrix.translate(x - rect.getLowerLeftX(), y - rect.getLowerLeftY());
+            composer.setTextMatrix(matrix);
+        } else {
+            composer.newLineAtOffset(x, y);
+        }
+        composer.showText(value);
+        composer.endText();
+    }
+
+    /**
+     * 释放文档中导入的背景
+     *
+     * @param pdDocument 输出文档
+     */
+    public void release(PDDocument pdDocument) {
+        synchronized (forms) {
+            forms.remove(pdDocument);
+        }
+    }
+
+    /**
+     * 关闭背景文档. 已导入背景的输出文档不受影响
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (forms) {
+            forms.clear();
+        }
+        background.close();
+    }
+
+    /**
+     * 模板字段
+     */
+    public static class Field {
+        private final String name;
+        private final FieldType type;
+        private final PDRectangle rect;
+        private String column;
+        private String fontPath;
+        private float fontSize = 10;
+        private TextLayout.Alignment alignment = TextLayout.Alignment.LEFT;
+        private PDColor color = BarcodeDrawer.BLACK;
+        private int orientation;
+        private BarcodeGenerator generator;
+
+        Field(String name, FieldType type, PDRectangle rect) {
+            this.name = name;
+            this.type = type;
+            this.rect = rect;
+            this.column = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public FieldType getType() {
+            return type;
+        }
+
+        public PDRectangle getRect() {
+            return rect;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        /**
+         * 字段值所在的数据列, 默认为字段名
+         */
+        public Field setColumn(String column) {
+            this.column = column;
+            return this;
+        }
+
+        public String getFontPath() {
+            return fontPath;
+        }
+
+        /**
+         * 文字字段的TTF字体, 为空时使用Helvetica
+         */
+        public Field setFontPath(String fontPath) {
+            this.fontPath = fontPath;
+            return this;
+        }
+
+        public float getFontSize() {
+            return fontSize;
+        }
+
+        public Field setFontSize(float fontSize) {
+            this.fontSize = fontSize;
+            return this;
+        }
+
+        public TextLayout.Alignment getAlignment() {
+            return alignment;
+        }
+
+        /**
+         * 文字在字段宽度内的对齐方式
+         */
+        public Field setAlignment(TextLayout.Alignment alignment) {
+            this.alignment = alignment;
+            return this;
+        }
+
+        public PDColor getColor() {
+            return color;
+        }
+
+        /**
+         * 文字和条码的颜色, 默认为纯黑(K)
+         */
+        public Field setColor(PDColor color) {
+            this.color = color;
+            return this;
+        }
+
+        public int getOrientation() {
+            return orientation;
+        }
+
+        /**
+         * 逆时针旋转角度, 0, 90, 180或270, 以字段左下角为中心
+         */
+        public Field setOrientation(int orientation) {
+            this.orientation = orientation;
+            return this;
+        }
+
+        public BarcodeGenerator getGenerator() {
+            return generator;
+        }
+
+        /**
+         * 条码字段的barcode4j条码, 例如Code128Bean, DataMatrixBean
+         */
+        public Field setGenerator(BarcodeGenerator generator) {
+            this.generator = generator;
+            return this;
+        }
+    }
+}